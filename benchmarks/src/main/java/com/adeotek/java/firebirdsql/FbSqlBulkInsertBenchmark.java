@@ -0,0 +1,113 @@
+package com.adeotek.java.firebirdsql;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Bulk insert paths; "-p target=embedded -Dfbsql.bench.database=/path/to/bench.fdb" runs them against Firebird embedded
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FbSqlBulkInsertBenchmark {
+    protected static final String TABLE = "FBSQL_BENCH_ROWS";
+    protected static final String TRANSACTION = "FbSqlBulkInsertBenchmark";
+
+    @Param({"synthetic"})
+    public String target;
+    @Param({"4", "16"})
+    public int columns;
+    @Param({"INTEGER", "VARCHAR", "MIXED"})
+    public String types;
+    @Param({"1000", "10000"})
+    public int rows;
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    protected FbSqlConnection _connection;
+    protected String[] _fields;
+    protected List<Object[]> _rows;
+    protected List<LinkedHashMap<String, Object>> _values;
+
+    @Setup(Level.Trial)
+    public void setup() throws FbSqlException {
+        String[] columnTypes = FbSqlSyntheticJdbc.getColumnTypes(types, columns);
+        _fields = new String[columns];
+        for (int c=0; c<columns; c++) {
+            _fields[c] = "COL_" + (c+1);
+        }
+        _rows = new ArrayList<>(rows);
+        _values = new ArrayList<>(rows);
+        for (int r=0; r<rows; r++) {
+            Object[] row = new Object[columns];
+            LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+            for (int c=0; c<columns; c++) {
+                row[c] = FbSqlSyntheticJdbc.getValue(columnTypes[c], r * columns + c);
+                values.put(_fields[c], row[c]);
+            }
+            _rows.add(row);
+            _values.add(values);
+        }
+        if (target.equals("embedded")) {
+            String database = System.getProperty("fbsql.bench.database");
+            if (Helpers.isStringEmptyOrNull(database)) {
+                throw new FbSqlException("Missing -Dfbsql.bench.database for the embedded target");
+            }
+            _connection = new FbSqlConnection("jdbc:firebirdsql:embedded:" + database, null, null);
+            _connection.open();
+            _connection.executeQuery(prepareCreateTable(columnTypes));
+            _connection.close();
+        } else {
+            _connection = new FbSqlConnection("benchmark", null, null, null);
+        }
+    }//setup
+
+    protected String prepareCreateTable(String[] columnTypes) {
+        StringBuilder query = new StringBuilder("RECREATE TABLE \"").append(TABLE).append("\" (");
+        for (int c=0; c<columns; c++) {
+            query.append(c>0 ? ", " : "").append("\"").append(_fields[c]).append("\" ");
+            switch (columnTypes[c]) {
+                case "DECIMAL": query.append("DECIMAL(18,2)"); break;
+                case "VARCHAR": query.append("VARCHAR(100)"); break;
+                default: query.append(columnTypes[c]);
+            }
+        }
+        return query.append(")").toString();
+    }//prepareCreateTable
+
+    // Inserted rows are rolled back after every iteration, so the embedded table does not keep growing
+    @Setup(Level.Iteration)
+    public void begin() throws FbSqlException {
+        if (target.equals("embedded")) {
+            _connection.beginTransaction(TRANSACTION, true);
+        } else {
+            _connection._transactions.put(TRANSACTION, FbSqlSyntheticJdbc.connection());
+        }
+    }//begin
+
+    @TearDown(Level.Iteration)
+    public void rollback() throws FbSqlException {
+        if (target.equals("embedded")) {
+            _connection.rollbackTransaction(TRANSACTION);
+        } else {
+            _connection.invalidateStatementCache(TRANSACTION);
+            _connection._transactions.remove(TRANSACTION);
+        }
+    }//rollback
+
+    @Benchmark
+    public long streamingBulkInsert() throws FbSqlException {
+        return _connection.executeBulkInsert(TABLE, _fields, _rows.iterator(), batchSize, 0, null, TRANSACTION);
+    }//streamingBulkInsert
+
+    // The list based API sends a single batch, batchSize does not apply
+    @Benchmark
+    public int listBulkInsert() throws FbSqlException {
+        return _connection.executeBulkInsert(TABLE, _fields, _values, TRANSACTION);
+    }//listBulkInsert
+}//FbSqlBulkInsertBenchmark
@@ -0,0 +1,42 @@
+package com.adeotek.java.firebirdsql;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Parameter binding (type dispatch + setXxx calls) for a single statement execution
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FbSqlPrepareParamsBenchmark {
+    @Param({"1", "8", "64"})
+    public int parameters;
+    @Param({"INTEGER", "VARCHAR", "TIMESTAMP", "MIXED"})
+    public String types;
+
+    protected FbSqlConnection _connection;
+    protected PreparedStatement _statement;
+    protected LinkedHashMap<String, Object> _parameters;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _connection = new FbSqlConnection("benchmark", null, null, null);
+        _statement = FbSqlSyntheticJdbc.preparedStatement(null);
+        _parameters = new LinkedHashMap<>();
+        String[] columnTypes = FbSqlSyntheticJdbc.getColumnTypes(types, parameters);
+        for (int i=0; i<parameters; i++) {
+            _parameters.put("P" + i, FbSqlSyntheticJdbc.getValue(columnTypes[i], i));
+        }
+    }//setup
+
+    @Benchmark
+    public PreparedStatement prepareParams() throws SQLException, FbSqlException {
+        return _connection.prepareParams(_statement, _parameters);
+    }//prepareParams
+}//FbSqlPrepareParamsBenchmark
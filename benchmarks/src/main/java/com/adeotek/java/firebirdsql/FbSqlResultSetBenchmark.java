@@ -0,0 +1,65 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Result set processing paths: JSON tree, streaming JSON and columnar
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FbSqlResultSetBenchmark {
+    protected static final Writer NULL_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {}
+        @Override
+        public void write(String value, int offset, int length) {}
+        @Override
+        public void flush() {}
+        @Override
+        public void close() {}
+    };
+
+    @Param({"4", "16", "64"})
+    public int columns;
+    @Param({"INTEGER", "VARCHAR", "MIXED"})
+    public String types;
+    @Param({"1", "100", "10000"})
+    public int rows;
+
+    protected FbSqlConnection _connection;
+    protected ResultSet _results;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _connection = new FbSqlConnection("benchmark", null, null, null);
+        _results = FbSqlSyntheticJdbc.resultSet(FbSqlSyntheticJdbc.getColumnTypes(types, columns), rows);
+    }//setup
+
+    @Benchmark
+    public JsonArray processResultSet() throws SQLException {
+        // Rewinding the synthetic result set is a single field write
+        _results.beforeFirst();
+        return _connection.processResultSet(_results, "benchmark");
+    }//processResultSet
+
+    @Benchmark
+    public long writeResultSet() throws SQLException, IOException {
+        _results.beforeFirst();
+        return _connection.writeResultSet(_results, "benchmark", NULL_WRITER);
+    }//writeResultSet
+
+    @Benchmark
+    public FbSqlColumnarResult columnarResultSet() throws SQLException {
+        _results.beforeFirst();
+        return FbSqlColumnarResult.fromResultSet(_results, _connection.getResultReader(_results, "benchmark"));
+    }//columnarResultSet
+}//FbSqlResultSetBenchmark
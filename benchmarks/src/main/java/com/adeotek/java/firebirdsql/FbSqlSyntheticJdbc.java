@@ -0,0 +1,139 @@
+package com.adeotek.java.firebirdsql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.*;
+
+// In-process JDBC stand-ins (dynamic proxies) so the wrapper hot paths can be measured without a server;
+// the proxy dispatch cost is constant between releases, so relative changes stay meaningful
+public final class FbSqlSyntheticJdbc {
+    private FbSqlSyntheticJdbc() {}
+
+    public static final String[] TYPES = { "INTEGER", "BIGINT", "DECIMAL", "VARCHAR", "TIMESTAMP" };
+
+    protected static int getSqlType(String typeName) {
+        switch (typeName) {
+            case "INTEGER": return Types.INTEGER;
+            case "BIGINT": return Types.BIGINT;
+            case "DECIMAL": return Types.DECIMAL;
+            case "TIMESTAMP": return Types.TIMESTAMP;
+            default: return Types.VARCHAR;
+        }
+    }//getSqlType
+
+    // "MIXED" cycles through all TYPES
+    public static String[] getColumnTypes(String types, int columns) {
+        String[] result = new String[columns];
+        for (int i=0; i<columns; i++) {
+            result[i] = types.equals("MIXED") ? TYPES[i % TYPES.length] : types;
+        }
+        return result;
+    }//getColumnTypes
+
+    public static Object getValue(String typeName, long seed) {
+        switch (typeName) {
+            case "INTEGER": return (int) seed;
+            case "BIGINT": return seed * 1000003L;
+            case "DECIMAL": return new BigDecimal(seed).movePointLeft(2);
+            case "TIMESTAMP": return new Timestamp(1500000000000L + seed * 1000L);
+            default: return "value-" + seed + "-abcdefghijklmnopqrstuvwxyz";
+        }
+    }//getValue
+
+    protected static Object getDefault(Class<?> type) {
+        if (type==boolean.class) { return false; }
+        if (type==int.class) { return 0; }
+        if (type==long.class) { return 0L; }
+        if (type==double.class) { return 0.0; }
+        if (type==float.class) { return 0.0f; }
+        if (type==short.class) { return (short) 0; }
+        if (type==byte.class) { return (byte) 0; }
+        return null;
+    }//getDefault
+
+    @SuppressWarnings("unchecked")
+    protected static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FbSqlSyntheticJdbc.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }//proxy
+
+    public static ResultSetMetaData metaData(String[] types) {
+        return proxy(ResultSetMetaData.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "getColumnCount": return types.length;
+                case "getColumnName":
+                case "getColumnLabel": return "COL_" + a[0];
+                case "getColumnTypeName": return types[(Integer) a[0] - 1];
+                case "getColumnType": return getSqlType(types[(Integer) a[0] - 1]);
+                case "getPrecision": return 18;
+                case "getScale": return types[(Integer) a[0] - 1].equals("DECIMAL") ? 2 : 0;
+                default: return getDefault(m.getReturnType());
+            }
+        });
+    }//metaData
+
+    // Call beforeFirst() to replay the same rows
+    public static ResultSet resultSet(String[] types, int rows) {
+        Object[][] values = new Object[rows][types.length];
+        for (int r=0; r<rows; r++) {
+            for (int c=0; c<types.length; c++) {
+                values[r][c] = getValue(types[c], r * types.length + c);
+            }
+        }
+        ResultSetMetaData metaData = metaData(types);
+        int[] cursor = { -1 };
+        return proxy(ResultSet.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "next": return ++cursor[0]<rows;
+                case "beforeFirst": cursor[0] = -1; return null;
+                case "getMetaData": return metaData;
+                case "wasNull":
+                case "isClosed": return false;
+                case "getInt": return ((Number) values[cursor[0]][(Integer) a[0] - 1]).intValue();
+                case "getLong": return ((Number) values[cursor[0]][(Integer) a[0] - 1]).longValue();
+                case "getDouble": return ((Number) values[cursor[0]][(Integer) a[0] - 1]).doubleValue();
+                case "getBigDecimal": return new BigDecimal(values[cursor[0]][(Integer) a[0] - 1].toString());
+                case "getString": return values[cursor[0]][(Integer) a[0] - 1].toString();
+                case "getTimestamp":
+                case "getObject": return values[cursor[0]][(Integer) a[0] - 1];
+                default: return getDefault(m.getReturnType());
+            }
+        });
+    }//resultSet
+
+    // Every bound parameter is discarded; executeBatch() reports one row per added batch entry
+    public static PreparedStatement preparedStatement(Connection connection) {
+        int[] pending = { 0 };
+        boolean[] closed = { false };
+        return proxy(PreparedStatement.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "addBatch": pending[0]++; return null;
+                case "executeBatch":
+                    int[] counts = new int[pending[0]];
+                    java.util.Arrays.fill(counts, 1);
+                    pending[0] = 0;
+                    return counts;
+                case "executeUpdate": return 1;
+                case "getConnection": return connection;
+                case "close": closed[0] = true; return null;
+                case "isClosed": return closed[0];
+                default: return getDefault(m.getReturnType());
+            }
+        });
+    }//preparedStatement
+
+    public static Connection connection() {
+        Connection[] self = new Connection[1];
+        self[0] = proxy(Connection.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "prepareStatement": return preparedStatement(self[0]);
+                case "getTransactionIsolation": return Connection.TRANSACTION_READ_COMMITTED;
+                case "hashCode": return System.identityHashCode(p);
+                case "equals": return p==a[0];
+                default: return getDefault(m.getReturnType());
+            }
+        });
+        return self[0];
+    }//connection
+}//FbSqlSyntheticJdbc
@@ -0,0 +1,256 @@
+package com.adeotek.java.firebirdsql;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs execute* calls off the caller thread: serialized per named transaction, bounded per database
+public class FbSqlAsyncExecutor {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlAsyncExecutor.class);
+    // One limit per database, shared by every executor on it; removed once no executor uses it and its permits are back
+    protected static final ConcurrentHashMap<String, Limit> _databaseLimits = new ConcurrentHashMap<>();
+    protected static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+    protected static volatile Executor _defaultExecutor = null;
+
+    public interface Task<T> {
+        T call() throws FbSqlException;
+    }//Task
+
+    // Concurrency permits; queued tasks wait here for a permit instead of blocking an executor thread
+    protected static class Limit {
+        protected final String _database;
+        protected final int _permits;
+        protected final ArrayDeque<Runnable> _waiting = new ArrayDeque<>();
+        protected int _available;
+        // Executors using this limit; only changed inside _databaseLimits.compute()
+        protected volatile int _references = 0;
+        // Set while this thread hands out released permits, holding the number still to hand out
+        protected final ThreadLocal<int[]> _releasing = new ThreadLocal<>();
+
+        protected Limit(String database, int permits) {
+            _database = database;
+            _permits = permits;
+            _available = permits;
+        }//Limit
+
+        public int getPermits() { return _permits; }
+        public synchronized int getAvailable() { return _available; }
+        public synchronized int getWaiting() { return _waiting.size(); }
+
+        // The first executor on a database sets its limit; later ones asking for another limit share it as it is
+        protected static Limit acquire(String database, int permits) {
+            Limit result = _databaseLimits.compute(database, (k, limit) -> {
+                if (limit==null) {
+                    limit = new Limit(k, permits);
+                }
+                limit._references++;
+                return limit;
+            });
+            if (result._permits!=permits) {
+                appLogger.warn("FbSqlAsyncExecutor: " + database + " is already limited to " + result._permits
+                        + " concurrent calls, ignoring the requested " + permits);
+            }
+            return result;
+        }//acquire
+
+        protected void unreference() {
+            _databaseLimits.computeIfPresent(_database, (k, limit) -> {
+                if (limit==this) {
+                    _references--;
+                }
+                return limit;
+            });
+            removeIfIdle();
+        }//unreference
+
+        // Tasks of closed executors may still hold permits: the limit stays until the last one is released
+        protected void removeIfIdle() {
+            _databaseLimits.computeIfPresent(_database, (k, limit) -> {
+                if (limit!=this || _references>0) {
+                    return limit;
+                }
+                synchronized (this) {
+                    return _available==_permits && _waiting.isEmpty() ? null : limit;
+                }
+            });
+        }//removeIfIdle
+
+        // Runs start right away if a permit is free, otherwise when one is released; the holder must call release()
+        protected void dispatch(Runnable start) {
+            synchronized (this) {
+                if (_available<=0) {
+                    _waiting.addLast(start);
+                    return;
+                }
+                _available--;
+            }
+            start.run();
+        }//dispatch
+
+        // The permit goes straight to the oldest waiting task, if any. Starting it may release a permit again on this thread
+        // (rejected by the executor, or a direct executor finishing it inline): that is counted and handed on by the loop below
+        protected void release() {
+            int[] nested = _releasing.get();
+            if (nested!=null) {
+                nested[0]++;
+                return;
+            }
+            int[] pending = {1};
+            _releasing.set(pending);
+            try {
+                while (pending[0]>0) {
+                    pending[0]--;
+                    Runnable next;
+                    synchronized (this) {
+                        next = _waiting.pollFirst();
+                        if (next==null) {
+                            _available++;
+                        }
+                    }
+                    if (next!=null) {
+                        next.run();
+                    }
+                }
+            } finally {
+                _releasing.remove();
+            }
+            if (_references<=0) {
+                removeIfIdle();
+            }
+        }//release
+    }//Limit
+
+    protected final Executor _executor;
+    protected final Limit _limit;
+    // Guards _closed too, so no call is accepted after close()
+    protected final HashMap<String, CompletableFuture<Void>> _tails = new HashMap<>();
+    protected boolean _closed = false;
+
+    public FbSqlAsyncExecutor(Executor executor, String database, int maxConcurrency) {
+        _executor = executor==null ? getDefaultExecutor() : executor;
+        _limit = Limit.acquire(database, Math.max(1, maxConcurrency));
+    }//FbSqlAsyncExecutor
+
+    public int getMaxConcurrency() { return _limit.getPermits(); }
+
+    // Calls already submitted still run; the database limit is dropped once no executor uses it
+    public void close() {
+        synchronized (_tails) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+        }
+        _limit.unreference();
+    }//close
+
+    // Closes only when no submitted call is queued or running
+    public boolean closeIfIdle() {
+        synchronized (_tails) {
+            if (_closed) {
+                return true;
+            }
+            if (!_tails.isEmpty()) {
+                return false;
+            }
+            _closed = true;
+        }
+        _limit.unreference();
+        return true;
+    }//closeIfIdle
+
+    public static Executor getDefaultExecutor() {
+        if (_defaultExecutor==null) {
+            synchronized (FbSqlAsyncExecutor.class) {
+                if (_defaultExecutor==null) {
+                    _defaultExecutor = createDefaultExecutor();
+                }
+            }
+        }
+        return _defaultExecutor;
+    }//getDefaultExecutor
+
+    protected static Executor createDefaultExecutor() {
+        try {
+            // Virtual threads (JDK 21+), looked up reflectively to keep Java 8 compatibility
+            Executor executor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            appLogger.debug("FbSqlAsyncExecutor: using virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | SecurityException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "FbSqlAsync-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }//createDefaultExecutor
+
+    public <T> CompletableFuture<T> submit(String transaction, Task<T> task) {
+        CompletableFuture<T> result = trySubmit(transaction, task);
+        if (result==null) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(new FbSqlException("Async executor is closed"));
+        }
+        return result;
+    }//submit
+
+    // null when the executor is closed
+    protected <T> CompletableFuture<T> trySubmit(String transaction, Task<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> tail = new CompletableFuture<>();
+        CompletableFuture<Void> previous;
+        synchronized (_tails) {
+            if (_closed) {
+                return null;
+            }
+            previous = _tails.getOrDefault(transaction, COMPLETED);
+            _tails.put(transaction, tail);
+        }
+        tail.whenComplete((v, t) -> {
+            synchronized (_tails) {
+                _tails.remove(transaction, tail);
+            }
+        });
+        // Calls on the same transaction run strictly one after another, in submission order;
+        // the permit is taken before the task reaches the executor, so no executor thread waits for one
+        previous.whenComplete((v, t) -> _limit.dispatch(() -> start(task, result, tail)));
+        return result;
+    }//trySubmit
+
+    protected <T> void start(Task<T> task, CompletableFuture<T> result, CompletableFuture<Void> tail) {
+        try {
+            _executor.execute(() -> run(task, result, tail));
+        } catch (RuntimeException re) {
+            // Rejected (e.g. executor shut down): give the permit back and fail this call only
+            _limit.release();
+            result.completeExceptionally(new FbSqlException(re));
+            tail.complete(null);
+        }
+    }//start
+
+    protected <T> void run(Task<T> task, CompletableFuture<T> result, CompletableFuture<Void> tail) {
+        T value = null;
+        FbSqlException error = null;
+        try {
+            value = task.call();
+        } catch (FbSqlException fe) {
+            error = fe;
+        } catch (RuntimeException re) {
+            error = new FbSqlException(re);
+        } finally {
+            // Released before completing, so callers chaining on the result find the permit free
+            _limit.release();
+        }
+        if (error!=null) {
+            result.completeExceptionally(error);
+        } else {
+            result.complete(value);
+        }
+        tail.complete(null);
+    }//run
+}//FbSqlAsyncExecutor
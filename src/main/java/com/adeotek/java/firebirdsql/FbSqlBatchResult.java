@@ -0,0 +1,49 @@
+package com.adeotek.java.firebirdsql;
+
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Per-statement outcome of executeBatch/executeScript
+public class FbSqlBatchResult {
+    public enum FailurePolicy {
+        // The first failing statement rolls back the transaction and is reported through FbSqlException
+        STOP_ON_ERROR,
+        // A failing statement is undone on its own (Firebird statement-level atomicity), the rest still run
+        CONTINUE_ON_ERROR
+    }//FailurePolicy
+
+    protected final int[] _updateCounts;
+    protected final TreeMap<Integer, FbSqlException> _errors = new TreeMap<>();
+
+    // Update count per statement; Statement.EXECUTE_FAILED for failed ones, Statement.SUCCESS_NO_INFO when unknown
+    public int[] getUpdateCounts() { return _updateCounts; }
+    // Keyed by statement position (0-based)
+    public Map<Integer, FbSqlException> getErrors() { return Collections.unmodifiableMap(_errors); }
+    public boolean isSuccessful() { return _errors.isEmpty(); }
+    public int getStatementCount() { return _updateCounts.length; }
+
+    protected FbSqlBatchResult(int statements) {
+        _updateCounts = new int[statements];
+    }//FbSqlBatchResult
+
+    protected void setUpdateCount(int position, int count) {
+        _updateCounts[position] = count;
+    }//setUpdateCount
+
+    protected void setError(int position, FbSqlException error) {
+        _updateCounts[position] = Statement.EXECUTE_FAILED;
+        _errors.put(position, error);
+    }//setError
+
+    public long getTotalUpdateCount() {
+        long result = 0;
+        for (int count : _updateCounts) {
+            if (count>0) {
+                result += count;
+            }
+        }
+        return result;
+    }//getTotalUpdateCount
+}//FbSqlBatchResult
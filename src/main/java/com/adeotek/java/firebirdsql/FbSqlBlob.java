@@ -0,0 +1,204 @@
+package com.adeotek.java.firebirdsql;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Lazy BLOB handle: content is only read when streamed; valid while the owning transaction is open
+public class FbSqlBlob {
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    protected static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors());
+    // A few full-size transfer buffers shared by all threads (a per-thread buffer would be pinned by every virtual thread);
+    // values known to be smaller get an exactly sized buffer that is not kept
+    protected static final ArrayBlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    protected static final ArrayBlockingQueue<char[]> CHAR_BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    protected final Blob _blob;
+
+    public Blob getBlob() { return _blob; }
+
+    public FbSqlBlob(Blob blob) {
+        _blob = blob;
+    }//FbSqlBlob
+
+    public static FbSqlBlob wrap(Blob blob) {
+        return blob==null ? null : new FbSqlBlob(blob);
+    }//wrap
+
+    public long length() throws SQLException {
+        return _blob.length();
+    }//length
+
+    public InputStream getInputStream() throws SQLException {
+        return _blob.getBinaryStream();
+    }//getInputStream
+
+    public long transferTo(OutputStream output) throws SQLException, IOException {
+        try (InputStream input = _blob.getBinaryStream()) {
+            return copy(input, output, _blob.length());
+        }
+    }//transferTo
+
+    public long transferTo(WritableByteChannel channel) throws SQLException, IOException {
+        try (InputStream input = _blob.getBinaryStream()) {
+            byte[] buffer = acquireBuffer(_blob.length());
+            try {
+                long total = 0;
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                    total += read;
+                }
+                return total;
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+    }//transferTo
+
+    public long transferTo(Path target) throws SQLException, IOException {
+        try (OutputStream output = Files.newOutputStream(target)) {
+            return transferTo(output);
+        }
+    }//transferTo
+
+    public byte[] readBytes() throws SQLException, IOException {
+        return readBytes(_blob);
+    }//readBytes
+
+    public String readString() throws SQLException, IOException {
+        return readString(_blob);
+    }//readString
+
+    public void free() throws SQLException {
+        _blob.free();
+    }//free
+
+    // length is the expected size, negative when unknown; one extra byte lets a small read see the end at once
+    protected static byte[] acquireBuffer(long length) {
+        if (length>=0 && length<DEFAULT_BUFFER_SIZE) {
+            return new byte[(int) length + 1];
+        }
+        byte[] result = BUFFERS.poll();
+        return result!=null ? result : new byte[DEFAULT_BUFFER_SIZE];
+    }//acquireBuffer
+
+    protected static void releaseBuffer(byte[] buffer) {
+        if (buffer.length==DEFAULT_BUFFER_SIZE) {
+            BUFFERS.offer(buffer);
+        }
+    }//releaseBuffer
+
+    // length is the expected size in bytes, which is an upper bound of the UTF-8 decoded chars
+    protected static char[] acquireCharBuffer(long length) {
+        if (length>=0 && length<DEFAULT_BUFFER_SIZE / 2) {
+            return new char[(int) length + 1];
+        }
+        char[] result = CHAR_BUFFERS.poll();
+        return result!=null ? result : new char[DEFAULT_BUFFER_SIZE / 2];
+    }//acquireCharBuffer
+
+    protected static void releaseCharBuffer(char[] buffer) {
+        if (buffer.length==DEFAULT_BUFFER_SIZE / 2) {
+            CHAR_BUFFERS.offer(buffer);
+        }
+    }//releaseCharBuffer
+
+    public static long copy(InputStream input, OutputStream output) throws IOException {
+        return copy(input, output, -1);
+    }//copy
+
+    protected static long copy(InputStream input, OutputStream output, long length) throws IOException {
+        byte[] buffer = acquireBuffer(length);
+        try {
+            long total = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }//copy
+
+    // Sized from the blob length, so the content is copied once instead of through a growing buffer
+    public static byte[] readBytes(Blob blob) throws SQLException, IOException {
+        if (blob==null) {
+            return null;
+        }
+        long length = blob.length();
+        if (length>Integer.MAX_VALUE - 8) {
+            throw new IOException("BLOB too large to be read in memory: " + length + " bytes");
+        }
+        byte[] result = new byte[(int) length];
+        try (InputStream input = blob.getBinaryStream()) {
+            int offset = 0;
+            int read;
+            while (offset<result.length && (read = input.read(result, offset, result.length - offset)) != -1) {
+                offset += read;
+            }
+            return offset==result.length ? result : java.util.Arrays.copyOf(result, offset);
+        }
+    }//readBytes
+
+    // Decodes UTF-8 while reading, without an intermediate byte copy of the whole value
+    public static String readString(Blob blob) throws SQLException, IOException {
+        if (blob==null) {
+            return null;
+        }
+        long length = blob.length();
+        StringBuilder result = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE - 8));
+        char[] buffer = acquireCharBuffer(length);
+        try (Reader reader = new InputStreamReader(blob.getBinaryStream(), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                result.append(buffer, 0, read);
+            }
+        } finally {
+            releaseCharBuffer(buffer);
+        }
+        return result.toString();
+    }//readString
+
+    public static String readBase64(Blob blob) throws SQLException, IOException {
+        byte[] content = readBytes(blob);
+        return content==null ? null : Base64.getEncoder().encodeToString(content);
+    }//readBase64
+
+    // File content as a blob parameter; the file is closed once the driver has read it to the end
+    public static InputStream openFile(Path source) throws IOException {
+        return new FilterInputStream(new BufferedInputStream(Files.newInputStream(source), DEFAULT_BUFFER_SIZE)) {
+            protected boolean _closed = false;
+
+            @Override
+            public int read() throws IOException {
+                return _closed ? -1 : closeAtEnd(super.read());
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return _closed ? -1 : closeAtEnd(super.read(buffer, offset, length));
+            }
+
+            protected int closeAtEnd(int read) throws IOException {
+                if (read==-1 && !_closed) {
+                    _closed = true;
+                    close();
+                }
+                return read;
+            }
+        };
+    }//openFile
+}//FbSqlBlob
@@ -0,0 +1,222 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Column-oriented result: primitive arrays for numeric columns, dictionary-encoded strings for the rest
+public class FbSqlColumnarResult {
+    public static final int TYPE_INT = 1;
+    public static final int TYPE_LONG = 2;
+    public static final int TYPE_DOUBLE = 3;
+    public static final int TYPE_STRING = 4;
+
+    protected static final int INITIAL_CAPACITY = 64;
+
+    protected final String[] _names;
+    protected final int[] _kinds;
+    protected final Object[] _values;
+    protected final long[][] _nulls;
+    protected final ArrayList<ArrayList<String>> _dictionaries;
+    protected final ArrayList<HashMap<String, Integer>> _dictionaryIndexes;
+    protected int _rowCount = 0;
+    protected int _capacity = INITIAL_CAPACITY;
+
+    public int getRowCount() { return _rowCount; }
+    public int getColumnCount() { return _names.length; }
+    public String getColumnName(int column) { return _names[column]; }
+    public int getColumnKind(int column) { return _kinds[column]; }
+
+    protected FbSqlColumnarResult(FbSqlResultReader reader) {
+        int count = reader.getColumnCount();
+        _names = new String[count];
+        _kinds = new int[count];
+        _values = new Object[count];
+        _nulls = new long[count][];
+        _dictionaries = new ArrayList<>(count);
+        _dictionaryIndexes = new ArrayList<>(count);
+        for (int i=0; i<count; i++) {
+            _names[i] = reader.getColumnName(i+1);
+            switch (reader.getColumnTypeName(i+1)) {
+                case "INTEGER":
+                case "SMALLINT":
+                    _kinds[i] = TYPE_INT;
+                    _values[i] = new int[_capacity];
+                    break;
+                case "BIGINT":
+                    _kinds[i] = TYPE_LONG;
+                    _values[i] = new long[_capacity];
+                    break;
+                case "DECIMAL":
+                    _kinds[i] = TYPE_DOUBLE;
+                    _values[i] = new double[_capacity];
+                    break;
+                default:
+                    _kinds[i] = TYPE_STRING;
+                    _values[i] = new int[_capacity];
+                    break;
+            }
+            _nulls[i] = new long[(_capacity >> 6) + 1];
+            _dictionaries.add(_kinds[i]==TYPE_STRING ? new ArrayList<>() : null);
+            _dictionaryIndexes.add(_kinds[i]==TYPE_STRING ? new HashMap<>() : null);
+        }
+    }//FbSqlColumnarResult
+
+    public static FbSqlColumnarResult fromResultSet(ResultSet results, FbSqlResultReader reader) throws SQLException {
+        FbSqlColumnarResult result = new FbSqlColumnarResult(reader);
+        while (results.next()) {
+            result.appendRow(results, reader);
+        }
+        result.trim();
+        return result;
+    }//fromResultSet
+
+    protected void appendRow(ResultSet results, FbSqlResultReader reader) throws SQLException {
+        if (_rowCount==_capacity) {
+            grow();
+        }
+        int row = _rowCount;
+        for (int i=0; i<_names.length; i++) {
+            switch (_kinds[i]) {
+                case TYPE_INT:
+                    ((int[]) _values[i])[row] = results.getInt(i+1);
+                    break;
+                case TYPE_LONG:
+                    ((long[]) _values[i])[row] = results.getLong(i+1);
+                    break;
+                case TYPE_DOUBLE:
+                    ((double[]) _values[i])[row] = results.getDouble(i+1);
+                    break;
+                default:
+                    String value = reader.readString(results, i+1);
+                    ((int[]) _values[i])[row] = value==null ? -1 : encode(i, value);
+                    break;
+            }
+            if (results.wasNull()) {
+                _nulls[i][row >> 6] |= 1L << (row & 63);
+            }
+        }
+        _rowCount++;
+    }//appendRow
+
+    protected int encode(int column, String value) {
+        Integer code = _dictionaryIndexes.get(column).get(value);
+        if (code==null) {
+            code = _dictionaries.get(column).size();
+            _dictionaries.get(column).add(value);
+            _dictionaryIndexes.get(column).put(value, code);
+        }
+        return code;
+    }//encode
+
+    protected void grow() {
+        resize(_capacity << 1);
+    }//grow
+
+    protected void trim() {
+        resize(Math.max(_rowCount, 1));
+        // The reverse index is only needed while loading
+        for (int i=0; i<_dictionaryIndexes.size(); i++) {
+            _dictionaryIndexes.set(i, null);
+        }
+    }//trim
+
+    protected void resize(int capacity) {
+        for (int i=0; i<_names.length; i++) {
+            if (_values[i] instanceof int[]) {
+                _values[i] = Arrays.copyOf((int[]) _values[i], capacity);
+            } else if (_values[i] instanceof long[]) {
+                _values[i] = Arrays.copyOf((long[]) _values[i], capacity);
+            } else {
+                _values[i] = Arrays.copyOf((double[]) _values[i], capacity);
+            }
+            _nulls[i] = Arrays.copyOf(_nulls[i], (capacity >> 6) + 1);
+        }
+        _capacity = capacity;
+    }//resize
+
+    public int getColumnIndex(String name) {
+        for (int i=0; i<_names.length; i++) {
+            if (_names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }//getColumnIndex
+
+    public boolean isNull(int column, int row) {
+        return (_nulls[column][row >> 6] & (1L << (row & 63)))!=0;
+    }//isNull
+
+    // Backing arrays; only the first getRowCount() entries are meaningful
+    public int[] getIntColumn(int column) { return (int[]) _values[column]; }
+    public long[] getLongColumn(int column) { return (long[]) _values[column]; }
+    public double[] getDoubleColumn(int column) { return (double[]) _values[column]; }
+    public int[] getStringCodes(int column) { return (int[]) _values[column]; }
+    public ArrayList<String> getStringDictionary(int column) { return _dictionaries.get(column); }
+
+    public String getString(int column, int row) {
+        if (_kinds[column]!=TYPE_STRING) {
+            return isNull(column, row) ? null : getValue(column, row).getAsString();
+        }
+        int code = ((int[]) _values[column])[row];
+        return code<0 ? null : _dictionaries.get(column).get(code);
+    }//getString
+
+    public double sum(int column) {
+        double result = 0;
+        switch (_kinds[column]) {
+            case TYPE_INT:
+                int[] ints = (int[]) _values[column];
+                for (int r=0; r<_rowCount; r++) { result += ints[r]; }
+                break;
+            case TYPE_LONG:
+                long[] longs = (long[]) _values[column];
+                for (int r=0; r<_rowCount; r++) { result += longs[r]; }
+                break;
+            case TYPE_DOUBLE:
+                double[] doubles = (double[]) _values[column];
+                for (int r=0; r<_rowCount; r++) { result += doubles[r]; }
+                break;
+            default:
+                throw new IllegalArgumentException("Column is not numeric: " + _names[column]);
+        }
+        return result;
+    }//sum
+
+    protected JsonPrimitive getValue(int column, int row) {
+        switch (_kinds[column]) {
+            case TYPE_INT:
+                return new JsonPrimitive(((int[]) _values[column])[row]);
+            case TYPE_LONG:
+                return new JsonPrimitive(((long[]) _values[column])[row]);
+            case TYPE_DOUBLE:
+                return new JsonPrimitive(((double[]) _values[column])[row]);
+            default:
+                return new JsonPrimitive(getString(column, row));
+        }
+    }//getValue
+
+    // Same rows as processResultSet: numeric nulls read as 0 there, so only null strings become JSON nulls
+    public JsonArray toJsonArray() {
+        JsonArray result = new JsonArray();
+        for (int r=0; r<_rowCount; r++) {
+            JsonObject row = new JsonObject();
+            for (int i=0; i<_names.length; i++) {
+                if (_kinds[i]==TYPE_STRING) {
+                    row.addProperty(_names[i], getString(i, r));
+                } else {
+                    row.add(_names[i], getValue(i, r));
+                }
+            }
+            result.add(row);
+        }
+        return result;
+    }//toJsonArray
+}//FbSqlColumnarResult
@@ -2,14 +2,27 @@ package com.adeotek.java.firebirdsql;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.tools.picocli.CommandLine;
+import org.firebirdsql.ds.FBXADataSource;
+import org.firebirdsql.jca.FBResourceException;
+import org.firebirdsql.jdbc.FBTpbMapper;
 import org.firebirdsql.jdbc.FirebirdCallableStatement;
+import org.firebirdsql.jdbc.FirebirdConnection;
 
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
 
 public class FbSqlConnection {
     protected static final Logger appLogger = LogManager.getLogger(FbSqlConnection.class);
@@ -39,12 +52,113 @@ public class FbSqlConnection {
     protected String _connectionString = null;
     protected Driver _driver = null;
     protected String _defaultConnectionName = null;
-    protected HashMap<String, Connection> _transactions = null;
+    protected final ConcurrentHashMap<String, Connection> _transactions = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, FbSqlStatementCache> _statementCaches = new ConcurrentHashMap<>();
+    // One lock per named transaction: a transaction is never used by two threads at once
+    protected final ConcurrentHashMap<String, ReentrantLock> _transactionLocks = new ConcurrentHashMap<>();
+    // Profile each open transaction was started with; none for the isolation level mapping (FB_CONN_PARAMETERS)
+    protected final ConcurrentHashMap<String, FbSqlTransactionProfile> _transactionProfiles = new ConcurrentHashMap<>();
+    protected int _statementCacheSize = 50;
+    protected int _readerPlansSize = 256;
+    // Access-ordered LRU like FbSqlStatementCache, shared by all transactions: guarded by itself
+    protected final LinkedHashMap<String, FbSqlResultReader> _readerPlans = new LinkedHashMap<String, FbSqlResultReader>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FbSqlResultReader> eldest) {
+            return size()>_readerPlansSize;
+        }
+    };
+    // Jaybird blobBufferSize connection property (bytes per blob segment round trip); 0 keeps the driver default
+    protected int _blobBufferSize = 0;
+    protected int _blockMaxRows = FbSqlExecuteBlock.DEFAULT_MAX_ROWS;
+    protected int _blockMaxParameters = FbSqlExecuteBlock.DEFAULT_MAX_PARAMETERS;
+    protected int _blockMaxMessageSize = FbSqlExecuteBlock.DEFAULT_MAX_MESSAGE_SIZE;
+    protected int _blockMaxStatementLength = FbSqlExecuteBlock.DEFAULT_MAX_STATEMENT_LENGTH;
+    protected Executor _asyncExecutorService = null;
+    protected int _asyncMaxConcurrency = 10;
+    protected volatile FbSqlAsyncExecutor _asyncExecutor = null;
+    protected FbSqlResultCache _resultCache = null;
+    // Tables written by still open (uncommitted) transactions; these transactions bypass the result cache
+    protected final ConcurrentHashMap<String, Set<String>> _dirtyTables = new ConcurrentHashMap<>();
+    protected volatile FbSqlMetrics _metrics = null;
+    protected FbSqlSlowQueryLog _slowQueryLog = null;
+    protected FbSqlProcedureMetadata _procedureMetadata = null;
+    // null keeps the connection defaults (FB_TRAN_DEFAULT_PROPERTIES)
+    protected FbSqlTransactionProfile _transactionProfile = null;
+    protected FbSqlRetryPolicy _retryPolicy = null;
+    // Transactions run by executeInTransaction with a retry policy: a failed statement rolls back, the attachment is kept
+    protected final Set<String> _retryScopes = ConcurrentHashMap.newKeySet();
+    // Transactions running as XA branches: the coordinator ends, prepares and commits/rolls them back
+    protected final Set<String> _xaScopes = ConcurrentHashMap.newKeySet();
 
     // Values: "type4"/"java"/null (default); "local"; "native"; "embedded"
     public String connectionType = null;
     public boolean logDuration = false;
+    // When enabled, physical connections are borrowed from/returned to a shared FbSqlConnectionPool
+    public boolean usePool = false;
+    protected int _poolMinSize = 0;
+    protected int _poolMaxSize = 10;
+    protected long _poolIdleTimeout = 600000;
+    protected long _poolMaxLifetime = 1800000;
     public void setLockTimeout(int timeout) { _lockTimeout = timeout; }
+    public void setStatementCacheSize(int size) { _statementCacheSize = size; }
+    public void setReaderPlansCacheSize(int size) { _readerPlansSize = size; }
+    public void setBlobBufferSize(int size) { _blobBufferSize = size; }
+    public void setExecuteBlockLimits(int maxRows, int maxParameters, int maxMessageSize, int maxStatementLength) {
+        _blockMaxRows = maxRows;
+        _blockMaxParameters = maxParameters;
+        _blockMaxMessageSize = maxMessageSize;
+        _blockMaxStatementLength = maxStatementLength;
+    }//setExecuteBlockLimits
+    // executor==null selects the default (virtual threads where available); refused while async calls are still pending
+    public synchronized void setAsyncExecutor(Executor executor, int maxConcurrencyPerDatabase) throws FbSqlException {
+        if (_asyncExecutor!=null) {
+            if (!_asyncExecutor.closeIfIdle()) {
+                throw new FbSqlException("Async executor cannot be replaced while calls are pending");
+            }
+            _asyncExecutor = null;
+        }
+        _asyncExecutorService = executor;
+        _asyncMaxConcurrency = maxConcurrencyPerDatabase;
+    }//setAsyncExecutor
+    // Opt-in; one FbSqlResultCache instance may be shared by several connections to the same database
+    public void setResultCache(FbSqlResultCache cache) { _resultCache = cache; }
+    public FbSqlResultCache getResultCache() { return _resultCache; }
+    // Shared by all connections to the same database, also published as a JMX MXBean
+    public FbSqlMetrics getMetrics() {
+        FbSqlMetrics result = _metrics;
+        if (result==null) {
+            synchronized (this) {
+                if (_metrics==null) {
+                    _metrics = FbSqlMetrics.acquire(FbSqlMetrics.getName(prepareConnectionString()));
+                }
+                result = _metrics;
+            }
+        }
+        return result;
+    }//getMetrics
+    // Procedure signatures, shared by all connections to the same database
+    public FbSqlProcedureMetadata getProcedureMetadata() {
+        if (_procedureMetadata==null) {
+            _procedureMetadata = FbSqlProcedureMetadata.getMetadata(prepareConnectionString());
+        }
+        return _procedureMetadata;
+    }//getProcedureMetadata
+    // Opt-in; one FbSqlSlowQueryLog instance may be shared by several connections
+    public void setSlowQueryLog(FbSqlSlowQueryLog slowQueryLog) { _slowQueryLog = slowQueryLog; }
+    public FbSqlSlowQueryLog getSlowQueryLog() { return _slowQueryLog; }
+    // Used by open() and beginTransaction() when no profile is given
+    public void setTransactionProfile(FbSqlTransactionProfile profile) { _transactionProfile = profile; }
+    public FbSqlTransactionProfile getTransactionProfile() { return _transactionProfile; }
+    // Default for executeInTransaction; the units of work must be safe to run more than once
+    public void setRetryPolicy(FbSqlRetryPolicy retryPolicy) { _retryPolicy = retryPolicy; }
+    public FbSqlRetryPolicy getRetryPolicy() { return _retryPolicy; }
+    public void setPoolOptions(int minSize, int maxSize, long idleTimeout, long maxLifetime) {
+        usePool = true;
+        _poolMinSize = minSize;
+        _poolMaxSize = maxSize;
+        _poolIdleTimeout = idleTimeout;
+        _poolMaxLifetime = maxLifetime;
+    }//setPoolOptions
 
     public FbSqlConnection(String database, String hostname, int port, String username, String password, String driverName) {
         try {
@@ -89,6 +203,34 @@ public class FbSqlConnection {
         }
     }//FBConnection
 
+    // Same database and settings, independent transactions registry
+    public FbSqlConnection(FbSqlConnection source) {
+        this(source._database, source._hostname, source._port, source._username, source._password, source._driverName);
+        _connectionString = source._connectionString;
+        _lockTimeout = source._lockTimeout;
+        _statementCacheSize = source._statementCacheSize;
+        _readerPlansSize = source._readerPlansSize;
+        _blobBufferSize = source._blobBufferSize;
+        _blockMaxRows = source._blockMaxRows;
+        _blockMaxParameters = source._blockMaxParameters;
+        _blockMaxMessageSize = source._blockMaxMessageSize;
+        _blockMaxStatementLength = source._blockMaxStatementLength;
+        connectionType = source.connectionType;
+        logDuration = source.logDuration;
+        usePool = source.usePool;
+        _poolMinSize = source._poolMinSize;
+        _poolMaxSize = source._poolMaxSize;
+        _poolIdleTimeout = source._poolIdleTimeout;
+        _poolMaxLifetime = source._poolMaxLifetime;
+        _asyncExecutorService = source._asyncExecutorService;
+        _asyncMaxConcurrency = source._asyncMaxConcurrency;
+        _resultCache = source._resultCache;
+        _slowQueryLog = source._slowQueryLog;
+        _transactionProfile = source._transactionProfile;
+        _retryPolicy = source._retryPolicy;
+        _driver = source._driver;
+    }//FBConnection
+
     protected String prepareConnectionString() {
         if (!Helpers.isStringEmptyOrNull(_connectionString)) {
             return _connectionString;
@@ -144,11 +286,20 @@ public class FbSqlConnection {
     }//loadDriver
 
     protected Connection connect(boolean disableAutoCommit, Properties properties) throws FbSqlException {
+        return connect(disableAutoCommit, properties, _transactionProfile);
+    }//connect
+
+    protected Connection connect(boolean disableAutoCommit, Properties properties, FbSqlTransactionProfile profile) throws FbSqlException {
+        long mts = System.nanoTime();
         long dsts = logDuration ? System.currentTimeMillis() : 0;
-        loadDriver(_driverName);
-        if (logDuration) {
-            appLogger.info("loadDriver duration: " + Helpers.getDuration(dsts));
-            dsts = System.currentTimeMillis();
+        synchronized (this) {
+            if (_driver==null) {
+                loadDriver(_driverName);
+                if (logDuration) {
+                    appLogger.info("loadDriver duration: " + Helpers.getDuration(dsts));
+                    dsts = System.currentTimeMillis();
+                }
+            }
         }
         Connection conn;
         try {
@@ -164,6 +315,9 @@ public class FbSqlConnection {
                     }
                 }
             }
+            if (_blobBufferSize>0) {
+                connectionProperties.put("blobBufferSize", String.valueOf(_blobBufferSize));
+            }
             if (properties!=null && properties.size()>0) {
                 for (Map.Entry<Object, Object> kv : properties.entrySet()) {
                     if (connectionProperties.containsKey(kv.getKey())) {
@@ -172,64 +326,154 @@ public class FbSqlConnection {
                     connectionProperties.put(kv.getKey(), kv.getValue());
                 }
             }
-            conn = _driver.connect(prepareConnectionString(), connectionProperties);
-            appLogger.info("Connection established...");
-            if (disableAutoCommit) {
-                // Disable the default autocommit
-                conn.setAutoCommit(false);
-                appLogger.info("Auto-commit is disabled");
+            if (usePool) {
+                conn = getPool(connectionProperties).borrow();
+                appLogger.debug("Pooled connection borrowed...");
+                if (conn.getAutoCommit()==disableAutoCommit) {
+                    conn.setAutoCommit(!disableAutoCommit);
+                }
+                if (profile==null) {
+                    // Drops a profile applied by a previous borrower (back to the isolation level mapping)
+                    conn.setTransactionIsolation(conn.getTransactionIsolation());
+                }
+            } else {
+                conn = _driver.connect(prepareConnectionString(), connectionProperties);
+                appLogger.info("Connection established...");
+                if (disableAutoCommit) {
+                    // Disable the default autocommit
+                    conn.setAutoCommit(false);
+                    appLogger.info("Auto-commit is disabled");
+                }
+            }
+            if (profile!=null) {
+                conn.unwrap(FirebirdConnection.class).setTransactionParameters(profile.getTransactionParameters(_lockTimeout));
             }
             checkDbWarnings(conn);
+            getMetrics().record(FbSqlMetrics.Operation.CONNECT, System.nanoTime() - mts, 0);
+            getMetrics().transactionOpened();
             if (logDuration) { appLogger.info("connect duration: " + Helpers.getDuration(dsts)); }
         } catch (SQLException se) {
-            throw new FbSqlException(se);
+            FbSqlException e = new FbSqlException(se);
+            getMetrics().recordError(FbSqlMetrics.Operation.CONNECT, e);
+            throw e;
         }
         return conn;
     }//connect
 
-    protected void disconnect(String transaction) throws FbSqlException {
-        if(Helpers.isStringEmptyOrNull(transaction)) {
-            throw new FbSqlException("Invalid connection/transaction identifier");
+    // The pool options of the instance that creates the shared pool win; they are never changed afterwards
+    protected FbSqlConnectionPool getPool(Properties connectionProperties) {
+        return FbSqlConnectionPool.getPool(_driver, prepareConnectionString(), connectionProperties,
+                _poolMinSize, _poolMaxSize, _poolIdleTimeout, _poolMaxLifetime);
+    }//getPool
+
+    protected void closeConnection(Connection conn) throws SQLException {
+        if (conn==null) {
+            return;
+        }
+        getMetrics().transactionClosed();
+        FbSqlConnectionPool pool = FbSqlConnectionPool.getOwner(conn);
+        if (pool!=null) {
+            pool.release(conn);
+        } else if (!conn.isClosed()) {
+            conn.close();
         }
+    }//closeConnection
+
+    protected void disconnect(String transaction) throws FbSqlException {
+        ReentrantLock lock = lockTransaction(transaction);
         try {
-            if (_transactions.get(transaction)!=null && !_transactions.get(transaction).isClosed()) {
-                _transactions.get(transaction).close();
+            if(Helpers.isStringEmptyOrNull(transaction)) {
+                throw new FbSqlException("Invalid connection/transaction identifier");
             }
-            _transactions.remove(transaction);
-        } catch (SQLException se) {
-            throw new FbSqlException(se);
+            invalidateStatementCache(transaction);
+            releaseDirtyTables(transaction);
+            _xaScopes.remove(transaction);
+            try {
+                if (_transactions.get(transaction)!=null) {
+                    closeConnection(_transactions.get(transaction));
+                }
+                _transactions.remove(transaction);
+            } catch (SQLException se) {
+                throw new FbSqlException(se);
+            }
+        } finally {
+            unlockTransaction(transaction, lock);
         }
     }//disconnect
 
     protected void rollback(String transaction) throws FbSqlException {
-        if(Helpers.isStringEmptyOrNull(transaction) || _transactions==null || !_transactions.containsKey(transaction) || _transactions.get(transaction)==null) {
-            throw new FbSqlException("Invalid or inactive connection/transaction");
-        }
-        SQLException e = null;
+        ReentrantLock lock = lockTransaction(transaction);
         try {
-            if (!_transactions.get(transaction).getAutoCommit()) {
-                _transactions.get(transaction).rollback();
+            if(Helpers.isStringEmptyOrNull(transaction) || _transactions==null || !_transactions.containsKey(transaction) || _transactions.get(transaction)==null) {
+                throw new FbSqlException("Invalid or inactive connection/transaction");
+            }
+            SQLException e = null;
+            invalidateStatementCache(transaction);
+            releaseDirtyTables(transaction);
+            if (_xaScopes.contains(transaction)) {
+                // Local rollback is not allowed on an XA branch; the coordinator rolls back the whole distributed transaction
+                return;
             }
-        } catch (SQLException se) {
-            e = se;
-        } finally {
             try {
                 if (!_transactions.get(transaction).getAutoCommit()) {
-                    if (_transactions.get(transaction) != null && !_transactions.get(transaction).isClosed()) {
-                        _transactions.get(transaction).close();
-                    }
-                    _transactions.remove(transaction);
+                    _transactions.get(transaction).rollback();
                 }
             } catch (SQLException se) {
-                if (e==null) { e = se; }
-                else { e.setNextException(se); }
+                e = se;
+            } finally {
+                try {
+                    if (!_transactions.get(transaction).getAutoCommit() && !_retryScopes.contains(transaction)) {
+                        if (_transactions.get(transaction) != null) {
+                            closeConnection(_transactions.get(transaction));
+                        }
+                        _transactions.remove(transaction);
+                    }
+                } catch (SQLException se) {
+                    if (e==null) { e = se; }
+                    else { e.setNextException(se); }
+                }
             }
-        }
-        if (e!=null) {
-            throw new FbSqlException(e);
+            if (e!=null) {
+                throw new FbSqlException(e);
+            }
+        } finally {
+            unlockTransaction(transaction, lock);
         }
     }//rollback
 
+    protected ReentrantLock lockTransaction(String transaction) {
+        String key = transaction==null ? "" : transaction;
+        while (true) {
+            ReentrantLock lock = _transactionLocks.computeIfAbsent(key, k -> new ReentrantLock());
+            lock.lock();
+            if (_transactionLocks.get(key)==lock) {
+                return lock;
+            }
+            // The transaction ended and its lock was dropped while this thread was waiting for it
+            lock.unlock();
+        }
+    }//lockTransaction
+
+    // The last unlock of a transaction that is no longer open also drops its lock, so ad-hoc names do not pile up
+    protected void unlockTransaction(String transaction, ReentrantLock lock) {
+        String key = transaction==null ? "" : transaction;
+        if (lock.getHoldCount()==1 && !_transactions.containsKey(key)) {
+            _transactionProfiles.remove(key);
+            _transactionLocks.remove(key, lock);
+        }
+        lock.unlock();
+    }//unlockTransaction
+
+    // Called with the transaction lock held; the profile is dropped with the lock when the transaction ends
+    protected void registerTransaction(String transaction, Connection connection, FbSqlTransactionProfile profile) {
+        if (profile!=null) {
+            _transactionProfiles.put(transaction, profile);
+        } else {
+            _transactionProfiles.remove(transaction);
+        }
+        _transactions.put(transaction, connection);
+    }//registerTransaction
+
     protected String getCurrentConnection(String transaction) throws FbSqlException {
         String tranName = Helpers.isStringEmptyOrNull(transaction) ? _defaultConnectionName : transaction;
         if (_transactions==null || !_transactions.containsKey(tranName)) {
@@ -238,6 +482,88 @@ public class FbSqlConnection {
         return tranName;
     }//getCurrentConnection
 
+    protected PreparedStatement prepareCachedStatement(String transaction, String query) throws SQLException {
+        if (_statementCacheSize<=0) {
+            return _transactions.get(transaction).prepareStatement(query);
+        }
+        FbSqlStatementCache cache = _statementCaches.get(transaction);
+        if (cache==null || cache.getConnection()!=_transactions.get(transaction)) {
+            if (cache!=null) {
+                cache.clear();
+            }
+            cache = new FbSqlStatementCache(_transactions.get(transaction), _statementCacheSize);
+            _statementCaches.put(transaction, cache);
+        }
+        return cache.prepare(query);
+    }//prepareCachedStatement
+
+    protected CallableStatement prepareCachedCall(String transaction, String call) throws SQLException {
+        if (_statementCacheSize<=0) {
+            return _transactions.get(transaction).prepareCall(call);
+        }
+        FbSqlStatementCache cache = _statementCaches.get(transaction);
+        if (cache==null || cache.getConnection()!=_transactions.get(transaction)) {
+            if (cache!=null) {
+                cache.clear();
+            }
+            cache = new FbSqlStatementCache(_transactions.get(transaction), _statementCacheSize);
+            _statementCaches.put(transaction, cache);
+        }
+        return cache.prepareCall(call);
+    }//prepareCachedCall
+
+    protected void releaseCachedStatement(PreparedStatement statement) throws SQLException {
+        if (statement!=null && _statementCacheSize<=0) {
+            statement.close();
+        }
+    }//releaseCachedStatement
+
+    protected void invalidateStatementCache(String transaction) {
+        if (transaction==null) {
+            return;
+        }
+        FbSqlStatementCache cache = _statementCaches.remove(transaction);
+        if (cache!=null) {
+            cache.clear();
+        }
+    }//invalidateStatementCache
+
+    public FbSqlStatementCache getStatementCache(String transaction) {
+        String tran = Helpers.isStringEmptyOrNull(transaction) ? _defaultConnectionName : transaction;
+        return _statementCaches.get(tran);
+    }//getStatementCache
+
+    protected String prepareResultCacheKey(String transaction, String query, LinkedHashMap<String, Object> parameters) throws SQLException {
+        if (_resultCache==null || _dirtyTables.containsKey(transaction)
+                || _resultCache.getReadTables(_transactions.get(transaction), query)==null) {
+            return null;
+        }
+        // A profile's TPB is not reflected by the isolation level, e.g. READ_ONLY and SNAPSHOT_READ_ONLY results differ
+        return FbSqlResultCache.prepareKey(query, parameters, _transactions.get(transaction).getTransactionIsolation(),
+                _transactionProfiles.get(transaction));
+    }//prepareResultCacheKey
+
+    protected void invalidateResultCache(String transaction, String table) throws SQLException {
+        if (_resultCache==null) {
+            return;
+        }
+        _resultCache.invalidateTable(table);
+        if (_transactions.get(transaction)!=null && !_transactions.get(transaction).getAutoCommit()) {
+            // Other readers may cache pre-commit data meanwhile, so invalidate again when the transaction ends
+            _dirtyTables.computeIfAbsent(transaction, k -> ConcurrentHashMap.newKeySet()).add(table);
+        }
+    }//invalidateResultCache
+
+    protected void releaseDirtyTables(String transaction) {
+        Set<String> tables = transaction==null ? null : _dirtyTables.remove(transaction);
+        if (tables==null || _resultCache==null) {
+            return;
+        }
+        for (String table : tables) {
+            _resultCache.invalidateTable(table);
+        }
+    }//releaseDirtyTables
+
     protected void checkDbWarnings(String transaction) throws SQLException {
         String tran = Helpers.isStringEmptyOrNull(transaction) ? _defaultConnectionName : transaction;
         if (_transactions==null || !_transactions.containsKey(tran) || _transactions.get(tran)==null) {
@@ -262,15 +588,19 @@ public class FbSqlConnection {
     }//checkDbWarnings
 
     public void open(boolean disableAutoCommit, Properties properties) throws FbSqlException {
-        if (_transactions!=null && _transactions.containsKey(_defaultConnectionName) && _transactions.get(_defaultConnectionName)!=null) {
-            throw new FbSqlException("Connection already opened");
-        }
-        if (_transactions==null) {
-            _transactions = new HashMap<>();
-        } else if(_transactions.containsKey(_defaultConnectionName)) {
-            _transactions.remove(_defaultConnectionName);
+        ReentrantLock lock = lockTransaction(_defaultConnectionName);
+        try {
+            if (_transactions!=null && _transactions.containsKey(_defaultConnectionName) && _transactions.get(_defaultConnectionName)!=null) {
+                throw new FbSqlException("Connection already opened");
+            }
+            if(_transactions.containsKey(_defaultConnectionName)) {
+                invalidateStatementCache(_defaultConnectionName);
+                _transactions.remove(_defaultConnectionName);
+            }
+            registerTransaction(_defaultConnectionName, connect(disableAutoCommit, properties), _transactionProfile);
+        } finally {
+            unlockTransaction(_defaultConnectionName, lock);
         }
-        _transactions.put(_defaultConnectionName, connect(disableAutoCommit, properties));
     }//open
 
     public void open() throws FbSqlException {
@@ -286,44 +616,76 @@ public class FbSqlConnection {
         if (_transactions!=null && _transactions.size()>0) {
             try {
                 for(String tran : _transactions.keySet()) {
+                    ReentrantLock lock = lockTransaction(tran);
+                    invalidateStatementCache(tran);
+                    releaseDirtyTables(tran);
                     try {
-                        if (_transactions.get(tran)!=null && !_transactions.get(tran).isClosed()) {
-                            _transactions.get(tran).close();
+                        if (_transactions.get(tran)!=null) {
+                            closeConnection(_transactions.get(tran));
                         }
+                        _transactions.remove(tran);
                     } catch (SQLException se) {
                         if (e == null) { e = se; }
                         else { e.setNextException(se); }
                     } catch (Exception er) {
                         appLogger.error(er.getClass().getSimpleName() + ": " + er.getMessage());
+                    } finally {
+                        unlockTransaction(tran, lock);
                     }
                 }
                 _transactions.clear();
+                _transactionProfiles.clear();
+                _xaScopes.clear();
             } catch (Exception err) {
                 appLogger.error(err.getClass().getSimpleName() + ": " + err.getMessage());
-                _transactions = null;
+                _transactions.clear();
             }
         }
         if (_driver!=null) {
             _driver = null;
         }
+        synchronized (this) {
+            if (_metrics!=null) {
+                _metrics.release();
+                _metrics = null;
+            }
+            if (_asyncExecutor!=null) {
+                _asyncExecutor.close();
+                _asyncExecutor = null;
+            }
+        }
         if (e!=null) {
             throw new FbSqlException(e);
         }
     }//destroy
 
-    public void beginTransaction(String transaction, boolean overwrite, Properties properties) throws FbSqlException {
-        if(Helpers.isStringEmptyOrNull(transaction)) {
-            throw new FbSqlException("Invalid transaction identifier");
-        }
-        if (_transactions!=null && _transactions.containsKey(transaction) && _transactions.get(transaction)!=null && !overwrite) {
-            throw new FbSqlException("Transaction already started");
-        }
-        if (_transactions==null) {
-            _transactions = new HashMap<>();
-        } else if(_transactions.containsKey(transaction)) {
-            _transactions.remove(transaction);
+    public void beginTransaction(String transaction, boolean overwrite, Properties properties, FbSqlTransactionProfile profile) throws FbSqlException {
+        ReentrantLock lock = lockTransaction(transaction);
+        try {
+            if(Helpers.isStringEmptyOrNull(transaction)) {
+                throw new FbSqlException("Invalid transaction identifier");
+            }
+            if (_transactions!=null && _transactions.containsKey(transaction) && _transactions.get(transaction)!=null && !overwrite) {
+                throw new FbSqlException("Transaction already started");
+            }
+            if(_transactions.containsKey(transaction)) {
+                invalidateStatementCache(transaction);
+                releaseDirtyTables(transaction);
+                _transactions.remove(transaction);
+            }
+            FbSqlTransactionProfile effective = profile==null ? _transactionProfile : profile;
+            registerTransaction(transaction, connect(true, properties, effective), effective);
+        } finally {
+            unlockTransaction(transaction, lock);
         }
-        _transactions.put(transaction, connect(true, properties));
+    }//beginTransaction
+
+    public void beginTransaction(String transaction, boolean overwrite, Properties properties) throws FbSqlException {
+        beginTransaction(transaction, overwrite, properties, null);
+    }//beginTransaction
+
+    public void beginTransaction(String transaction, FbSqlTransactionProfile profile) throws FbSqlException {
+        beginTransaction(transaction, false, null, profile);
     }//beginTransaction
 
     public void beginTransaction(String transaction, boolean overwrite) throws FbSqlException {
@@ -331,24 +693,35 @@ public class FbSqlConnection {
     }//beginTransaction
 
     public void commitTransaction(String transaction, boolean keepOpened) throws FbSqlException {
-        if(Helpers.isStringEmptyOrNull(transaction) || _transactions==null || !_transactions.containsKey(transaction) || _transactions.get(transaction)==null) {
-            throw new FbSqlException("Invalid or inactive transaction");
-        }
+        ReentrantLock lock = lockTransaction(transaction);
         try {
-            _transactions.get(transaction).commit();
-        } catch (SQLException se) {
-            throw new FbSqlException(se);
-        } finally {
-            if (!keepOpened) {
-                try {
-                    if (_transactions.get(transaction)!=null && !_transactions.get(transaction).isClosed()) {
-                        _transactions.get(transaction).close();
+            if(Helpers.isStringEmptyOrNull(transaction) || _transactions==null || !_transactions.containsKey(transaction) || _transactions.get(transaction)==null) {
+                throw new FbSqlException("Invalid or inactive transaction");
+            }
+            long mts = System.nanoTime();
+            try {
+                _transactions.get(transaction).commit();
+                getMetrics().record(FbSqlMetrics.Operation.COMMIT, System.nanoTime() - mts, 0);
+            } catch (SQLException se) {
+                FbSqlException e = new FbSqlException(se);
+                getMetrics().recordError(FbSqlMetrics.Operation.COMMIT, e);
+                throw e;
+            } finally {
+                releaseDirtyTables(transaction);
+                if (!keepOpened) {
+                    invalidateStatementCache(transaction);
+                    try {
+                        if (_transactions.get(transaction)!=null) {
+                            closeConnection(_transactions.get(transaction));
+                        }
+                        _transactions.remove(transaction);
+                    } catch (SQLException se) {
+                        throw new FbSqlException(se);
                     }
-                    _transactions.remove(transaction);
-                } catch (SQLException se) {
-                    throw new FbSqlException(se);
                 }
             }
+        } finally {
+            unlockTransaction(transaction, lock);
         }
     }//commitTransaction
 
@@ -357,24 +730,35 @@ public class FbSqlConnection {
     }//commitTransaction
 
     public void rollbackTransaction(String transaction, boolean keepOpened) throws FbSqlException {
-        if(Helpers.isStringEmptyOrNull(transaction) || _transactions==null || !_transactions.containsKey(transaction) || _transactions.get(transaction)==null) {
-            throw new FbSqlException("Invalid or inactive transaction");
-        }
+        ReentrantLock lock = lockTransaction(transaction);
         try {
-            _transactions.get(transaction).rollback();
-        } catch (SQLException se) {
-            throw new FbSqlException(se);
-        } finally {
-            if (!keepOpened) {
-                try {
-                    if (_transactions.get(transaction)!=null && !_transactions.get(transaction).isClosed()) {
-                        _transactions.get(transaction).close();
+            if(Helpers.isStringEmptyOrNull(transaction) || _transactions==null || !_transactions.containsKey(transaction) || _transactions.get(transaction)==null) {
+                throw new FbSqlException("Invalid or inactive transaction");
+            }
+            long mts = System.nanoTime();
+            try {
+                _transactions.get(transaction).rollback();
+                getMetrics().record(FbSqlMetrics.Operation.ROLLBACK, System.nanoTime() - mts, 0);
+            } catch (SQLException se) {
+                FbSqlException e = new FbSqlException(se);
+                getMetrics().recordError(FbSqlMetrics.Operation.ROLLBACK, e);
+                throw e;
+            } finally {
+                releaseDirtyTables(transaction);
+                invalidateStatementCache(transaction);
+                if (!keepOpened) {
+                    try {
+                        if (_transactions.get(transaction)!=null) {
+                            closeConnection(_transactions.get(transaction));
+                        }
+                        _transactions.remove(transaction);
+                    } catch (SQLException se) {
+                        throw new FbSqlException(se);
                     }
-                    _transactions.remove(transaction);
-                } catch (SQLException se) {
-                    throw new FbSqlException(se);
                 }
             }
+        } finally {
+            unlockTransaction(transaction, lock);
         }
     }//rollbackTransaction
 
@@ -386,212 +770,717 @@ public class FbSqlConnection {
         disconnect(transaction);
     }//closeTransaction
 
-    protected PreparedStatement prepareParams(PreparedStatement statement, LinkedHashMap<String, Object> parameters) throws SQLException, FbSqlException {
-        if (parameters==null || parameters.size()==0) {
-            return statement;
+    // Runs work in its own short transaction with the given profile: committed on success, rolled back on failure.
+    // With a retry policy, retryable failures roll back and run work again on the same attachment.
+    public <T> T executeInTransaction(FbSqlTransactionProfile profile, FbSqlRetryPolicy retryPolicy, FbSqlTransactionProfile.Work<T> work) throws FbSqlException {
+        String tran = "FbSqlTransaction-" + UUID.randomUUID();
+        boolean committed = false;
+        if (retryPolicy!=null) {
+            _retryScopes.add(tran);
         }
-        int i = 0;
-        for (Map.Entry<String, Object> kv : parameters.entrySet()) {
-            i++;
-            if (kv.getValue() == null) {
-                statement.setNull(i, Types.NULL);
-            } else {
-                if (kv.getValue().getClass().getSimpleName().equals("Integer")) {
-                    statement.setInt(i, (Integer) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Long")) {
-                    statement.setLong(i, (Long) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Short")) {
-                    statement.setLong(i, (Short) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Boolean")) {
-                    statement.setBoolean(i, (Boolean) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Double")) {
-                    statement.setDouble(i, (Double) kv.getValue());
-                } else if (kv.getValue().getClass().getName().equals("java.util.Date")) {
-                    statement.setTimestamp(i, new Timestamp(((java.util.Date) kv.getValue()).getTime()));
-                } else if (kv.getValue().getClass().getName().equals("java.sql.Date")) {
-                    statement.setTimestamp(i, new Timestamp(((java.sql.Date) kv.getValue()).getTime()));
-                } else if (kv.getValue().getClass().getSimpleName().equals("String")) {
-                    String val = kv.getValue().toString();
-                    if (val.length()>4000) {
-                        statement.setBlob(i, Helpers.stringToInputStream(val));
-                    } else {
-                        statement.setString(i, val);
+        try {
+            for (int attempt=1; ; attempt++) {
+                try {
+                    if (!_transactions.containsKey(tran)) {
+                        beginTransaction(tran, false, null, profile);
+                    }
+                    T result = work.call(tran);
+                    commitTransaction(tran);
+                    committed = true;
+                    if (attempt>1) {
+                        appLogger.debug("executeInTransaction succeeded after " + attempt + " attempts");
                     }
+                    return result;
+                } catch (FbSqlException e) {
+                    if (retryPolicy==null || !retryPolicy.isRetryable(e)) {
+                        throw e;
+                    }
+                    if (attempt>=retryPolicy.getMaxAttempts()) {
+                        getMetrics().recordRetryExhausted();
+                        throw e;
+                    }
+                    getMetrics().recordRetry();
+                    appLogger.debug("executeInTransaction attempt " + attempt + " failed, retrying: " + e.getMessage());
+                    resetForRetry(tran);
+                    retryPolicy.backoff(attempt);
+                }
+            }
+        } finally {
+            _retryScopes.remove(tran);
+            if (!committed && _transactions.containsKey(tran)) {
+                try {
+                    rollbackTransaction(tran);
+                } catch (FbSqlException re) {
+                    appLogger.warn("executeInTransaction rollback: " + re.getMessage());
+                }
+            }
+        }
+    }//executeInTransaction
+
+    public <T> T executeInTransaction(FbSqlTransactionProfile profile, FbSqlTransactionProfile.Work<T> work) throws FbSqlException {
+        return executeInTransaction(profile, _retryPolicy, work);
+    }//executeInTransaction
+
+    // Rolls back what the failed attempt left behind; a broken attachment is dropped and reopened by the next attempt
+    protected void resetForRetry(String transaction) {
+        if (!_transactions.containsKey(transaction)) {
+            return;
+        }
+        try {
+            rollbackTransaction(transaction, true);
+        } catch (FbSqlException e) {
+            appLogger.warn("executeInTransaction rollback: " + e.getMessage());
+            try {
+                disconnect(transaction);
+            } catch (FbSqlException de) {
+                appLogger.warn("executeInTransaction disconnect: " + de.getMessage());
+            }
+        }
+    }//resetForRetry
+
+    // XA data source for the same database, credentials and connection parameters (two-phase commit across attachments)
+    public FBXADataSource getXADataSource() throws FbSqlException {
+        FBXADataSource result = new FBXADataSource();
+        String url = prepareConnectionString();
+        if (!url.startsWith(FB_CONN_STR_PREFIX)) {
+            throw new FbSqlException("Invalid connection string");
+        }
+        url = url.substring(FB_CONN_STR_PREFIX.length());
+        result.setType("PURE_JAVA");
+        for (String type : new String[] { "java", "local", "native", "embedded" }) {
+            if (url.startsWith(type + ":")) {
+                result.setType(type.equals("java") ? "PURE_JAVA" : type.toUpperCase());
+                url = url.substring(type.length() + 1);
+                break;
+            }
+        }
+        String lockTimeout = String.valueOf(_lockTimeout>=0 ? _lockTimeout : FbSqlTransactionProfile.DEFAULT_LOCK_TIMEOUT);
+        String readCommitted = FB_TRAN_DEFAULT_PROPERTIES + lockTimeout;
+        int query = url.indexOf('?');
+        if (query>=0) {
+            for (String parameter : url.substring(query + 1).split("[&;]")) {
+                int eq = parameter.indexOf('=');
+                if (eq<=0) {
+                    continue;
+                }
+                String key = parameter.substring(0, eq);
+                if (key.equals("TRANSACTION_READ_COMMITTED")) {
+                    readCommitted = parameter.substring(eq + 1);
                 } else {
-                    throw new FbSqlException("Invalid parameter type: [" + kv.getKey() + "] of type: " + kv.getValue().getClass().getSimpleName());
+                    result.setNonStandardProperty(key, parameter.substring(eq + 1));
                 }
             }
+            url = url.substring(0, query);
         }
-        return statement;
-    }//prepareParams
+        setXADatabase(result, url);
+        result.setUser(_username);
+        result.setPassword(_password);
+        if (_blobBufferSize>0) {
+            result.setBlobBufferSize(_blobBufferSize);
+        }
+        try {
+            result.setTransactionParameters(Connection.TRANSACTION_READ_COMMITTED, FBTpbMapper.processMapping(readCommitted));
+        } catch (FBResourceException re) {
+            throw new FbSqlException("Invalid transaction parameters: " + re.getMessage(), re);
+        }
+        return result;
+    }//getXADataSource
 
-    protected CallableStatement prepareCallableParams(CallableStatement statement, LinkedHashMap<String, Object> parameters) throws SQLException, FbSqlException {
+    // url without prefix and parameters: //host[:port]/path, legacy host[/port]:path or a plain path (embedded, local)
+    protected static void setXADatabase(FBXADataSource dataSource, String url) throws FbSqlException {
+        String host = null;
+        String port = null;
+        String path = url;
+        if (url.startsWith("//")) {
+            int slash = url.indexOf('/', 2);
+            if (slash<0) {
+                throw new FbSqlException("Invalid connection string");
+            }
+            host = url.substring(2, slash);
+            path = url.substring(slash + 1);
+            int colon = host.lastIndexOf(':');
+            if (colon>=0 && host.indexOf(']')<colon) {
+                port = host.substring(colon + 1);
+                host = host.substring(0, colon);
+            }
+        } else {
+            int colon = url.indexOf(':');
+            // A single letter before the colon is a Windows drive, not a host
+            if (colon>1) {
+                host = url.substring(0, colon);
+                path = url.substring(colon + 1);
+                int slash = host.indexOf('/');
+                if (slash>=0) {
+                    port = host.substring(slash + 1);
+                    host = host.substring(0, slash);
+                }
+            }
+        }
+        if (!Helpers.isStringEmptyOrNull(host)) {
+            dataSource.setServerName(host);
+        }
+        if (!Helpers.isStringEmptyOrNull(port)) {
+            try {
+                dataSource.setPortNumber(Integer.parseInt(port));
+            } catch (NumberFormatException nfe) {
+                throw new FbSqlException("Invalid connection string port: " + port, nfe);
+            }
+        }
+        dataSource.setDatabaseName(path);
+    }//setXADatabase
+
+    // Registers connection (an XA connection handle) as a named transaction and starts the XA branch xid on it.
+    // Commit and rollback go through resource (FbSqlParallelLoader); a failing execute* call leaves the branch to the coordinator.
+    protected void beginXATransaction(String transaction, Connection connection, XAResource resource, Xid xid) throws FbSqlException {
+        ReentrantLock lock = lockTransaction(transaction);
+        try {
+            if (Helpers.isStringEmptyOrNull(transaction) || connection==null || resource==null || xid==null) {
+                throw new FbSqlException("Invalid transaction identifier");
+            }
+            if (_transactions.get(transaction)!=null) {
+                throw new FbSqlException("Transaction already started");
+            }
+            try {
+                if (_transactionProfile!=null) {
+                    connection.unwrap(FirebirdConnection.class).setTransactionParameters(_transactionProfile.getTransactionParameters(_lockTimeout));
+                }
+                resource.start(xid, XAResource.TMNOFLAGS);
+            } catch (SQLException se) {
+                throw new FbSqlException(se);
+            } catch (XAException xe) {
+                throw new FbSqlException("XA start failed (error code " + xe.errorCode + ")", xe);
+            }
+            _xaScopes.add(transaction);
+            registerTransaction(transaction, connection, _transactionProfile);
+            getMetrics().transactionOpened();
+        } finally {
+            unlockTransaction(transaction, lock);
+        }
+    }//beginXATransaction
+
+    protected PreparedStatement prepareParams(PreparedStatement statement, LinkedHashMap<String, Object> parameters) throws SQLException, FbSqlException {
         if (parameters==null || parameters.size()==0) {
             return statement;
         }
         int i = 0;
         for (Map.Entry<String, Object> kv : parameters.entrySet()) {
-            i++;
-            if (kv.getValue() == null) {
-                statement.setNull(i, Types.NULL);
-            } else {
-                if (kv.getValue().getClass().getSimpleName().equals("Integer")) {
-                    statement.setInt(i, (Integer) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Long")) {
-                    statement.setLong(i, (Long) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Short")) {
-                    statement.setLong(i, (Short) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Boolean")) {
-                    statement.setBoolean(i, (Boolean) kv.getValue());
-                } else if (kv.getValue().getClass().getSimpleName().equals("Double")) {
-                    statement.setDouble(i, (Double) kv.getValue());
-                } else if (kv.getValue().getClass().getName().equals("java.util.Date")) {
-                    statement.setTimestamp(i, new Timestamp(((java.util.Date) kv.getValue()).getTime()));
-                } else if (kv.getValue().getClass().getName().equals("java.sql.Date")) {
-                    statement.setTimestamp(i, new Timestamp(((java.sql.Date) kv.getValue()).getTime()));
-                } else if (kv.getValue().getClass().getSimpleName().equals("String")) {
-                    statement.setString(i, kv.getValue().toString());
-                } else {
-                    throw new FbSqlException("Invalid parameter type: [" + kv.getKey() + "] of type: " + kv.getValue().getClass().getSimpleName());
-                }
-            }
+            FbSqlParameterBinder.bind(statement, ++i, kv.getKey(), kv.getValue());
         }
         return statement;
+    }//prepareParams
+
+    protected CallableStatement prepareCallableParams(CallableStatement statement, LinkedHashMap<String, Object> parameters) throws SQLException, FbSqlException {
+        prepareParams(statement, parameters);
+        return statement;
     }//prepareCallableParams
 
-    protected JsonArray processResultSet(ResultSet results) throws SQLException {
+    protected FbSqlResultReader getResultReader(ResultSet results, String key) throws SQLException {
+        ResultSetMetaData resultsMetaData = results.getMetaData();
+        if (Helpers.isStringEmptyOrNull(key) || _readerPlansSize<=0) {
+            return new FbSqlResultReader(resultsMetaData);
+        }
+        FbSqlResultReader reader;
+        synchronized (_readerPlans) {
+            reader = _readerPlans.get(key);
+        }
+        if (reader!=null && reader.matches(resultsMetaData)) {
+            return reader;
+        }
+        reader = new FbSqlResultReader(resultsMetaData);
+        synchronized (_readerPlans) {
+            _readerPlans.put(key, reader);
+        }
+        return reader;
+    }//getResultReader
+
+    protected JsonArray processResultSet(ResultSet results, String key) throws SQLException {
         if (results==null) {
             return null;
         }
         JsonArray result = new JsonArray();
-        ResultSetMetaData resultsMetaData = results.getMetaData();
+        FbSqlResultReader reader = getResultReader(results, key);
         while (results.next()) {
-            JsonObject row = new JsonObject();
-            for (int i=1; i<=resultsMetaData.getColumnCount(); i++) {
-                appLogger.trace("Column: [" + resultsMetaData.getColumnName(i)
-                                + "] of type: [" + resultsMetaData.getColumnTypeName(i) + "]");
-                if(resultsMetaData.getColumnTypeName(i).toUpperCase().equals("INTEGER")
-                        || resultsMetaData.getColumnTypeName(i).toUpperCase().equals("SMALLINT")) {
-                    row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), results.getInt(i));
-                } else if(resultsMetaData.getColumnTypeName(i).toUpperCase().equals("BIGINT")) {
-                    row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), results.getLong(i));
-                } else if(resultsMetaData.getColumnTypeName(i).toUpperCase().equals("DECIMAL")) {
-                    row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), results.getDouble(i));
-                } else if(resultsMetaData.getColumnTypeName(i).toUpperCase().equals("BLOB SUB_TYPE 1")) {
-                    Blob rcBlob = results.getBlob(i);
-                    if (rcBlob==null) {
-                        row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), String.valueOf(null));
-                    } else {
-                        row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), Helpers.inputStreamToString(rcBlob.getBinaryStream()));
-                    }
-                } else if(resultsMetaData.getColumnTypeName(i).toUpperCase().equals("TIMESTAMP")) {
-//                    row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), results.getTimestamp(i).getTime());
-                    row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), results.getString(i));
-                } else {
-                    row.addProperty(resultsMetaData.getColumnName(i).toLowerCase(), results.getString(i));
-                }
-            }
-            result.add(row);
+            result.add(reader.readRow(results));
         }
         return result;
     }//processResultSet
 
+    protected JsonArray processResultSet(ResultSet results) throws SQLException {
+        return processResultSet(results, null);
+    }//processResultSet
+
+    protected <T> List<T> mapResultSet(ResultSet results, String key, Class<T> type) throws SQLException, FbSqlException {
+        if (results==null) {
+            return null;
+        }
+        ArrayList<T> result = new ArrayList<>();
+        FbSqlRowMapper<T> mapper = FbSqlRowMapper.getMapper(type, getResultReader(results, key));
+        while (results.next()) {
+            result.add(mapper.mapRow(results));
+        }
+        return result;
+    }//mapResultSet
+
+    protected long writeResultSet(ResultSet results, String key, Writer output) throws SQLException, IOException {
+        long rows = 0;
+        JsonWriter writer = new JsonWriter(output);
+        writer.beginArray();
+        if (results!=null) {
+            FbSqlResultReader reader = getResultReader(results, key);
+            while (results.next()) {
+                reader.writeRow(results, writer);
+                rows++;
+            }
+        }
+        writer.endArray();
+        writer.flush();
+        return rows;
+    }//writeResultSet
+
     public int executeQuery(String query, String transaction) throws FbSqlException {
         if (Helpers.isStringEmptyOrNull(query)) {
             throw new FbSqlException("Invalid query");
         }
         String tran = getCurrentConnection(transaction);
-        long dsts = logDuration ? System.currentTimeMillis() : 0;
-        int result = -1;
-        FbSqlException e = null;
-        Statement statement = null;
+        ReentrantLock lock = lockTransaction(tran);
         try {
-            if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
-                throw new FbSqlException("Invalid database connection");
-            }
-            statement = _transactions.get(tran).createStatement();
-            result = statement.executeUpdate(query);
-            checkDbWarnings(_transactions.get(tran));
-        } catch (SQLException se) {
-            e = new FbSqlException(se);
-        } finally {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            int result = -1;
+            FbSqlException e = null;
+            Statement statement = null;
             try {
-                if (statement != null) {
-                    statement.close();
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).createStatement();
+                result = statement.executeUpdate(query);
+                invalidateResultCache(tran, FbSqlResultCache.extractWriteTable(query));
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    if (statement != null) {
+                        statement.close();
+                        statement = null;
+                    }
+                } catch (NullPointerException | SQLException se) {
                     statement = null;
                 }
-            } catch (NullPointerException | SQLException se) {
-                statement = null;
+                if (e!=null) {
+                    rollback(tran);
+                }
             }
             if (e!=null) {
-                rollback(tran);
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_QUERY, e);
+                throw e;
             }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_QUERY, query, mts, result);
+            if (logDuration) { appLogger.info("executeQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
         }
-        if (e!=null) {
-            throw e;
-        }
-        if (logDuration) { appLogger.info("executeQuery duration: " + Helpers.getDuration(dsts)); }
-        return result;
     }//executeQuery
 
     public int executeQuery(String query) throws FbSqlException {
         return executeQuery(query, null);
     }//executeQuery
 
-    public JsonArray executeSelectQuery(String query, String transaction) throws FbSqlException {
+    public int executeQuery(String query, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
         if (Helpers.isStringEmptyOrNull(query)) {
             throw new FbSqlException("Invalid query");
         }
         String tran = getCurrentConnection(transaction);
-        long dsts = logDuration ? System.currentTimeMillis() : 0;
-        JsonArray result = null;
-        FbSqlException e = null;
-        Statement statement = null;
-        ResultSet results = null;
-        try {
-            if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
-                throw new FbSqlException("Invalid database connection");
-            }
-            statement = _transactions.get(tran).createStatement();
-            results = statement.executeQuery(query);
-            result = processResultSet(results);
-            checkDbWarnings(_transactions.get(tran));
-        } catch (ConcurrentModificationException cme) {
-            e = new FbSqlException(cme);
-        } catch (SQLException se) {
-            e = new FbSqlException(se);
-        } finally {
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            int result = -1;
+            FbSqlException e = null;
+            PreparedStatement statement = null;
             try {
-                if (results!=null) {
-                    results.close();
-                    results = null;
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
                 }
-            } catch (NullPointerException | SQLException se) {
-                results = null;
-            }
-            try {
-                if (statement != null) {
-                    statement.close();
+                statement = prepareCachedStatement(tran, query);
+                statement = prepareParams(statement, parameters);
+                result = statement.executeUpdate();
+                invalidateResultCache(tran, FbSqlResultCache.extractWriteTable(query));
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
                     statement = null;
                 }
-            } catch (NullPointerException | SQLException se) {
-                statement = null;
+                if (e!=null) {
+                    rollback(tran);
+                }
             }
             if (e!=null) {
-                rollback(tran);
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_QUERY, e);
+                throw e;
             }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_QUERY, query, mts, result);
+            if (logDuration) { appLogger.info("executeQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
         }
-        if (e!=null) {
-            throw e;
+    }//executeQuery
+
+    public JsonArray executeSelectQuery(String query, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query)) {
+            throw new FbSqlException("Invalid query");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            JsonArray result = null;
+            FbSqlException e = null;
+            Statement statement = null;
+            ResultSet results = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                String cacheKey = prepareResultCacheKey(tran, query, null);
+                if (cacheKey!=null && (result = _resultCache.get(cacheKey))!=null) {
+                    return result;
+                }
+                long cacheVersion = cacheKey!=null ? _resultCache.getVersion() : 0;
+                statement = _transactions.get(tran).createStatement();
+                results = statement.executeQuery(query);
+                result = processResultSet(results, query);
+                if (cacheKey!=null) {
+                    _resultCache.put(cacheKey, result, FbSqlResultCache.extractReadTables(query), cacheVersion);
+                }
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (NullPointerException | SQLException se) {
+                    results = null;
+                }
+                try {
+                    if (statement != null) {
+                        statement.close();
+                        statement = null;
+                    }
+                } catch (NullPointerException | SQLException se) {
+                    statement = null;
+                }
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, query, mts, result==null ? 0 : result.size());
+            if (logDuration) { appLogger.info("executeSelectQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
         }
-        if (logDuration) { appLogger.info("executeSelectQuery duration: " + Helpers.getDuration(dsts)); }
-        return result;
     }//executeSelectQuery
 
     public JsonArray executeSelectQuery(String query) throws FbSqlException {
         return executeSelectQuery(query, null);
     }//executeSelectQuery
 
+    public JsonArray executeSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query)) {
+            throw new FbSqlException("Invalid query");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            JsonArray result = null;
+            FbSqlException e = null;
+            PreparedStatement statement = null;
+            ResultSet results = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                String cacheKey = prepareResultCacheKey(tran, query, parameters);
+                if (cacheKey!=null && (result = _resultCache.get(cacheKey))!=null) {
+                    return result;
+                }
+                long cacheVersion = cacheKey!=null ? _resultCache.getVersion() : 0;
+                statement = prepareCachedStatement(tran, query);
+                statement = prepareParams(statement, parameters);
+                results = statement.executeQuery();
+                result = processResultSet(results, query);
+                if (cacheKey!=null) {
+                    _resultCache.put(cacheKey, result, FbSqlResultCache.extractReadTables(query), cacheVersion);
+                }
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (SQLException se) {
+                    results = null;
+                }
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
+                    statement = null;
+                }
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, query, mts, result==null ? 0 : result.size());
+            if (logDuration) { appLogger.info("executeSelectQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeSelectQuery
+
+    public FbSqlColumnarResult executeColumnarSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query)) {
+            throw new FbSqlException("Invalid query");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            FbSqlColumnarResult result = null;
+            FbSqlException e = null;
+            PreparedStatement statement = null;
+            ResultSet results = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = prepareCachedStatement(tran, query);
+                statement = prepareParams(statement, parameters);
+                results = statement.executeQuery();
+                result = FbSqlColumnarResult.fromResultSet(results, getResultReader(results, query));
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (SQLException se) {
+                    results = null;
+                }
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
+                    statement = null;
+                }
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, query, mts, result==null ? 0 : result.getRowCount());
+            if (logDuration) { appLogger.info("executeColumnarSelectQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeColumnarSelectQuery
+
+    public FbSqlColumnarResult executeColumnarSelectQuery(String query, String transaction) throws FbSqlException {
+        return executeColumnarSelectQuery(query, null, transaction);
+    }//executeColumnarSelectQuery
+
+    public long executeSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction, Writer output) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query)) {
+            throw new FbSqlException("Invalid query");
+        }
+        if (output==null) {
+            throw new FbSqlException("Invalid output writer");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            long result = -1;
+            FbSqlException e = null;
+            boolean dbError = false;
+            PreparedStatement statement = null;
+            ResultSet results = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = prepareCachedStatement(tran, query);
+                statement = prepareParams(statement, parameters);
+                results = statement.executeQuery();
+                result = writeResultSet(results, query, output);
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+                dbError = true;
+            } catch (IOException ioe) {
+                e = new FbSqlException(ioe);
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (SQLException se) {
+                    results = null;
+                }
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
+                    statement = null;
+                }
+                if (dbError) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, query, mts, result);
+            if (logDuration) { appLogger.info("executeSelectQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeSelectQuery
+
+    public <T> List<T> executeSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction, Class<T> type) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query)) {
+            throw new FbSqlException("Invalid query");
+        }
+        if (type==null) {
+            throw new FbSqlException("Invalid target class");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            List<T> result = null;
+            FbSqlException e = null;
+            boolean dbError = false;
+            PreparedStatement statement = null;
+            ResultSet results = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = prepareCachedStatement(tran, query);
+                statement = prepareParams(statement, parameters);
+                results = statement.executeQuery();
+                result = mapResultSet(results, query, type);
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+                dbError = true;
+            } catch (FbSqlException fe) {
+                e = fe;
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (SQLException se) {
+                    results = null;
+                }
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
+                    statement = null;
+                }
+                if (dbError) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECT_QUERY, query, mts, result==null ? 0 : result.size());
+            if (logDuration) { appLogger.info("executeSelectQuery duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeSelectQuery
+
+    public long executeSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction, OutputStream output) throws FbSqlException {
+        if (output==null) {
+            throw new FbSqlException("Invalid output stream");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        long result = executeSelectQuery(query, parameters, transaction, writer);
+        try {
+            writer.flush();
+        } catch (IOException ioe) {
+            throw new FbSqlException(ioe);
+        }
+        return result;
+    }//executeSelectQuery
+
+    protected String prepareInsertQuery(String tableName, String[] fields) {
+        StringBuilder query = new StringBuilder();
+        StringBuilder qryParams = new StringBuilder();
+        query.append("INSERT INTO \"").append(tableName).append("\" (");
+        boolean first = true;
+        for (String key : fields) {
+            if (first) {
+                first = false;
+            } else {
+                query.append(", ");
+                qryParams.append(", ");
+            }
+            query.append("\"").append(key).append("\"");
+            qryParams.append("?");
+        }
+        query.append(") VALUES (").append(qryParams).append(")");
+        return query.toString();
+    }//prepareInsertQuery
+
     public int executeBulkInsert(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values, String transaction) throws FbSqlException {
         if (Helpers.isStringEmptyOrNull(tableName)) {
             throw new FbSqlException("Invalid query");
@@ -600,74 +1489,506 @@ public class FbSqlConnection {
             throw new FbSqlException("Invalid query parameters");
         }
         String tran = getCurrentConnection(transaction);
-        long dsts = logDuration ? System.currentTimeMillis() : 0;
-        int result = -1;
-        FbSqlException e = null;
-        PreparedStatement statement = null;
+        ReentrantLock lock = lockTransaction(tran);
         try {
-            if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
-                throw new FbSqlException("Invalid database connection");
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            int result = -1;
+            FbSqlException e = null;
+            PreparedStatement statement = null;
+            try {
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).prepareStatement(prepareInsertQuery(tableName, fields));
+
+                int i = 0;
+                for (LinkedHashMap<String, Object> parameters : values) {
+                    i++;
+                    if (parameters==null || parameters.size()!=fields.length) {
+                        throw new FbSqlException("Invalid values at position:" + i);
+                    }
+                    statement = prepareParams(statement, parameters);
+                    statement.addBatch();
+                }
+
+                result = countBatchResults(statement.executeBatch());
+                invalidateResultCache(tran, tableName);
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    if (statement != null) {
+                        statement.close();
+                        statement = null;
+                    }
+                } catch (SQLException se) {
+                    statement = null;
+                } catch (NullPointerException npe) {
+                    statement = null;
+                }
+                if (e!=null) {
+                    rollback(tran);
+                }
             }
-            String qryParams = "";
-            String query = "INSERT INTO \"" + tableName + "\" (";
-            boolean first = true;
-            for (String key : fields) {
-                if (first) {
-                    first = false;
-                } else {
-                    query += ", ";
-                    qryParams += ", ";
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, tableName, mts, result);
+            if (logDuration) { appLogger.info("executeBulkInsert duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeBulkInsert
+
+    public int executeBulkInsert(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values) throws FbSqlException {
+        return executeBulkInsert(tableName, fields, values, null);
+    }//executeBulkInsert
+
+    protected static void validateBulkValues(String[] fields, List<LinkedHashMap<String, Object>> values) throws FbSqlException {
+        int i = 0;
+        for (LinkedHashMap<String, Object> parameters : values) {
+            i++;
+            if (parameters==null || parameters.size()!=fields.length) {
+                throw new FbSqlException("Invalid values at position:" + i);
+            }
+            for (Map.Entry<String, Object> kv : parameters.entrySet()) {
+                if (kv.getValue()!=null && FbSqlParameterBinder.getBinder(kv.getValue().getClass())==null) {
+                    throw new FbSqlException("Invalid parameter type: [" + kv.getKey() + "] of type: "
+                            + kv.getValue().getClass().getSimpleName() + " at position:" + i);
                 }
-                query += "\"" + key + "\"";
-                qryParams += "?";
             }
-            query += ") VALUES (" + qryParams + ")";
-            statement = _transactions.get(tran).prepareStatement(query);
+        }
+    }//validateBulkValues
+
+    public int executePackedBulkInsert(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(tableName)) {
+            throw new FbSqlException("Invalid query");
+        }
+        if (fields==null || fields.length==0 || values==null || values.size()==0) {
+            throw new FbSqlException("Invalid query parameters");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            int result = 0;
+            FbSqlException e = null;
+            FbSqlExecuteBlock.Shape shape = null;
+            try {
+                // Every row is checked before the first block runs, so an invalid row never leaves earlier blocks applied
+                validateBulkValues(fields, values);
+            } catch (FbSqlException fe) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, fe);
+                throw fe;
+            }
+            try {
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                PreparedStatement insert = prepareCachedStatement(tran, prepareInsertQuery(tableName, fields));
+                shape = FbSqlExecuteBlock.describe(insert.getParameterMetaData());
+                releaseCachedStatement(insert);
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+                rollback(tran);
+                throw e;
+            }
+            if (shape==null) {
+                appLogger.debug("executePackedBulkInsert: unsupported parameter types, falling back to executeBulkInsert");
+                return executeBulkInsert(tableName, fields, values, tran);
+            }
+            try {
+                int blockRows = shape.getRowsPerBlock(_blockMaxRows, _blockMaxParameters, _blockMaxMessageSize);
+                int rowLength = FbSqlExecuteBlock.buildInsertBlock(tableName, fields, shape, 1).length();
+                blockRows = Math.max(1, Math.min(blockRows, _blockMaxStatementLength / rowLength));
+                int position = 0;
+                while (position<values.size()) {
+                    int rows = Math.min(blockRows, values.size()-position);
+                    // Full blocks share one cached statement; only the tail block has a different shape
+                    PreparedStatement statement = prepareCachedStatement(tran, FbSqlExecuteBlock.buildInsertBlock(tableName, fields, shape, rows));
+                    try {
+                        int p = 0;
+                        for (int r=0; r<rows; r++) {
+                            for (Map.Entry<String, Object> kv : values.get(position+r).entrySet()) {
+                                FbSqlParameterBinder.bind(statement, ++p, kv.getKey(), kv.getValue());
+                            }
+                        }
+                        statement.execute();
+                    } finally {
+                        releaseCachedStatement(statement);
+                    }
+                    // EXECUTE BLOCK does not report per-row counts: a block either inserts all its rows or fails
+                    result += rows;
+                    position += rows;
+                }
+                invalidateResultCache(tran, tableName);
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } catch (FbSqlException fe) {
+                e = fe;
+            } finally {
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, tableName, mts, result);
+            if (logDuration) { appLogger.info("executePackedBulkInsert duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executePackedBulkInsert
+
+    public int executePackedBulkInsert(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values) throws FbSqlException {
+        return executePackedBulkInsert(tableName, fields, values, null);
+    }//executePackedBulkInsert
+
+    public long executeBulkInsert(String tableName, String[] fields, Iterator<Object[]> rows, int batchSize, int commitEvery, FbSqlProgressListener listener, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(tableName)) {
+            throw new FbSqlException("Invalid query");
+        }
+        if (fields==null || fields.length==0 || rows==null) {
+            throw new FbSqlException("Invalid query parameters");
+        }
+        if (batchSize<=0) {
+            throw new FbSqlException("Invalid batch size");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            long startTime = System.nanoTime();
+            long result = 0;
+            long position = 0;
+            long batches = 0;
+            int pending = 0;
+            FbSqlException e = null;
+            PreparedStatement statement = null;
+            try {
+                Connection conn = _transactions.get(tran);
+                if (conn==null || conn.isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                boolean canCommit = commitEvery>0 && !conn.getAutoCommit();
+                statement = conn.prepareStatement(prepareInsertQuery(tableName, fields));
+                while (rows.hasNext()) {
+                    Object[] row = rows.next();
+                    position++;
+                    if (row==null || row.length!=fields.length) {
+                        throw new FbSqlException("Invalid values at position:" + position);
+                    }
+                    for (int i=0; i<row.length; i++) {
+                        FbSqlParameterBinder.bind(statement, i+1, fields[i], row[i]);
+                    }
+                    statement.addBatch();
+                    if (++pending<batchSize) {
+                        continue;
+                    }
+                    result += countBatchResults(statement.executeBatch());
+                    invalidateResultCache(tran, tableName);
+                    pending = 0;
+                    batches++;
+                    if (canCommit && batches%commitEvery==0) {
+                        conn.commit();
+                    }
+                    if (listener!=null) {
+                        listener.onProgress(result, batches, getRate(result, startTime));
+                    }
+                }
+                if (pending>0) {
+                    result += countBatchResults(statement.executeBatch());
+                    invalidateResultCache(tran, tableName);
+                    batches++;
+                    if (listener!=null) {
+                        listener.onProgress(result, batches, getRate(result, startTime));
+                    }
+                }
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                closeStatementSilently(statement);
+                statement = null;
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_BULK_INSERT, tableName, mts, result);
+            if (logDuration) { appLogger.info("executeBulkInsert duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeBulkInsert
+
+    public long executeBulkInsert(String tableName, String[] fields, java.util.stream.Stream<Object[]> rows, int batchSize, int commitEvery, FbSqlProgressListener listener, String transaction) throws FbSqlException {
+        if (rows==null) {
+            throw new FbSqlException("Invalid query parameters");
+        }
+        return executeBulkInsert(tableName, fields, rows.iterator(), batchSize, commitEvery, listener, transaction);
+    }//executeBulkInsert
+
+    protected void recordExecution(FbSqlMetrics.Operation operation, String statement, long startNanos, long rows) {
+        long elapsed = System.nanoTime() - startNanos;
+        getMetrics().record(operation, elapsed, rows);
+        if (_slowQueryLog!=null) {
+            _slowQueryLog.record(operation, statement, elapsed, rows);
+        }
+    }//recordExecution
+
+    protected int countBatchResults(int[] resultsCounts) {
+        int result = 0;
+        for(int res : resultsCounts) {
+            if (res>0 || res==Statement.SUCCESS_NO_INFO) {
+                result++;
+            }
+        }
+        return result;
+    }//countBatchResults
+
+    protected double getRate(long rows, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed<=0 ? 0 : rows * 1000000000.0 / elapsed;
+    }//getRate
+
+    public FbSqlBatchResult executeBatch(List<String> statements, FbSqlBatchResult.FailurePolicy policy, String transaction) throws FbSqlException {
+        return executeBatch(statements, policy, transaction, false);
+    }//executeBatch
+
+    // With script set, COMMIT and ROLLBACK statements end the current unit of work on the transaction, which stays open
+    protected FbSqlBatchResult executeBatch(List<String> statements, FbSqlBatchResult.FailurePolicy policy, String transaction, boolean script) throws FbSqlException {
+        if (statements==null || statements.size()==0) {
+            throw new FbSqlException("Invalid query");
+        }
+        ArrayList<String> queries = new ArrayList<>(statements.size());
+        for (String query : statements) {
+            String normalized = query==null ? "" : query.trim();
+            while (normalized.endsWith(";")) {
+                normalized = normalized.substring(0, normalized.length()-1).trim();
+            }
+            if (normalized.length()==0) {
+                throw new FbSqlException("Invalid query at position:" + (queries.size()+1));
+            }
+            queries.add(normalized);
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            FbSqlBatchResult result = new FbSqlBatchResult(queries.size());
+            FbSqlException e = null;
+            Statement statement = null;
+            try {
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).createStatement();
+                int position = 0;
+                while (position<queries.size()) {
+                    String transactionEnd = script ? FbSqlScript.getTransactionEnd(queries.get(position)) : null;
+                    if (transactionEnd!=null) {
+                        endScriptUnit(tran, transactionEnd, position);
+                        result.setUpdateCount(position, 0);
+                        position++;
+                        continue;
+                    }
+                    boolean packable = FbSqlExecuteBlock.isPackable(queries.get(position));
+                    int end = getBatchChunkEnd(queries, position, packable, script);
+                    if (!packable || end-position<2 || !executeStatementsBlock(statement, tran, queries, position, end, result)) {
+                        executeStatementsBatch(statement, tran, queries, position, end, result,
+                                policy==null ? FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR : policy);
+                    }
+                    position = end;
+                }
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } catch (FbSqlException fe) {
+                e = fe;
+            } finally {
+                try {
+                    if (statement != null) {
+                        statement.close();
+                        statement = null;
+                    }
+                } catch (NullPointerException | SQLException se) {
+                    statement = null;
+                }
+                if (e!=null && _transactions.get(tran)!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_BATCH, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_BATCH, queries.size() + " statements", mts, result.getTotalUpdateCount());
+            if (logDuration) { appLogger.info("executeBatch duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeBatch
+
+    public FbSqlBatchResult executeBatch(List<String> statements, String transaction) throws FbSqlException {
+        return executeBatch(statements, FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR, transaction);
+    }//executeBatch
+
+    // COMMIT/ROLLBACK in the script commit or roll back the work done so far on transaction, which then goes on with the
+    // rest of the script; SET TRANSACTION, CONNECT and CREATE/DROP DATABASE are rejected before anything runs
+    public FbSqlBatchResult executeScript(String script, FbSqlBatchResult.FailurePolicy policy, String transaction) throws FbSqlException {
+        List<String> statements = FbSqlScript.split(script);
+        if (statements.size()==0) {
+            throw new FbSqlException("Invalid query");
+        }
+        return executeBatch(statements, policy, transaction, true);
+    }//executeScript
+
+    protected void endScriptUnit(String transaction, String command, int position) throws FbSqlException {
+        if (_xaScopes.contains(transaction)) {
+            throw new FbSqlException("Statement " + (position+1) + ": " + command + " is not allowed in a distributed transaction");
+        }
+        try {
+            if (_transactions.get(transaction).getAutoCommit()) {
+                if (command.equals("ROLLBACK")) {
+                    throw new FbSqlException("Statement " + (position+1) + ": ROLLBACK needs a transaction, the script runs in auto-commit mode");
+                }
+                // Every statement is already committed
+                return;
+            }
+        } catch (SQLException se) {
+            throw new FbSqlException(se);
+        }
+        if (command.equals("COMMIT")) {
+            commitTransaction(transaction, true);
+        } else {
+            rollbackTransaction(transaction, true);
+        }
+    }//endScriptUnit
+
+    public FbSqlBatchResult executeScript(String script, String transaction) throws FbSqlException {
+        return executeScript(script, FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR, transaction);
+    }//executeScript
 
-            int i = 0;
-            for (LinkedHashMap<String, Object> parameters : values) {
-                i++;
-                if (parameters==null || parameters.size()!=fields.length) {
-                    throw new FbSqlException("Invalid values at position:" + i);
+    // Packable statements are grouped up to the EXECUTE BLOCK limits, the others up to the next packable one
+    protected int getBatchChunkEnd(List<String> queries, int start, boolean packable, boolean script) {
+        int end = start;
+        int length = 64;
+        while (end<queries.size() && FbSqlExecuteBlock.isPackable(queries.get(end))==packable
+                && (!script || FbSqlScript.getTransactionEnd(queries.get(end))==null)) {
+            if (packable) {
+                length += queries.get(end).length() + 32;
+                if (end>start && (end-start>=Math.min(_blockMaxRows, _blockMaxParameters) || length>_blockMaxStatementLength)) {
+                    break;
                 }
-                statement = prepareParams(statement, parameters);
-                statement.addBatch();
             }
+            end++;
+        }
+        return end;
+    }//getBatchChunkEnd
 
-            int[] resultsCounts = statement.executeBatch();
-            result = 0;
-            for(int res : resultsCounts) {
-                if (res>0 || res==Statement.SUCCESS_NO_INFO) {
-                    result++;
-                }
+    protected boolean executeStatementsBlock(Statement statement, String transaction, List<String> queries, int start, int end, FbSqlBatchResult result) {
+        ResultSet counts = null;
+        try {
+            counts = statement.executeQuery(FbSqlExecuteBlock.buildStatementsBlock(queries.subList(start, end)));
+            if (!counts.next()) {
+                return false;
             }
+            for (int i=start; i<end; i++) {
+                result.setUpdateCount(i, counts.getInt(i-start+1));
+                invalidateResultCache(transaction, FbSqlResultCache.extractWriteTable(queries.get(i)));
+            }
+            return true;
         } catch (SQLException se) {
-            e = new FbSqlException(se);
+            // A failed block leaves no changes behind, so its statements can safely run again one by one
+            appLogger.debug("executeBatch: EXECUTE BLOCK failed, retrying statements individually: " + se.getMessage());
+            return false;
         } finally {
             try {
-                if (statement != null) {
-                    statement.close();
-                    statement = null;
+                if (counts!=null) {
+                    counts.close();
                 }
             } catch (SQLException se) {
-                statement = null;
-            } catch (NullPointerException npe) {
-                statement = null;
+                counts = null;
             }
-            if (e!=null) {
-                rollback(tran);
+        }
+    }//executeStatementsBlock
+
+    protected void executeStatementsBatch(Statement statement, String transaction, List<String> queries, int start, int end,
+            FbSqlBatchResult result, FbSqlBatchResult.FailurePolicy policy) throws SQLException {
+        int position = start;
+        while (position<end) {
+            statement.clearBatch();
+            for (int i=position; i<end; i++) {
+                statement.addBatch(queries.get(i));
+            }
+            try {
+                int[] counts = statement.executeBatch();
+                for (int i=0; i<counts.length; i++) {
+                    result.setUpdateCount(position+i, counts[i]);
+                    invalidateResultCache(transaction, FbSqlResultCache.extractWriteTable(queries.get(position+i)));
+                }
+                position = end;
+            } catch (BatchUpdateException bue) {
+                position = processBatchFailure(bue, transaction, queries, position, end, result, policy);
             }
         }
-        if (e!=null) {
-            throw e;
+    }//executeStatementsBatch
+
+    // Records the outcome of a failed batch chunk and returns the position to resume from (queries==null: nothing to invalidate)
+    protected int processBatchFailure(BatchUpdateException bue, String transaction, List<String> queries, int position, int end,
+            FbSqlBatchResult result, FbSqlBatchResult.FailurePolicy policy) throws SQLException {
+        int[] counts = bue.getUpdateCounts()==null ? new int[0] : bue.getUpdateCounts();
+        int executed = counts.length;
+        if (executed==end-position) {
+            // The driver kept going after the failure: every failed statement is marked in place
+            int failed = -1;
+            for (int i=0; i<counts.length; i++) {
+                if (counts[i]==Statement.EXECUTE_FAILED) {
+                    failed = failed<0 ? i : failed;
+                    result.setError(position+i, new FbSqlException(bue));
+                } else {
+                    result.setUpdateCount(position+i, counts[i]);
+                    if (queries!=null) {
+                        invalidateResultCache(transaction, FbSqlResultCache.extractWriteTable(queries.get(position+i)));
+                    }
+                }
+            }
+            if (policy==FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR) {
+                throw positionedException(bue, position + Math.max(0, failed));
+            }
+            return end;
         }
-        if (logDuration) { appLogger.info("executeBulkInsert duration: " + Helpers.getDuration(dsts)); }
-        return result;
-    }//executeBulkInsert
+        for (int i=0; i<executed; i++) {
+            result.setUpdateCount(position+i, counts[i]);
+            if (queries!=null) {
+                invalidateResultCache(transaction, FbSqlResultCache.extractWriteTable(queries.get(position+i)));
+            }
+        }
+        if (policy==FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR) {
+            throw positionedException(bue, position+executed);
+        }
+        result.setError(position+executed, new FbSqlException(bue));
+        return position + executed + 1;
+    }//processBatchFailure
 
-    public int executeBulkInsert(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values) throws FbSqlException {
-        return executeBulkInsert(tableName, fields, values, null);
-    }//executeBulkInsert
+    protected SQLException positionedException(SQLException se, int position) {
+        return new SQLException("Statement " + (position+1) + " failed: " + se.getMessage(), se.getSQLState(), se.getErrorCode(), se);
+    }//positionedException
 
     protected String prepareProcedureCallQuery(String procedure, int parametersCount) throws FbSqlException {
         if (Helpers.isStringEmptyOrNull(procedure)) {
@@ -695,124 +2016,670 @@ public class FbSqlConnection {
             throw new FbSqlException("Invalid stored procedure name");
         }
         String tran = getCurrentConnection(transaction);
-        long dsts = logDuration ? System.currentTimeMillis() : 0;
-        boolean result = false;
-        int parametersCount = parameters!=null ? parameters.size() : 0;
-        FbSqlException e = null;
-        CallableStatement statement = null;
-        try {
-            String callStr = prepareProcedureCallQuery(procedure, parametersCount);
-            appLogger.info("executeProcedure [" + procedure + "] query: " + callStr);
-            if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
-                throw new FbSqlException("Invalid database connection");
-            }
-            statement = _transactions.get(tran).prepareCall(callStr);
-            if (parametersCount>0) {
-                statement = prepareCallableParams(statement, parameters);
-            }
-            statement.execute();
-            checkDbWarnings(_transactions.get(tran));
-            result = true;
-        } catch (ClassCastException cce) {
-            e = new FbSqlException(cce);
-        } catch (SQLException se) {
-            e = new FbSqlException(se);
-        } finally {
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            boolean result = false;
+            int parametersCount;
+            FbSqlException e = null;
+            CallableStatement statement = null;
             try {
-                if (statement != null) {
-                    statement.close();
+                LinkedHashMap<String, Object> arguments = bindProcedureArguments(tran, procedure, parameters);
+                parametersCount = arguments!=null ? arguments.size() : 0;
+                String callStr = prepareProcedureCallQuery(procedure, parametersCount);
+                appLogger.debug("executeProcedure [" + procedure + "] query: " + callStr);
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = prepareCachedCall(tran, callStr);
+                if (parametersCount>0) {
+                    statement = prepareCallableParams(statement, arguments);
+                }
+                statement.execute();
+                // The tables touched by a procedure are unknown
+                invalidateResultCache(tran, FbSqlResultCache.ALL_TABLES);
+                checkDbWarnings(_transactions.get(tran));
+                result = true;
+            } catch (ClassCastException cce) {
+                e = new FbSqlException(cce);
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
                     statement = null;
                 }
-            } catch (NullPointerException | SQLException se) {
-                statement = null;
+                if (e!=null) {
+                    rollback(tran);
+                }
             }
             if (e!=null) {
-                rollback(tran);
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_PROCEDURE, e);
+                throw e;
             }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_PROCEDURE, procedure, mts, 0);
+            if (logDuration) { appLogger.info("executeProcedure duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
         }
-        if (e!=null) {
-            throw e;
-        }
-        if (logDuration) { appLogger.info("executeProcedure duration: " + Helpers.getDuration(dsts)); }
-        return result;
     }//executeProcedure
 
     public boolean executeProcedure(String procedure, LinkedHashMap<String, Object> parameters) throws FbSqlException {
         return executeProcedure(procedure, parameters, null);
     }//executeProcedure
 
+    // Arguments keyed by parameter name are put in signature order; anything else is bound by position as before
+    protected LinkedHashMap<String, Object> bindProcedureArguments(String transaction, String procedure, LinkedHashMap<String, Object> parameters) throws SQLException, FbSqlException {
+        if (parameters==null || parameters.isEmpty()) {
+            return parameters;
+        }
+        FbSqlProcedureMetadata.Signature signature = getProcedureMetadata().getSignature(_transactions.get(transaction), procedure);
+        return signature==null ? parameters : signature.bindByName(parameters);
+    }//bindProcedureArguments
+
+    // Executable procedure call returning its output parameters (name -> value) from the same round trip
+    public LinkedHashMap<String, Object> executeProcedureWithOutput(String procedure, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(procedure)) {
+            throw new FbSqlException("Invalid stored procedure name");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+            FbSqlException e = null;
+            CallableStatement statement = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                FbSqlProcedureMetadata.Signature signature = getProcedureMetadata().getSignature(_transactions.get(tran), procedure);
+                if (signature==null) {
+                    throw new FbSqlException("Unknown stored procedure " + procedure);
+                }
+                LinkedHashMap<String, Object> arguments = parameters==null || parameters.isEmpty() ? parameters : signature.bindByName(parameters);
+                int parametersCount = arguments!=null ? arguments.size() : 0;
+                String callStr = signature.getCallQuery(parametersCount);
+                appLogger.debug("executeProcedureWithOutput [" + procedure + "] query: " + callStr);
+                statement = prepareCachedCall(tran, callStr);
+                if (parametersCount>0) {
+                    statement = prepareCallableParams(statement, arguments);
+                }
+                List<FbSqlProcedureMetadata.Parameter> outputs = signature.getOutputs();
+                for (int i=0; i<outputs.size(); i++) {
+                    statement.registerOutParameter(parametersCount + i + 1, outputs.get(i).getSqlType());
+                }
+                statement.execute();
+                for (int i=0; i<outputs.size(); i++) {
+                    result.put(outputs.get(i).getName().toLowerCase(), statement.getObject(parametersCount + i + 1));
+                }
+                invalidateResultCache(tran, FbSqlResultCache.ALL_TABLES);
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    releaseCachedStatement(statement);
+                    statement = null;
+                } catch (SQLException se) {
+                    statement = null;
+                }
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_PROCEDURE, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_PROCEDURE, procedure, mts, 0);
+            if (logDuration) { appLogger.info("executeProcedureWithOutput duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeProcedureWithOutput
+
+    public LinkedHashMap<String, Object> executeProcedureWithOutput(String procedure, LinkedHashMap<String, Object> parameters) throws FbSqlException {
+        return executeProcedureWithOutput(procedure, parameters, null);
+    }//executeProcedureWithOutput
+
+    // One prepared call for all argument sets, packed into EXECUTE BLOCKs where the parameter types allow it.
+    // Packed calls report Statement.SUCCESS_NO_INFO; a failing block is run again as a plain batch to locate the failing call.
+    public FbSqlBatchResult executeProcedureBatch(String procedure, List<LinkedHashMap<String, Object>> values, FbSqlBatchResult.FailurePolicy policy, String transaction) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(procedure)) {
+            throw new FbSqlException("Invalid stored procedure name");
+        }
+        if (values==null || values.size()==0) {
+            throw new FbSqlException("Invalid query parameters");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            FbSqlBatchResult result = new FbSqlBatchResult(values.size());
+            FbSqlBatchResult.FailurePolicy failurePolicy = policy==null ? FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR : policy;
+            FbSqlException e = null;
+            try {
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                ArrayList<LinkedHashMap<String, Object>> arguments = new ArrayList<>(values.size());
+                for (LinkedHashMap<String, Object> parameters : values) {
+                    arguments.add(bindProcedureArguments(tran, procedure, parameters));
+                }
+                int position = 0;
+                while (position<arguments.size()) {
+                    // Consecutive sets with the same number of arguments share one call statement
+                    int count = arguments.get(position)==null ? 0 : arguments.get(position).size();
+                    int end = position + 1;
+                    while (end<arguments.size() && (arguments.get(end)==null ? 0 : arguments.get(end).size())==count) {
+                        end++;
+                    }
+                    String callStr = prepareProcedureCallQuery(procedure, count);
+                    if (count==0 || end-position<2 || !executeProcedureBlocks(tran, procedure, callStr, arguments, position, end, result, failurePolicy)) {
+                        executeProcedureCalls(tran, callStr, arguments, position, end, result, failurePolicy);
+                    }
+                    position = end;
+                }
+                // The tables touched by a procedure are unknown
+                invalidateResultCache(tran, FbSqlResultCache.ALL_TABLES);
+                checkDbWarnings(_transactions.get(tran));
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_BATCH, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_BATCH, procedure, mts, result.getStatementCount() - result.getErrors().size());
+            if (logDuration) { appLogger.info("executeProcedureBatch duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeProcedureBatch
+
+    public FbSqlBatchResult executeProcedureBatch(String procedure, List<LinkedHashMap<String, Object>> values, String transaction) throws FbSqlException {
+        return executeProcedureBatch(procedure, values, FbSqlBatchResult.FailurePolicy.STOP_ON_ERROR, transaction);
+    }//executeProcedureBatch
+
+    // Returns false (nothing executed) when the parameter types cannot be declared in an EXECUTE BLOCK
+    protected boolean executeProcedureBlocks(String transaction, String procedure, String callStr, List<LinkedHashMap<String, Object>> arguments,
+            int start, int end, FbSqlBatchResult result, FbSqlBatchResult.FailurePolicy policy) throws SQLException, FbSqlException {
+        CallableStatement call = prepareCachedCall(transaction, callStr);
+        FbSqlExecuteBlock.Shape shape;
+        try {
+            shape = FbSqlExecuteBlock.describe(call.getParameterMetaData());
+        } finally {
+            releaseCachedStatement(call);
+        }
+        if (shape==null || shape.getTypes().length==0) {
+            return false;
+        }
+        int blockCalls = shape.getRowsPerBlock(_blockMaxRows, _blockMaxParameters, _blockMaxMessageSize);
+        int callLength = FbSqlExecuteBlock.buildProcedureBlock(procedure, shape, 1).length();
+        blockCalls = Math.max(1, Math.min(blockCalls, _blockMaxStatementLength / callLength));
+        int position = start;
+        while (position<end) {
+            int calls = Math.min(blockCalls, end-position);
+            PreparedStatement statement = prepareCachedStatement(transaction, FbSqlExecuteBlock.buildProcedureBlock(procedure, shape, calls));
+            boolean packed = true;
+            try {
+                int p = 0;
+                for (int c=0; c<calls; c++) {
+                    for (Map.Entry<String, Object> kv : arguments.get(position+c).entrySet()) {
+                        FbSqlParameterBinder.bind(statement, ++p, kv.getKey(), kv.getValue());
+                    }
+                }
+                statement.execute();
+            } catch (SQLException se) {
+                // A failed block leaves no changes behind, so its calls can safely run again one by one
+                appLogger.debug("executeProcedureBatch: EXECUTE BLOCK failed, retrying calls individually: " + se.getMessage());
+                packed = false;
+            } finally {
+                releaseCachedStatement(statement);
+            }
+            if (packed) {
+                for (int c=0; c<calls; c++) {
+                    result.setUpdateCount(position+c, Statement.SUCCESS_NO_INFO);
+                }
+            } else {
+                executeProcedureCalls(transaction, callStr, arguments, position, position+calls, result, policy);
+            }
+            position += calls;
+        }
+        return true;
+    }//executeProcedureBlocks
+
+    protected void executeProcedureCalls(String transaction, String callStr, List<LinkedHashMap<String, Object>> arguments,
+            int start, int end, FbSqlBatchResult result, FbSqlBatchResult.FailurePolicy policy) throws SQLException, FbSqlException {
+        CallableStatement statement = prepareCachedCall(transaction, callStr);
+        try {
+            int position = start;
+            while (position<end) {
+                statement.clearBatch();
+                for (int i=position; i<end; i++) {
+                    prepareCallableParams(statement, arguments.get(i));
+                    statement.addBatch();
+                }
+                try {
+                    int[] counts = statement.executeBatch();
+                    for (int i=0; i<counts.length; i++) {
+                        result.setUpdateCount(position+i, counts[i]);
+                    }
+                    position = end;
+                } catch (BatchUpdateException bue) {
+                    position = processBatchFailure(bue, transaction, null, position, end, result, policy);
+                }
+            }
+        } finally {
+            releaseCachedStatement(statement);
+        }
+    }//executeProcedureCalls
+
     public JsonArray executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
         if (Helpers.isStringEmptyOrNull(procedure)) {
             throw new FbSqlException("Invalid stored procedure name");
         }
         String tran = getCurrentConnection(transaction);
-        long dsts = logDuration ? System.currentTimeMillis() : 0;
-        JsonArray result = null;
-        int parametersCount = parameters!=null ? parameters.size() : 0;
-        FbSqlException e = null;
-        CallableStatement statement = null;
-        ResultSet results = null;
-        try {
-            String callStr = prepareProcedureCallQuery(procedure, parametersCount);
-            appLogger.info("executeProcedure [" + procedure + "] query: " + callStr);
-            if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
-                throw new FbSqlException("Invalid database connection");
-            }
-            statement = _transactions.get(tran).prepareCall(callStr);
-            FirebirdCallableStatement fbStatement = (FirebirdCallableStatement) statement;
-            fbStatement.setSelectableProcedure(true);
-            if (parametersCount>0) {
-                statement = prepareCallableParams(statement, parameters);
-            }
-            fbStatement = (FirebirdCallableStatement) statement;
-            appLogger.debug("isSelectableProcedure: " + fbStatement.isSelectableProcedure());
-            results = statement.executeQuery();
-            checkDbWarnings(_transactions.get(tran));
-            result = processResultSet(results);
-        } catch (SQLException se) {
-            e = new FbSqlException(se);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            JsonArray result = null;
+            int parametersCount;
+            FbSqlException e = null;
+            CallableStatement statement = null;
+            ResultSet results = null;
+            try {
+                LinkedHashMap<String, Object> arguments = bindProcedureArguments(tran, procedure, parameters);
+                parametersCount = arguments!=null ? arguments.size() : 0;
+                String callStr = prepareProcedureCallQuery(procedure, parametersCount);
+                appLogger.debug("executeSelectableProcedure [" + procedure + "] query: " + callStr);
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).prepareCall(callStr);
+                FirebirdCallableStatement fbStatement = (FirebirdCallableStatement) statement;
+                fbStatement.setSelectableProcedure(true);
+                if (parametersCount>0) {
+                    statement = prepareCallableParams(statement, arguments);
+                }
+                fbStatement = (FirebirdCallableStatement) statement;
+                appLogger.debug("isSelectableProcedure: " + fbStatement.isSelectableProcedure());
+                results = statement.executeQuery();
+                checkDbWarnings(_transactions.get(tran));
+                result = processResultSet(results, callStr);
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (NullPointerException | SQLException se) {
+                    results = null;
+                }
+                try {
+                    if (statement != null) {
+                        statement.close();
+                        statement = null;
+                    }
+                } catch (NullPointerException | SQLException se) {
+                    statement = null;
+                }
+                if (e!=null) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE, e);
+                throw e;
+            }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE, procedure, mts, result==null ? 0 : result.size());
+            if (logDuration) { appLogger.info("executeSelectableProcedure duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeSelectableProcedure
+
+    public JsonArray executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters) throws FbSqlException {
+        return executeSelectableProcedure(procedure, parameters, null);
+    }//executeSelectableProcedure
+
+    public FbSqlCursor openSelectCursor(String query, LinkedHashMap<String, Object> parameters, String transaction, int fetchSize) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query)) {
+            throw new FbSqlException("Invalid query");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            PreparedStatement statement = null;
+            try {
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                if (fetchSize>0) {
+                    statement.setFetchSize(fetchSize);
+                }
+                statement = prepareParams(statement, parameters);
+                ResultSet results = statement.executeQuery();
+                checkDbWarnings(_transactions.get(tran));
+                return new FbSqlCursor(this, tran, statement, results, getResultReader(results, query));
+            } catch (SQLException se) {
+                closeStatementSilently(statement);
+                FbSqlException e = new FbSqlException(se);
+                rollback(tran);
+                throw e;
+            } catch (FbSqlException fe) {
+                closeStatementSilently(statement);
+                throw fe;
+            }
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//openSelectCursor
+
+    public FbSqlCursor openSelectCursor(String query, String transaction) throws FbSqlException {
+        return openSelectCursor(query, null, transaction, 0);
+    }//openSelectCursor
+
+    public FbSqlCursor openSelectableProcedureCursor(String procedure, LinkedHashMap<String, Object> parameters, String transaction, int fetchSize) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(procedure)) {
+            throw new FbSqlException("Invalid stored procedure name");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            int parametersCount;
+            CallableStatement statement = null;
+            try {
+                LinkedHashMap<String, Object> arguments = bindProcedureArguments(tran, procedure, parameters);
+                parametersCount = arguments!=null ? arguments.size() : 0;
+                String callStr = prepareProcedureCallQuery(procedure, parametersCount);
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).prepareCall(callStr, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ((FirebirdCallableStatement) statement).setSelectableProcedure(true);
+                if (fetchSize>0) {
+                    statement.setFetchSize(fetchSize);
+                }
+                if (parametersCount>0) {
+                    statement = prepareCallableParams(statement, arguments);
+                }
+                ResultSet results = statement.executeQuery();
+                checkDbWarnings(_transactions.get(tran));
+                return new FbSqlCursor(this, tran, statement, results, getResultReader(results, callStr));
+            } catch (SQLException se) {
+                closeStatementSilently(statement);
+                FbSqlException e = new FbSqlException(se);
+                rollback(tran);
+                throw e;
+            } catch (FbSqlException fe) {
+                closeStatementSilently(statement);
+                throw fe;
+            }
         } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//openSelectableProcedureCursor
+
+    protected void closeStatementSilently(Statement statement) {
+        try {
+            if (statement!=null) {
+                statement.close();
+            }
+        } catch (SQLException se) {
+            appLogger.warn(se.getClass().getSimpleName() + ": " + se.getMessage());
+        }
+    }//closeStatementSilently
+
+    public long executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters, String transaction, Writer output) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(procedure)) {
+            throw new FbSqlException("Invalid stored procedure name");
+        }
+        if (output==null) {
+            throw new FbSqlException("Invalid output writer");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            long result = -1;
+            int parametersCount;
+            FbSqlException e = null;
+            boolean dbError = false;
+            CallableStatement statement = null;
+            ResultSet results = null;
             try {
-                if (results!=null) {
-                    results.close();
+                LinkedHashMap<String, Object> arguments = bindProcedureArguments(tran, procedure, parameters);
+                parametersCount = arguments!=null ? arguments.size() : 0;
+                String callStr = prepareProcedureCallQuery(procedure, parametersCount);
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).prepareCall(callStr);
+                ((FirebirdCallableStatement) statement).setSelectableProcedure(true);
+                if (parametersCount>0) {
+                    statement = prepareCallableParams(statement, arguments);
+                }
+                results = statement.executeQuery();
+                checkDbWarnings(_transactions.get(tran));
+                result = writeResultSet(results, callStr, output);
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+                dbError = true;
+            } catch (IOException ioe) {
+                e = new FbSqlException(ioe);
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (SQLException se) {
                     results = null;
                 }
-            } catch (NullPointerException | SQLException se) {
-                results = null;
+                closeStatementSilently(statement);
+                statement = null;
+                if (dbError) {
+                    rollback(tran);
+                }
+            }
+            if (e!=null) {
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE, e);
+                throw e;
             }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE, procedure, mts, result);
+            if (logDuration) { appLogger.info("executeSelectableProcedure duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
+        }
+    }//executeSelectableProcedure
+
+    public <T> List<T> executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters, String transaction, Class<T> type) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(procedure)) {
+            throw new FbSqlException("Invalid stored procedure name");
+        }
+        if (type==null) {
+            throw new FbSqlException("Invalid target class");
+        }
+        String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
+        try {
+            long mts = System.nanoTime();
+            long dsts = logDuration ? System.currentTimeMillis() : 0;
+            List<T> result = null;
+            int parametersCount;
+            FbSqlException e = null;
+            boolean dbError = false;
+            CallableStatement statement = null;
+            ResultSet results = null;
             try {
-                if (statement != null) {
-                    statement.close();
-                    statement = null;
+                LinkedHashMap<String, Object> arguments = bindProcedureArguments(tran, procedure, parameters);
+                parametersCount = arguments!=null ? arguments.size() : 0;
+                String callStr = prepareProcedureCallQuery(procedure, parametersCount);
+                if (_transactions.get(tran) == null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Invalid database connection");
+                }
+                statement = _transactions.get(tran).prepareCall(callStr);
+                ((FirebirdCallableStatement) statement).setSelectableProcedure(true);
+                if (parametersCount>0) {
+                    statement = prepareCallableParams(statement, arguments);
+                }
+                results = statement.executeQuery();
+                checkDbWarnings(_transactions.get(tran));
+                result = mapResultSet(results, callStr, type);
+            } catch (SQLException se) {
+                e = new FbSqlException(se);
+                dbError = true;
+            } catch (FbSqlException fe) {
+                e = fe;
+            } finally {
+                try {
+                    if (results!=null) {
+                        results.close();
+                        results = null;
+                    }
+                } catch (SQLException se) {
+                    results = null;
                 }
-            } catch (NullPointerException | SQLException se) {
+                closeStatementSilently(statement);
                 statement = null;
+                if (dbError) {
+                    rollback(tran);
+                }
             }
             if (e!=null) {
-                rollback(tran);
+                getMetrics().recordError(FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE, e);
+                throw e;
             }
+            recordExecution(FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE, procedure, mts, result==null ? 0 : result.size());
+            if (logDuration) { appLogger.info("executeSelectableProcedure duration: " + Helpers.getDuration(dsts)); }
+            return result;
+        } finally {
+            unlockTransaction(tran, lock);
         }
-        if (e!=null) {
-            throw e;
+    }//executeSelectableProcedure
+
+    public long executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters, String transaction, OutputStream output) throws FbSqlException {
+        if (output==null) {
+            throw new FbSqlException("Invalid output stream");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        long result = executeSelectableProcedure(procedure, parameters, transaction, writer);
+        try {
+            writer.flush();
+        } catch (IOException ioe) {
+            throw new FbSqlException(ioe);
         }
-        if (logDuration) { appLogger.info("executeSelectableProcedure duration: " + Helpers.getDuration(dsts)); }
         return result;
     }//executeSelectableProcedure
 
-    public JsonArray executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters) throws FbSqlException {
-        return executeSelectableProcedure(procedure, parameters, null);
-    }//executeSelectableProcedure
+    protected synchronized FbSqlAsyncExecutor getAsyncExecutor() {
+        if (_asyncExecutor==null) {
+            _asyncExecutor = new FbSqlAsyncExecutor(_asyncExecutorService, FbSqlMetrics.getName(prepareConnectionString()), _asyncMaxConcurrency);
+        }
+        return _asyncExecutor;
+    }//getAsyncExecutor
+
+    protected <T> CompletableFuture<T> submitAsync(String transaction, FbSqlAsyncExecutor.Task<T> task) {
+        String tran = Helpers.isStringEmptyOrNull(transaction) ? _defaultConnectionName : transaction;
+        while (true) {
+            FbSqlAsyncExecutor executor = getAsyncExecutor();
+            CompletableFuture<T> result = executor.trySubmit(tran, task);
+            if (result!=null) {
+                return result;
+            }
+            // Replaced by setAsyncExecutor() or closed by destroy() since it was read
+            synchronized (this) {
+                if (_asyncExecutor==executor) {
+                    _asyncExecutor = null;
+                }
+            }
+        }
+    }//submitAsync
+
+    public CompletableFuture<Integer> executeQueryAsync(String query, String transaction) {
+        return submitAsync(transaction, () -> executeQuery(query, transaction));
+    }//executeQueryAsync
+
+    public CompletableFuture<Integer> executeQueryAsync(String query, LinkedHashMap<String, Object> parameters, String transaction) {
+        return submitAsync(transaction, () -> executeQuery(query, parameters, transaction));
+    }//executeQueryAsync
+
+    public CompletableFuture<JsonArray> executeSelectQueryAsync(String query, String transaction) {
+        return submitAsync(transaction, () -> executeSelectQuery(query, transaction));
+    }//executeSelectQueryAsync
+
+    public CompletableFuture<JsonArray> executeSelectQueryAsync(String query, LinkedHashMap<String, Object> parameters, String transaction) {
+        return submitAsync(transaction, () -> executeSelectQuery(query, parameters, transaction));
+    }//executeSelectQueryAsync
+
+    public <T> CompletableFuture<List<T>> executeSelectQueryAsync(String query, LinkedHashMap<String, Object> parameters, String transaction, Class<T> type) {
+        return submitAsync(transaction, () -> executeSelectQuery(query, parameters, transaction, type));
+    }//executeSelectQueryAsync
+
+    public CompletableFuture<Integer> executeBulkInsertAsync(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values, String transaction) {
+        return submitAsync(transaction, () -> executeBulkInsert(tableName, fields, values, transaction));
+    }//executeBulkInsertAsync
+
+    public CompletableFuture<Integer> executePackedBulkInsertAsync(String tableName, String[] fields, List<LinkedHashMap<String, Object>> values, String transaction) {
+        return submitAsync(transaction, () -> executePackedBulkInsert(tableName, fields, values, transaction));
+    }//executePackedBulkInsertAsync
+
+    public CompletableFuture<Boolean> executeProcedureAsync(String procedure, LinkedHashMap<String, Object> parameters, String transaction) {
+        return submitAsync(transaction, () -> executeProcedure(procedure, parameters, transaction));
+    }//executeProcedureAsync
+
+    public CompletableFuture<JsonArray> executeSelectableProcedureAsync(String procedure, LinkedHashMap<String, Object> parameters, String transaction) {
+        return submitAsync(transaction, () -> executeSelectableProcedure(procedure, parameters, transaction));
+    }//executeSelectableProcedureAsync
+
+    public <T> CompletableFuture<List<T>> executeSelectableProcedureAsync(String procedure, LinkedHashMap<String, Object> parameters, String transaction, Class<T> type) {
+        return submitAsync(transaction, () -> executeSelectableProcedure(procedure, parameters, transaction, type));
+    }//executeSelectableProcedureAsync
+
+    public CompletableFuture<Void> commitTransactionAsync(String transaction) {
+        return submitAsync(transaction, () -> { commitTransaction(transaction); return null; });
+    }//commitTransactionAsync
+
+    public CompletableFuture<Void> rollbackTransactionAsync(String transaction) {
+        return submitAsync(transaction, () -> { rollbackTransaction(transaction); return null; });
+    }//rollbackTransactionAsync
 
     public boolean hasTransactionsSupport(String transaction) throws FbSqlException {
         String tran = getCurrentConnection(transaction);
+        ReentrantLock lock = lockTransaction(tran);
         try {
-            if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
-                throw new FbSqlException("Database connection is closed");
+            try {
+                if (_transactions.get(tran)==null || _transactions.get(tran).isClosed()) {
+                    throw new FbSqlException("Database connection is closed");
+                }
+                DatabaseMetaData dbMetaData = _transactions.get(tran).getMetaData();
+                return dbMetaData.supportsTransactions();
+            } catch (SQLException se) {
+                throw new FbSqlException(se);
             }
-            DatabaseMetaData dbMetaData = _transactions.get(tran).getMetaData();
-            return dbMetaData.supportsTransactions();
-        } catch (SQLException se) {
-            throw new FbSqlException(se);
+        } finally {
+            unlockTransaction(tran, lock);
         }
     }//hasTransactionsSupport
 }//FbSqlConnection
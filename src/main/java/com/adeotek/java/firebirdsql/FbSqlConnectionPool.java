@@ -0,0 +1,434 @@
+package com.adeotek.java.firebirdsql;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class FbSqlConnectionPool {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlConnectionPool.class);
+    protected static final ConcurrentHashMap<String, FbSqlConnectionPool> _pools = new ConcurrentHashMap<>();
+    protected static final ConcurrentHashMap<Connection, FbSqlConnectionPool> _owners = new ConcurrentHashMap<>();
+    // Idle eviction and min size refill for all pools, so quiet pools are maintained too
+    protected static ScheduledExecutorService _maintenance = null;
+
+    protected static class PooledConnection {
+        protected final Connection connection;
+        protected final long createdAt;
+        protected long lastUsedAt;
+
+        protected PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = this.createdAt;
+        }//PooledConnection
+    }//PooledConnection
+
+    protected final Driver _driver;
+    protected final String _url;
+    protected final Properties _properties;
+    protected final ReentrantLock _lock = new ReentrantLock();
+    protected final Condition _available = _lock.newCondition();
+    protected final ArrayDeque<PooledConnection> _idle = new ArrayDeque<>();
+    protected final IdentityHashMap<Connection, PooledConnection> _borrowed = new IdentityHashMap<>();
+    // Slots reserved by connects in progress; physical connects never run under _lock
+    protected int _pending = 0;
+    protected int _minSize = 0;
+    protected int _maxSize = 10;
+    // Milliseconds; values <= 0 disable the corresponding check
+    protected long _idleTimeout = 600000;
+    protected long _maxLifetime = 1800000;
+    protected long _borrowTimeout = 30000;
+    protected long _maintenanceInterval = 30000;
+    protected int _validationTimeout = 5;
+    protected boolean _validateOnBorrow = true;
+    protected boolean _closed = false;
+    protected ScheduledFuture<?> _maintenanceTask = null;
+
+    public void setMinSize(int minSize) { _minSize = Math.max(0, minSize); }
+    public void setMaxSize(int maxSize) { _maxSize = Math.max(1, maxSize); }
+    public void setIdleTimeout(long idleTimeout) { _idleTimeout = idleTimeout; }
+    public void setMaxLifetime(long maxLifetime) { _maxLifetime = maxLifetime; }
+    public void setBorrowTimeout(long borrowTimeout) { _borrowTimeout = borrowTimeout; }
+    public void setValidationTimeout(int validationTimeout) { _validationTimeout = validationTimeout; }
+    public void setValidateOnBorrow(boolean validateOnBorrow) { _validateOnBorrow = validateOnBorrow; }
+    public int getMinSize() { return _minSize; }
+    public int getMaxSize() { return _maxSize; }
+    public long getIdleTimeout() { return _idleTimeout; }
+    public long getMaxLifetime() { return _maxLifetime; }
+
+    protected FbSqlConnectionPool(Driver driver, String url, Properties properties) {
+        _driver = driver;
+        _url = url;
+        _properties = new Properties();
+        if (properties!=null) {
+            _properties.putAll(properties);
+        }
+    }//FbSqlConnectionPool
+
+    protected static String prepareKey(String url, Properties properties) {
+        StringBuilder key = new StringBuilder(url);
+        if (properties!=null && properties.size()>0) {
+            // Sorted so that equal property sets always produce the same key
+            TreeMap<String, String> sorted = new TreeMap<>();
+            for (Map.Entry<Object, Object> kv : properties.entrySet()) {
+                sorted.put(kv.getKey().toString(), String.valueOf(kv.getValue()));
+            }
+            for (Map.Entry<String, String> kv : sorted.entrySet()) {
+                key.append("|").append(kv.getKey()).append("=").append(kv.getValue());
+            }
+        }
+        return key.toString();
+    }//prepareKey
+
+    public static FbSqlConnectionPool getPool(Driver driver, String url, Properties properties) {
+        return getPool(driver, url, properties, 0, 10, 600000, 1800000);
+    }//getPool
+
+    // The sizing options only apply when the pool is created; later callers share the existing pool as it is
+    public static FbSqlConnectionPool getPool(Driver driver, String url, Properties properties, int minSize, int maxSize, long idleTimeout, long maxLifetime) {
+        FbSqlConnectionPool result = _pools.get(prepareKey(url, properties));
+        if (result!=null) {
+            return result;
+        }
+        return _pools.computeIfAbsent(prepareKey(url, properties), k -> {
+            FbSqlConnectionPool pool = new FbSqlConnectionPool(driver, url, properties);
+            pool.setMinSize(minSize);
+            pool.setMaxSize(maxSize);
+            pool.setIdleTimeout(idleTimeout);
+            pool.setMaxLifetime(maxLifetime);
+            pool.startMaintenance();
+            return pool;
+        });
+    }//getPool
+
+    public static FbSqlConnectionPool getOwner(Connection conn) {
+        return conn==null ? null : _owners.get(conn);
+    }//getOwner
+
+    public static void closeAll() {
+        for (FbSqlConnectionPool pool : _pools.values()) {
+            pool.close();
+        }
+        _pools.clear();
+    }//closeAll
+
+    protected static synchronized ScheduledExecutorService getMaintenanceExecutor() {
+        if (_maintenance==null) {
+            _maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "FbSqlConnectionPool-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _maintenance;
+    }//getMaintenanceExecutor
+
+    protected void startMaintenance() {
+        if (_maintenanceInterval<=0) {
+            return;
+        }
+        // The first run also fills the pool up to its min size
+        _maintenanceTask = getMaintenanceExecutor().scheduleWithFixedDelay(this::maintain, 0, _maintenanceInterval, TimeUnit.MILLISECONDS);
+    }//startMaintenance
+
+    protected void maintain() {
+        try {
+            ArrayList<PooledConnection> evicted = new ArrayList<>();
+            _lock.lock();
+            try {
+                if (_closed) {
+                    return;
+                }
+                evictIdle(evicted);
+            } finally {
+                _lock.unlock();
+            }
+            discardAll(evicted);
+            fill();
+        } catch (RuntimeException re) {
+            appLogger.warn("FbSqlConnectionPool maintenance: " + re.getMessage());
+        }
+    }//maintain
+
+    // Opens connections until min size is reached; stops at the first failure (retried on the next run)
+    protected void fill() {
+        while (true) {
+            _lock.lock();
+            try {
+                if (_closed || _idle.size()+_borrowed.size()+_pending>=Math.min(_minSize, _maxSize)) {
+                    return;
+                }
+                _pending++;
+            } finally {
+                _lock.unlock();
+            }
+            PooledConnection pc;
+            try {
+                pc = open();
+            } catch (SQLException se) {
+                cancelReservation();
+                appLogger.warn("FbSqlConnectionPool fill: " + se.getMessage());
+                return;
+            }
+            boolean keep;
+            _lock.lock();
+            try {
+                _pending--;
+                keep = !_closed;
+                if (keep) {
+                    _idle.addFirst(pc);
+                    _available.signal();
+                }
+            } finally {
+                _lock.unlock();
+            }
+            if (!keep) {
+                closeQuietly(pc);
+                return;
+            }
+        }
+    }//fill
+
+    protected PooledConnection open() throws SQLException {
+        PooledConnection pc = new PooledConnection(_driver.connect(_url, _properties));
+        _owners.put(pc.connection, this);
+        return pc;
+    }//open
+
+    protected void cancelReservation() {
+        _lock.lock();
+        try {
+            _pending--;
+            _available.signal();
+        } finally {
+            _lock.unlock();
+        }
+    }//cancelReservation
+
+    public Connection borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + _borrowTimeout;
+        while (true) {
+            PooledConnection pc = null;
+            ArrayList<PooledConnection> evicted = new ArrayList<>();
+            _lock.lock();
+            try {
+                while (true) {
+                    if (_closed) {
+                        throw new SQLException("Connection pool closed");
+                    }
+                    evictIdle(evicted);
+                    pc = _idle.pollFirst();
+                    if (pc!=null) {
+                        _borrowed.put(pc.connection, pc);
+                        break;
+                    }
+                    if (_borrowed.size()+_pending<_maxSize) {
+                        // Reserve the slot, the connect itself happens outside the lock
+                        _pending++;
+                        break;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (_borrowTimeout<=0 || wait<=0) {
+                        throw new SQLException("Connection pool exhausted (max size: " + _maxSize + ")");
+                    }
+                    try {
+                        _available.await(wait, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a pooled connection");
+                    }
+                }
+            } finally {
+                _lock.unlock();
+                discardAll(evicted);
+            }
+            if (pc==null) {
+                try {
+                    pc = open();
+                } catch (SQLException se) {
+                    cancelReservation();
+                    throw se;
+                }
+                _lock.lock();
+                try {
+                    _pending--;
+                    _borrowed.put(pc.connection, pc);
+                    appLogger.debug("New pooled connection created (" + _borrowed.size() + "/" + _maxSize + ")");
+                } finally {
+                    _lock.unlock();
+                }
+                return pc.connection;
+            }
+            // Validation is a server round trip: the connection is already counted as borrowed, so it runs unlocked
+            if (!isExpired(pc) && isUsable(pc)) {
+                pc.lastUsedAt = System.currentTimeMillis();
+                return pc.connection;
+            }
+            _lock.lock();
+            try {
+                _borrowed.remove(pc.connection);
+                _available.signal();
+            } finally {
+                _lock.unlock();
+            }
+            closeQuietly(pc);
+        }
+    }//borrow
+
+    public void release(Connection conn) throws SQLException {
+        if (conn==null) {
+            return;
+        }
+        PooledConnection pc;
+        _lock.lock();
+        try {
+            pc = _borrowed.get(conn);
+        } finally {
+            _lock.unlock();
+        }
+        if (pc==null) {
+            return;
+        }
+        // Still counted as borrowed while it is cleaned up, so the pool never exceeds its max size
+        boolean reusable;
+        SQLException error = null;
+        try {
+            reusable = !conn.isClosed() && !isExpired(pc);
+            if (reusable) {
+                if (!conn.getAutoCommit()) {
+                    // Never hand out a connection with pending work
+                    conn.rollback();
+                }
+                conn.clearWarnings();
+            }
+        } catch (SQLException se) {
+            reusable = false;
+            error = se;
+        }
+        _lock.lock();
+        try {
+            _borrowed.remove(conn);
+            if (reusable && !_closed) {
+                pc.lastUsedAt = System.currentTimeMillis();
+                _idle.addFirst(pc);
+            }
+            _available.signal();
+        } finally {
+            _lock.unlock();
+        }
+        if (!reusable || _closed) {
+            closeQuietly(pc);
+        }
+        if (error!=null) {
+            throw error;
+        }
+    }//release
+
+    // Closes the idle connections; borrowed ones are closed when they are released
+    public void close() {
+        _pools.values().remove(this);
+        ArrayList<PooledConnection> closing = new ArrayList<>();
+        _lock.lock();
+        try {
+            _closed = true;
+            if (_maintenanceTask!=null) {
+                _maintenanceTask.cancel(false);
+                _maintenanceTask = null;
+            }
+            PooledConnection pc;
+            while ((pc = _idle.pollFirst())!=null) {
+                closing.add(pc);
+            }
+            _available.signalAll();
+        } finally {
+            _lock.unlock();
+        }
+        discardAll(closing);
+        String metrics = FbSqlMetrics.getName(_url);
+        for (FbSqlConnectionPool pool : _pools.values()) {
+            if (FbSqlMetrics.getName(pool._url).equals(metrics)) {
+                return;
+            }
+        }
+        // Last pool of the database
+        FbSqlMetrics.unregister(metrics);
+    }//close
+
+    public int getIdleCount() {
+        _lock.lock();
+        try {
+            return _idle.size();
+        } finally {
+            _lock.unlock();
+        }
+    }//getIdleCount
+
+    public int getActiveCount() {
+        _lock.lock();
+        try {
+            return _borrowed.size();
+        } finally {
+            _lock.unlock();
+        }
+    }//getActiveCount
+
+    protected boolean isExpired(PooledConnection pc) {
+        return _maxLifetime>0 && System.currentTimeMillis()-pc.createdAt>_maxLifetime;
+    }//isExpired
+
+    protected boolean isUsable(PooledConnection pc) {
+        try {
+            if (pc.connection.isClosed()) {
+                return false;
+            }
+            return !_validateOnBorrow || pc.connection.isValid(_validationTimeout);
+        } catch (SQLException se) {
+            return false;
+        }
+    }//isUsable
+
+    // Called under _lock; the evicted connections are closed by the caller after unlocking
+    protected void evictIdle(List<PooledConnection> evicted) {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = _idle.iterator();
+        while (it.hasNext()) {
+            PooledConnection pc = it.next();
+            if (isExpired(pc)) {
+                it.remove();
+                evicted.add(pc);
+            }
+        }
+        if (_idleTimeout<=0) {
+            return;
+        }
+        // Least recently used connections sit at the tail of the deque
+        while (_idle.size()+_borrowed.size()+_pending>_minSize && !_idle.isEmpty()
+                && now-_idle.peekLast().lastUsedAt>_idleTimeout) {
+            evicted.add(_idle.pollLast());
+        }
+    }//evictIdle
+
+    protected void discardAll(List<PooledConnection> connections) {
+        for (PooledConnection pc : connections) {
+            closeQuietly(pc);
+        }
+    }//discardAll
+
+    protected void closeQuietly(PooledConnection pc) {
+        _owners.remove(pc.connection);
+        try {
+            if (!pc.connection.isClosed()) {
+                pc.connection.close();
+            }
+        } catch (SQLException se) {
+            appLogger.warn(se.getClass().getSimpleName() + ": " + se.getMessage());
+        }
+    }//closeQuietly
+}//FbSqlConnectionPool
@@ -0,0 +1,117 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Forward-only row cursor; the statement and result set stay open until close() (or the last row) is reached
+public class FbSqlCursor implements AutoCloseable, Iterable<JsonObject>, Iterator<JsonObject> {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlCursor.class);
+
+    protected final FbSqlConnection _connection;
+    protected final String _transaction;
+    protected Statement _statement;
+    protected ResultSet _results;
+    protected final FbSqlResultReader _reader;
+    protected JsonObject _next = null;
+    protected boolean _done = false;
+    protected long _rowCount = 0;
+
+    public String getTransaction() { return _transaction; }
+    public long getRowCount() { return _rowCount; }
+    public boolean isClosed() { return _results==null; }
+
+    protected FbSqlCursor(FbSqlConnection connection, String transaction, Statement statement, ResultSet results, FbSqlResultReader reader) {
+        _connection = connection;
+        _transaction = transaction;
+        _statement = statement;
+        _results = results;
+        _reader = reader;
+    }//FbSqlCursor
+
+    public JsonObject fetch() throws FbSqlException {
+        if (_next!=null) {
+            JsonObject row = _next;
+            _next = null;
+            return row;
+        }
+        if (_done || _results==null) {
+            return null;
+        }
+        ReentrantLock lock = _connection.lockTransaction(_transaction);
+        try {
+            if (!_results.next()) {
+                _done = true;
+                close();
+                return null;
+            }
+            _rowCount++;
+            _connection.getMetrics().addRowsRead(1);
+            return _reader.readRow(_results);
+        } catch (SQLException se) {
+            FbSqlException e = new FbSqlException(se);
+            close();
+            _connection.rollback(_transaction);
+            throw e;
+        } finally {
+            _connection.unlockTransaction(_transaction, lock);
+        }
+    }//fetch
+
+    @Override
+    public boolean hasNext() {
+        if (_next==null && !_done) {
+            try {
+                _next = fetch();
+            } catch (FbSqlException fe) {
+                throw new IllegalStateException(fe.getMessage(), fe);
+            }
+        }
+        return _next!=null;
+    }//hasNext
+
+    @Override
+    public JsonObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        JsonObject row = _next;
+        _next = null;
+        return row;
+    }//next
+
+    @Override
+    public Iterator<JsonObject> iterator() {
+        return this;
+    }//iterator
+
+    @Override
+    public void close() {
+        _done = true;
+        try {
+            if (_results!=null) {
+                _results.close();
+            }
+        } catch (SQLException se) {
+            appLogger.warn(se.getClass().getSimpleName() + ": " + se.getMessage());
+        } finally {
+            _results = null;
+        }
+        try {
+            if (_statement!=null) {
+                _statement.close();
+            }
+        } catch (SQLException se) {
+            appLogger.warn(se.getClass().getSimpleName() + ": " + se.getMessage());
+        } finally {
+            _statement = null;
+        }
+    }//close
+}//FbSqlCursor
@@ -0,0 +1,207 @@
+package com.adeotek.java.firebirdsql;
+
+import java.sql.ParameterMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Builds parameterized EXECUTE BLOCK statements that pack several DML statements into one round trip
+public final class FbSqlExecuteBlock {
+    // Firebird (< 4.0) caps the input message at 64 KB and the statement text at 64 KB
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 65535;
+    public static final int DEFAULT_MAX_STATEMENT_LENGTH = 65535;
+    public static final int DEFAULT_MAX_PARAMETERS = 1000;
+    public static final int DEFAULT_MAX_ROWS = 255;
+    // Null indicator + worst case alignment for each parameter
+    protected static final int PARAMETER_OVERHEAD = 8;
+    protected static final Pattern PACKABLE_STATEMENT = Pattern.compile("^(?:INSERT|UPDATE|DELETE|MERGE)\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    protected static final Pattern RETURNING_CLAUSE = Pattern.compile("\\bRETURNING\\b", Pattern.CASE_INSENSITIVE);
+
+    private FbSqlExecuteBlock() {}
+
+    public static class Shape {
+        protected final String[] _types;
+        protected final int _rowBytes;
+
+        public String[] getTypes() { return _types; }
+        public int getRowBytes() { return _rowBytes; }
+
+        protected Shape(String[] types, int rowBytes) {
+            _types = types;
+            _rowBytes = rowBytes;
+        }//Shape
+
+        public int getRowsPerBlock(int maxRows, int maxParameters, int maxMessageSize) {
+            int rows = Math.max(1, maxRows);
+            rows = Math.min(rows, Math.max(1, maxParameters / _types.length));
+            rows = Math.min(rows, Math.max(1, maxMessageSize / Math.max(1, _rowBytes)));
+            return rows;
+        }//getRowsPerBlock
+    }//Shape
+
+    // Returns null when a parameter type cannot be declared inside an EXECUTE BLOCK
+    public static Shape describe(ParameterMetaData metaData) throws SQLException {
+        int count = metaData.getParameterCount();
+        String[] types = new String[count];
+        int rowBytes = 0;
+        for (int i=1; i<=count; i++) {
+            int precision = metaData.getPrecision(i);
+            int scale = metaData.getScale(i);
+            switch (metaData.getParameterType(i)) {
+                case Types.SMALLINT:
+                    types[i-1] = "SMALLINT";
+                    rowBytes += 2;
+                    break;
+                case Types.INTEGER:
+                    types[i-1] = "INTEGER";
+                    rowBytes += 4;
+                    break;
+                case Types.BIGINT:
+                    types[i-1] = "BIGINT";
+                    rowBytes += 8;
+                    break;
+                case Types.FLOAT:
+                case Types.REAL:
+                    types[i-1] = "FLOAT";
+                    rowBytes += 4;
+                    break;
+                case Types.DOUBLE:
+                    types[i-1] = "DOUBLE PRECISION";
+                    rowBytes += 8;
+                    break;
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                    types[i-1] = "NUMERIC(" + precision + "," + scale + ")";
+                    rowBytes += 16;
+                    break;
+                case Types.DATE:
+                    types[i-1] = "DATE";
+                    rowBytes += 4;
+                    break;
+                case Types.TIME:
+                    types[i-1] = "TIME";
+                    rowBytes += 4;
+                    break;
+                case Types.TIMESTAMP:
+                    types[i-1] = "TIMESTAMP";
+                    rowBytes += 8;
+                    break;
+                case Types.BOOLEAN:
+                    types[i-1] = "BOOLEAN";
+                    rowBytes += 1;
+                    break;
+                case Types.CHAR:
+                    types[i-1] = "CHAR(" + precision + ")";
+                    rowBytes += precision * 4;
+                    break;
+                case Types.VARCHAR:
+                    types[i-1] = "VARCHAR(" + precision + ")";
+                    rowBytes += precision * 4 + 2;
+                    break;
+                case Types.BINARY:
+                    types[i-1] = "CHAR(" + precision + ") CHARACTER SET OCTETS";
+                    rowBytes += precision;
+                    break;
+                case Types.VARBINARY:
+                    types[i-1] = "VARCHAR(" + precision + ") CHARACTER SET OCTETS";
+                    rowBytes += precision + 2;
+                    break;
+                case Types.LONGVARCHAR:
+                case Types.CLOB:
+                    types[i-1] = "BLOB SUB_TYPE TEXT";
+                    rowBytes += 8;
+                    break;
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    types[i-1] = "BLOB SUB_TYPE BINARY";
+                    rowBytes += 8;
+                    break;
+                default:
+                    return null;
+            }
+            rowBytes += PARAMETER_OVERHEAD;
+        }
+        return new Shape(types, rowBytes);
+    }//describe
+
+    public static String buildInsertBlock(String tableName, String[] fields, Shape shape, int rows) {
+        StringBuilder block = new StringBuilder("EXECUTE BLOCK (");
+        int p = 0;
+        for (int r=0; r<rows; r++) {
+            for (int f=0; f<fields.length; f++) {
+                if (p>0) {
+                    block.append(", ");
+                }
+                block.append("P").append(p++).append(" ").append(shape.getTypes()[f]).append(" = ?");
+            }
+        }
+        block.append(") AS BEGIN\n");
+        p = 0;
+        for (int r=0; r<rows; r++) {
+            block.append("INSERT INTO \"").append(tableName).append("\" (");
+            for (int f=0; f<fields.length; f++) {
+                block.append(f>0 ? ", " : "").append("\"").append(fields[f]).append("\"");
+            }
+            block.append(") VALUES (");
+            for (int f=0; f<fields.length; f++) {
+                block.append(f>0 ? ", " : "").append(":P").append(p++);
+            }
+            block.append(");\n");
+        }
+        block.append("END");
+        return block.toString();
+    }//buildInsertBlock
+
+    // One EXECUTE PROCEDURE per call; output parameters of the procedure are discarded
+    public static String buildProcedureBlock(String procedure, Shape shape, int calls) {
+        int arity = shape.getTypes().length;
+        StringBuilder block = new StringBuilder("EXECUTE BLOCK (");
+        int p = 0;
+        for (int c=0; c<calls; c++) {
+            for (int a=0; a<arity; a++) {
+                if (p>0) {
+                    block.append(", ");
+                }
+                block.append("P").append(p++).append(" ").append(shape.getTypes()[a]).append(" = ?");
+            }
+        }
+        block.append(") AS BEGIN\n");
+        p = 0;
+        for (int c=0; c<calls; c++) {
+            block.append("EXECUTE PROCEDURE ").append(procedure).append("(");
+            for (int a=0; a<arity; a++) {
+                block.append(a>0 ? ", " : "").append(":P").append(p++);
+            }
+            block.append(");\n");
+        }
+        block.append("END");
+        return block.toString();
+    }//buildProcedureBlock
+
+    // Plain DML without parameters, RETURNING or PSQL variable references can run unchanged inside a block
+    public static boolean isPackable(String statement) {
+        String command = FbSqlScript.stripLeadingComments(statement.trim());
+        if (!PACKABLE_STATEMENT.matcher(command).matches()) {
+            return false;
+        }
+        String unquoted = command.replaceAll("'[^']*'|\"[^\"]*\"", "''");
+        return unquoted.indexOf('?')<0 && unquoted.indexOf(':')<0 && unquoted.indexOf(';')<0
+                && !unquoted.contains("--") && !unquoted.contains("/*") && !RETURNING_CLAUSE.matcher(unquoted).find();
+    }//isPackable
+
+    // Runs the statements in order and returns their ROW_COUNTs as a single row (C0..Cn)
+    public static String buildStatementsBlock(List<String> statements) {
+        StringBuilder block = new StringBuilder("EXECUTE BLOCK RETURNS (");
+        for (int i=0; i<statements.size(); i++) {
+            block.append(i>0 ? ", " : "").append("C").append(i).append(" INTEGER");
+        }
+        block.append(") AS BEGIN\n");
+        for (int i=0; i<statements.size(); i++) {
+            block.append(statements.get(i).trim()).append(";\n");
+            block.append("C").append(i).append(" = ROW_COUNT;\n");
+        }
+        block.append("SUSPEND;\nEND");
+        return block.toString();
+    }//buildStatementsBlock
+}//FbSqlExecuteBlock
@@ -0,0 +1,75 @@
+package com.adeotek.java.firebirdsql;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free log-linear latency histogram (nanoseconds): 8 linear sub-buckets per power of two, ~12.5% precision
+public class FbSqlLatencyHistogram {
+    protected static final int SUB_BUCKET_BITS = 3;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    protected static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    protected final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    protected final LongAdder _count = new LongAdder();
+    protected final LongAdder _sum = new LongAdder();
+    protected final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+    public long getCount() { return _count.sum(); }
+    public long getSum() { return _sum.sum(); }
+    public long getMax() { return _max.get(); }
+    public double getMean() {
+        long count = _count.sum();
+        return count==0 ? 0 : (double) _sum.sum() / count;
+    }//getMean
+
+    protected static int getBucket(long value) {
+        if (value<SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + subBucket;
+    }//getBucket
+
+    protected static long getBucketUpperBound(int bucket) {
+        if (bucket<SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << exponent) - 1;
+    }//getBucketUpperBound
+
+    public void record(long nanos) {
+        _counts.incrementAndGet(getBucket(nanos));
+        _count.increment();
+        _sum.add(nanos);
+        _max.accumulate(nanos);
+    }//record
+
+    public long getPercentile(double percentile) {
+        long count = _count.sum();
+        if (count==0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            seen += _counts.get(i);
+            if (seen>=Math.max(1, target)) {
+                return Math.min(getBucketUpperBound(i), _max.get());
+            }
+        }
+        return _max.get();
+    }//getPercentile
+
+    public void reset() {
+        for (int i=0; i<BUCKETS; i++) {
+            _counts.set(i, 0);
+        }
+        _count.reset();
+        _sum.reset();
+        _max.reset();
+    }//reset
+}//FbSqlLatencyHistogram
@@ -0,0 +1,289 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-database latency histograms and throughput counters, shared by all connections and published over JMX
+public class FbSqlMetrics implements FbSqlMetricsMXBean {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlMetrics.class);
+    protected static final String JMX_DOMAIN = "com.adeotek.java.firebirdsql";
+    protected static final String URL_PREFIX = "jdbc:firebirdsql:";
+    protected static final ConcurrentHashMap<String, FbSqlMetrics> _registry = new ConcurrentHashMap<>();
+
+    public enum Operation {
+        CONNECT("connect", false, false),
+        EXECUTE_QUERY("executeQuery", false, true),
+        EXECUTE_SELECT_QUERY("executeSelectQuery", true, false),
+        EXECUTE_BULK_INSERT("executeBulkInsert", false, true),
+        EXECUTE_PROCEDURE("executeProcedure", false, false),
+        EXECUTE_SELECTABLE_PROCEDURE("executeSelectableProcedure", true, false),
+        EXECUTE_BATCH("executeBatch", false, true),
+        COMMIT("commit", false, false),
+        ROLLBACK("rollback", false, false);
+
+        protected final String _name;
+        protected final boolean _reads;
+        protected final boolean _writes;
+
+        public String getName() { return _name; }
+
+        Operation(String name, boolean reads, boolean writes) {
+            _name = name;
+            _reads = reads;
+            _writes = writes;
+        }//Operation
+    }//Operation
+
+    protected final String _database;
+    protected final FbSqlLatencyHistogram[] _latencies = new FbSqlLatencyHistogram[Operation.values().length];
+    protected final LongAdder[] _operationErrors = new LongAdder[Operation.values().length];
+    protected final ConcurrentHashMap<String, LongAdder> _errors = new ConcurrentHashMap<>();
+    protected final LongAdder _rowsRead = new LongAdder();
+    protected final LongAdder _rowsWritten = new LongAdder();
+    protected final LongAdder _openTransactions = new LongAdder();
+    protected final LongAdder _retries = new LongAdder();
+    protected final LongAdder _retriesExhausted = new LongAdder();
+    protected volatile long _startTime = System.nanoTime();
+    // Connections using this instance (acquire/release), guarded by _registry
+    protected int _references = 0;
+
+    @Override
+    public String getDatabase() { return _database; }
+    @Override
+    public long getRowsRead() { return _rowsRead.sum(); }
+    @Override
+    public long getRowsWritten() { return _rowsWritten.sum(); }
+    @Override
+    public long getOpenTransactions() { return _openTransactions.sum(); }
+    @Override
+    public long getRetries() { return _retries.sum(); }
+    @Override
+    public long getRetriesExhausted() { return _retriesExhausted.sum(); }
+    public FbSqlLatencyHistogram getLatency(Operation operation) { return _latencies[operation.ordinal()]; }
+
+    protected FbSqlMetrics(String database) {
+        _database = database;
+        for (int i=0; i<_latencies.length; i++) {
+            _latencies[i] = new FbSqlLatencyHistogram();
+            _operationErrors[i] = new LongAdder();
+        }
+    }//FbSqlMetrics
+
+    // host:port/database of a JDBC URL: the connection type and the query string (which may carry user and password) are left out
+    public static String getName(String url) {
+        String result = url==null ? "" : url;
+        if (result.startsWith(URL_PREFIX)) {
+            result = result.substring(URL_PREFIX.length());
+        }
+        for (String type : new String[] { "java", "local", "native", "embedded" }) {
+            if (result.startsWith(type + ":")) {
+                result = result.substring(type.length() + 1);
+                break;
+            }
+        }
+        int query = result.indexOf('?');
+        if (query>=0) {
+            result = result.substring(0, query);
+        }
+        return result.startsWith("//") ? result.substring(2) : result;
+    }//getName
+
+    // Current metrics of database (a getName() value), null when no connection uses it
+    public static FbSqlMetrics getMetrics(String database) {
+        return _registry.get(database);
+    }//getMetrics
+
+    // Each acquire is paired with a release(); the MBean is registered while the database has users
+    public static FbSqlMetrics acquire(String database) {
+        return _registry.compute(database, (k, metrics) -> {
+            if (metrics==null) {
+                metrics = new FbSqlMetrics(k);
+                metrics.register();
+            }
+            metrics._references++;
+            return metrics;
+        });
+    }//acquire
+
+    public void release() {
+        _registry.computeIfPresent(_database, (k, metrics) -> {
+            if (metrics!=this || --_references>0) {
+                return metrics;
+            }
+            unregister();
+            return null;
+        });
+    }//release
+
+    // Drops the database's metrics regardless of remaining users (e.g. its pool was closed)
+    public static void unregister(String database) {
+        FbSqlMetrics metrics = _registry.remove(database);
+        if (metrics!=null) {
+            metrics.unregister();
+        }
+    }//unregister
+
+    protected ObjectName getObjectName() throws MalformedObjectNameException {
+        return new ObjectName(JMX_DOMAIN + ":type=FbSqlMetrics,name=" + ObjectName.quote(_database));
+    }//getObjectName
+
+    protected void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            // Metrics keep working without JMX (e.g. restricted security managers)
+            appLogger.warn("FbSqlMetrics JMX registration failed: " + e.getMessage());
+        }
+    }//register
+
+    protected void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            appLogger.warn("FbSqlMetrics JMX unregistration failed: " + e.getMessage());
+        }
+    }//unregister
+
+    public void record(Operation operation, long nanos, long rows) {
+        _latencies[operation.ordinal()].record(nanos);
+        if (rows>0) {
+            if (operation._reads) {
+                _rowsRead.add(rows);
+            } else if (operation._writes) {
+                _rowsWritten.add(rows);
+            }
+        }
+    }//record
+
+    public void recordError(Operation operation, FbSqlException error) {
+        _operationErrors[operation.ordinal()].increment();
+        String sqlState = error==null || error.getSqlState()==null ? "NONE" : error.getSqlState();
+        LongAdder counter = _errors.get(sqlState);
+        if (counter==null) {
+            counter = _errors.computeIfAbsent(sqlState, k -> new LongAdder());
+        }
+        counter.increment();
+    }//recordError
+
+    public void addRowsRead(long rows) { _rowsRead.add(rows); }
+    public void transactionOpened() { _openTransactions.increment(); }
+    public void transactionClosed() { _openTransactions.decrement(); }
+    public void recordRetry() { _retries.increment(); }
+    public void recordRetryExhausted() { _retriesExhausted.increment(); }
+
+    protected static double toMicros(double nanos) {
+        return nanos / 1000.0;
+    }//toMicros
+
+    protected Map<String, Double> collectLatencies(double percentile) {
+        TreeMap<String, Double> result = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            FbSqlLatencyHistogram latency = getLatency(operation);
+            if (latency.getCount()>0) {
+                result.put(operation._name, toMicros(percentile<0 ? latency.getMean() : latency.getPercentile(percentile)));
+            }
+        }
+        return result;
+    }//collectLatencies
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation._name, getLatency(operation).getCount());
+        }
+        return result;
+    }//getOperationCounts
+
+    @Override
+    public Map<String, Double> getLatencyMeanMicros() { return collectLatencies(-1); }
+    @Override
+    public Map<String, Double> getLatencyP50Micros() { return collectLatencies(50); }
+    @Override
+    public Map<String, Double> getLatencyP99Micros() { return collectLatencies(99); }
+    @Override
+    public Map<String, Double> getLatencyP999Micros() { return collectLatencies(99.9); }
+    @Override
+    public Map<String, Double> getLatencyMaxMicros() { return collectLatencies(100); }
+
+    @Override
+    public Map<String, Long> getErrorsBySqlState() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> kv : _errors.entrySet()) {
+            result.put(kv.getKey(), kv.getValue().sum());
+        }
+        return result;
+    }//getErrorsBySqlState
+
+    public JsonObject getSnapshot() {
+        double elapsed = Math.max(1, System.nanoTime() - _startTime) / 1000000000.0;
+        JsonObject snapshot = new JsonObject();
+        snapshot.addProperty("database", _database);
+        snapshot.addProperty("elapsedSeconds", elapsed);
+        JsonObject operations = new JsonObject();
+        for (Operation operation : Operation.values()) {
+            FbSqlLatencyHistogram latency = getLatency(operation);
+            JsonObject item = new JsonObject();
+            item.addProperty("count", latency.getCount());
+            item.addProperty("errors", _operationErrors[operation.ordinal()].sum());
+            item.addProperty("perSecond", latency.getCount() / elapsed);
+            item.addProperty("meanMicros", toMicros(latency.getMean()));
+            item.addProperty("p50Micros", toMicros(latency.getPercentile(50)));
+            item.addProperty("p90Micros", toMicros(latency.getPercentile(90)));
+            item.addProperty("p99Micros", toMicros(latency.getPercentile(99)));
+            item.addProperty("p999Micros", toMicros(latency.getPercentile(99.9)));
+            item.addProperty("maxMicros", toMicros(latency.getMax()));
+            operations.add(operation._name, item);
+        }
+        snapshot.add("operations", operations);
+        snapshot.addProperty("rowsRead", getRowsRead());
+        snapshot.addProperty("rowsWritten", getRowsWritten());
+        snapshot.addProperty("openTransactions", getOpenTransactions());
+        snapshot.addProperty("retries", getRetries());
+        snapshot.addProperty("retriesExhausted", getRetriesExhausted());
+        JsonObject errors = new JsonObject();
+        for (Map.Entry<String, Long> kv : getErrorsBySqlState().entrySet()) {
+            errors.addProperty(kv.getKey(), kv.getValue());
+        }
+        snapshot.add("errors", errors);
+        return snapshot;
+    }//getSnapshot
+
+    @Override
+    public String getSnapshotJson() {
+        return getSnapshot().toString();
+    }//getSnapshotJson
+
+    // Open transactions is a gauge and is not reset
+    @Override
+    public void reset() {
+        for (int i=0; i<_latencies.length; i++) {
+            _latencies[i].reset();
+            _operationErrors[i].reset();
+        }
+        _errors.clear();
+        _rowsRead.reset();
+        _rowsWritten.reset();
+        _retries.reset();
+        _retriesExhausted.reset();
+        _startTime = System.nanoTime();
+    }//reset
+}//FbSqlMetrics
@@ -0,0 +1,22 @@
+package com.adeotek.java.firebirdsql;
+
+import java.util.Map;
+
+// JMX view of FbSqlMetrics; latencies are in microseconds, keyed by operation name
+public interface FbSqlMetricsMXBean {
+    String getDatabase();
+    Map<String, Long> getOperationCounts();
+    Map<String, Double> getLatencyMeanMicros();
+    Map<String, Double> getLatencyP50Micros();
+    Map<String, Double> getLatencyP99Micros();
+    Map<String, Double> getLatencyP999Micros();
+    Map<String, Double> getLatencyMaxMicros();
+    Map<String, Long> getErrorsBySqlState();
+    long getRowsRead();
+    long getRowsWritten();
+    long getOpenTransactions();
+    long getRetries();
+    long getRetriesExhausted();
+    String getSnapshotJson();
+    void reset();
+}//FbSqlMetricsMXBean
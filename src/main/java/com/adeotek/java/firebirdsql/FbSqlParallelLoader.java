@@ -0,0 +1,410 @@
+package com.adeotek.java.firebirdsql;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.firebirdsql.ds.FBXADataSource;
+
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Splits a bulk insert across N worker transactions, each on its own attachment and thread
+public class FbSqlParallelLoader {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlParallelLoader.class);
+
+    public enum Mode {
+        // Every worker runs a branch of one XA transaction: all branches are prepared, then committed (two-phase commit)
+        ALL_OR_NOTHING,
+        // Every worker commits its own slice independently
+        BEST_EFFORT
+    }//Mode
+
+    public static class Result {
+        protected final long _rows;
+        protected final long _durationNanos;
+        protected final int _workers;
+        protected final List<FbSqlException> _errors;
+
+        public long getRows() { return _rows; }
+        public long getDurationNanos() { return _durationNanos; }
+        public int getWorkers() { return _workers; }
+        public List<FbSqlException> getErrors() { return _errors; }
+        public boolean isSuccessful() { return _errors.isEmpty(); }
+        public double getRowsPerSecond() { return _durationNanos<=0 ? 0 : _rows * 1000000000.0 / _durationNanos; }
+
+        protected Result(long rows, long durationNanos, int workers, List<FbSqlException> errors) {
+            _rows = rows;
+            _durationNanos = durationNanos;
+            _workers = workers;
+            _errors = Collections.unmodifiableList(errors);
+        }//Result
+    }//Result
+
+    // One worker's XA branch: its own attachment, resource and branch id
+    protected static class Branch {
+        protected final XAConnection _connection;
+        protected final XAResource _resource;
+        protected final Xid _xid;
+        protected boolean _ended = false;
+
+        protected Branch(XAConnection connection, XAResource resource, Xid xid) {
+            _connection = connection;
+            _resource = resource;
+            _xid = xid;
+        }//Branch
+
+        protected void end(boolean success) throws FbSqlException {
+            if (_ended) {
+                return;
+            }
+            _ended = true;
+            try {
+                _resource.end(_xid, success ? XAResource.TMSUCCESS : XAResource.TMFAIL);
+            } catch (XAException xe) {
+                throw toFbSqlException(xe);
+            }
+        }//end
+
+        // false when the branch did not write anything (read-only vote, already completed by the prepare)
+        protected boolean prepare() throws FbSqlException {
+            try {
+                return _resource.prepare(_xid)!=XAResource.XA_RDONLY;
+            } catch (XAException xe) {
+                throw toFbSqlException(xe);
+            }
+        }//prepare
+
+        protected void commit(boolean onePhase) throws FbSqlException {
+            try {
+                _resource.commit(_xid, onePhase);
+            } catch (XAException xe) {
+                throw toFbSqlException(xe);
+            }
+        }//commit
+
+        protected void rollback() throws FbSqlException {
+            try {
+                end(false);
+            } catch (FbSqlException fe) {
+                appLogger.debug("FbSqlParallelLoader: " + fe.getMessage());
+            }
+            try {
+                _resource.rollback(_xid);
+            } catch (XAException xe) {
+                // Unknown branch: the server already rolled it back
+                if (xe.errorCode!=XAException.XAER_NOTA) {
+                    throw toFbSqlException(xe);
+                }
+            }
+        }//rollback
+
+        protected void close() {
+            closeXAConnection(_connection);
+        }//close
+    }//Branch
+
+    protected static class LoaderXid implements Xid {
+        // "FBSQ"
+        protected static final int FORMAT_ID = 0x46425351;
+        protected final byte[] _globalId;
+        protected final byte[] _branchId;
+
+        protected LoaderXid(byte[] globalId, int branch) {
+            _globalId = globalId;
+            _branchId = ByteBuffer.allocate(4).putInt(branch).array();
+        }//LoaderXid
+
+        @Override
+        public int getFormatId() { return FORMAT_ID; }
+        @Override
+        public byte[] getGlobalTransactionId() { return _globalId.clone(); }
+        @Override
+        public byte[] getBranchQualifier() { return _branchId.clone(); }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Xid)) {
+                return false;
+            }
+            Xid xid = (Xid) other;
+            return xid.getFormatId()==FORMAT_ID && Arrays.equals(_globalId, xid.getGlobalTransactionId())
+                    && Arrays.equals(_branchId, xid.getBranchQualifier());
+        }//equals
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_globalId) + Arrays.hashCode(_branchId);
+        }//hashCode
+    }//LoaderXid
+
+    protected final FbSqlConnection _source;
+    protected final int _workers;
+    protected final Mode _mode;
+    protected int _batchSize = 1000;
+    protected int _commitEvery = 0;
+    protected FbSqlProgressListener _listener = null;
+    protected FBXADataSource _xaDataSource = null;
+
+    public void setBatchSize(int batchSize) { _batchSize = batchSize; }
+    // Only used in BEST_EFFORT mode
+    public void setCommitEvery(int commitEvery) { _commitEvery = commitEvery; }
+    // Called from worker threads with aggregated totals, must be thread-safe
+    public void setProgressListener(FbSqlProgressListener listener) { _listener = listener; }
+
+    public FbSqlParallelLoader(FbSqlConnection source, int workers, Mode mode) {
+        _source = source;
+        _workers = Math.max(1, workers);
+        _mode = mode==null ? Mode.ALL_OR_NOTHING : mode;
+    }//FbSqlParallelLoader
+
+    public Result load(String tableName, String[] fields, List<Object[]> rows) throws FbSqlException {
+        if (rows==null || rows.size()==0) {
+            throw new FbSqlException("Invalid query parameters");
+        }
+        int workers = Math.min(_workers, rows.size());
+        int sliceSize = (rows.size() + workers - 1) / workers;
+        // Rounding the slice size up can leave trailing workers without rows (5 rows / 4 workers = 3 slices of 2)
+        workers = (rows.size() + sliceSize - 1) / sliceSize;
+        long startTime = System.nanoTime();
+        AtomicLong totalRows = new AtomicLong();
+        AtomicLong totalBatches = new AtomicLong();
+        boolean distributed = _mode==Mode.ALL_OR_NOTHING;
+        byte[] globalId = distributed ? newGlobalId() : null;
+        List<FbSqlConnection> connections = new ArrayList<>(workers);
+        List<String> transactions = new ArrayList<>(workers);
+        List<Future<Long>> futures = new ArrayList<>(workers);
+        List<FbSqlException> errors = new ArrayList<>();
+        // ALL_OR_NOTHING only; written by the worker threads, read after Future.get()
+        Branch[] branches = new Branch[workers];
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int w=0; w<workers; w++) {
+                FbSqlConnection conn = new FbSqlConnection(_source);
+                String tran = "FbSqlParallelLoader-" + w;
+                int worker = w;
+                List<Object[]> slice = rows.subList(w * sliceSize, Math.min(rows.size(), (w + 1) * sliceSize));
+                connections.add(conn);
+                transactions.add(tran);
+                futures.add(executor.submit(() -> {
+                    boolean success = false;
+                    try {
+                        if (distributed) {
+                            branches[worker] = beginBranch(conn, tran, new LoaderXid(globalId, worker));
+                        } else {
+                            conn.beginTransaction(tran, true);
+                        }
+                        long[] last = new long[2];
+                        long inserted = conn.executeBulkInsert(tableName, fields, slice.iterator(), _batchSize,
+                                distributed ? 0 : _commitEvery,
+                                (r, b, rate) -> {
+                                    long allRows = totalRows.addAndGet(r - last[0]);
+                                    long allBatches = totalBatches.addAndGet(b - last[1]);
+                                    last[0] = r;
+                                    last[1] = b;
+                                    if (_listener!=null) {
+                                        _listener.onProgress(allRows, allBatches, getRate(allRows, startTime));
+                                    }
+                                }, tran);
+                        if (distributed) {
+                            branches[worker].end(true);
+                        } else {
+                            finish(conn, tran, true);
+                        }
+                        success = true;
+                        return inserted;
+                    } catch (FbSqlException fe) {
+                        // FbSqlException is not an Exception, so it has to travel wrapped
+                        throw new ExecutionException(fe.getMessage(), fe);
+                    } finally {
+                        if (!success) {
+                            try {
+                                if (distributed) {
+                                    if (branches[worker]!=null) {
+                                        branches[worker].end(false);
+                                    }
+                                } else {
+                                    finish(conn, tran, false);
+                                }
+                            } catch (FbSqlException fe) {
+                                appLogger.warn("FbSqlParallelLoader: " + fe.getMessage());
+                            }
+                        }
+                    }
+                }));
+            }
+            long[] workerRows = new long[workers];
+            for (int w=0; w<workers; w++) {
+                try {
+                    workerRows[w] = futures.get(w).get();
+                } catch (ExecutionException ee) {
+                    errors.add(toFbSqlException(ee));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    errors.add(new FbSqlException("Interrupted while waiting for loader workers", ie));
+                }
+            }
+            if (distributed) {
+                boolean[] committed = completeBranches(branches, errors);
+                for (int w=0; w<workers; w++) {
+                    if (!committed[w]) {
+                        workerRows[w] = 0;
+                    }
+                }
+            }
+            long result = 0;
+            for (long r : workerRows) {
+                result += r;
+            }
+            Result loadResult = new Result(result, System.nanoTime() - startTime, workers, errors);
+            appLogger.debug("FbSqlParallelLoader: " + loadResult.getRows() + " rows, " + workers + " workers, "
+                    + loadResult.getRowsPerSecond() + " rows/sec");
+            return loadResult;
+        } finally {
+            executor.shutdownNow();
+            for (FbSqlConnection conn : connections) {
+                try {
+                    conn.destroy();
+                } catch (FbSqlException fe) {
+                    appLogger.warn("FbSqlParallelLoader: " + fe.getMessage());
+                }
+            }
+            for (Branch branch : branches) {
+                if (branch!=null) {
+                    branch.close();
+                }
+            }
+        }
+    }//load
+
+    // Two-phase commit: every branch is prepared first and only then committed; any failure before that rolls back all of them.
+    // A branch whose commit fails after a successful prepare stays in limbo on the server until it is recovered (XAResource.recover, gfix).
+    protected boolean[] completeBranches(Branch[] branches, List<FbSqlException> errors) {
+        boolean[] committed = new boolean[branches.length];
+        boolean commit = errors.isEmpty();
+        boolean[] prepared = new boolean[branches.length];
+        if (commit && branches.length>1) {
+            for (int w=0; w<branches.length && commit; w++) {
+                try {
+                    prepared[w] = branches[w].prepare();
+                    // Read-only branches have nothing to commit
+                    committed[w] = !prepared[w];
+                } catch (FbSqlException fe) {
+                    errors.add(new FbSqlException("Worker " + w + " failed to prepare: " + fe.getMessage(), fe));
+                    commit = false;
+                }
+            }
+        }
+        if (!commit) {
+            for (int w=0; w<branches.length; w++) {
+                committed[w] = false;
+                if (branches[w]==null) {
+                    continue;
+                }
+                try {
+                    branches[w].rollback();
+                } catch (FbSqlException fe) {
+                    errors.add(new FbSqlException("Worker " + w + " failed to roll back: " + fe.getMessage(), fe));
+                }
+            }
+            return committed;
+        }
+        // The decision is commit: every prepared branch must be committed, a failure does not stop the others
+        for (int w=0; w<branches.length; w++) {
+            if (branches.length>1 && !prepared[w]) {
+                continue;
+            }
+            try {
+                branches[w].commit(branches.length==1);
+                committed[w] = true;
+            } catch (FbSqlException fe) {
+                errors.add(new FbSqlException("Worker " + w + " was prepared but failed to commit, its transaction is in limbo: "
+                        + fe.getMessage(), fe));
+            }
+        }
+        return committed;
+    }//completeBranches
+
+    protected Branch beginBranch(FbSqlConnection conn, String transaction, Xid xid) throws FbSqlException {
+        XAConnection xaConnection = openXAConnection();
+        try {
+            Branch branch = new Branch(xaConnection, xaConnection.getXAResource(), xid);
+            conn.beginXATransaction(transaction, xaConnection.getConnection(), branch._resource, xid);
+            return branch;
+        } catch (SQLException se) {
+            closeXAConnection(xaConnection);
+            throw new FbSqlException(se);
+        } catch (FbSqlException fe) {
+            closeXAConnection(xaConnection);
+            throw fe;
+        }
+    }//beginBranch
+
+    protected XAConnection openXAConnection() throws FbSqlException {
+        synchronized (this) {
+            if (_xaDataSource==null) {
+                _xaDataSource = _source.getXADataSource();
+            }
+        }
+        try {
+            return _xaDataSource.getXAConnection();
+        } catch (SQLException se) {
+            throw new FbSqlException(se);
+        }
+    }//openXAConnection
+
+    protected static void closeXAConnection(XAConnection xaConnection) {
+        try {
+            xaConnection.close();
+        } catch (SQLException se) {
+            appLogger.warn("FbSqlParallelLoader: " + se.getMessage());
+        }
+    }//closeXAConnection
+
+    protected static byte[] newGlobalId() {
+        UUID uuid = UUID.randomUUID();
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }//newGlobalId
+
+    protected void finish(FbSqlConnection conn, String transaction, boolean commit) throws FbSqlException {
+        if (conn._transactions==null || conn._transactions.get(transaction)==null) {
+            // Already rolled back and released by a failing execute* call
+            return;
+        }
+        if (commit) {
+            conn.commitTransaction(transaction);
+        } else {
+            conn.rollbackTransaction(transaction);
+        }
+    }//finish
+
+    protected static FbSqlException toFbSqlException(XAException xe) {
+        return new FbSqlException("XA error code " + xe.errorCode + (xe.getMessage()==null ? "" : ": " + xe.getMessage()), xe);
+    }//toFbSqlException
+
+    protected static FbSqlException toFbSqlException(Throwable error) {
+        for (Throwable cause = error; cause!=null; cause = cause.getCause()) {
+            if (cause instanceof FbSqlException) {
+                return (FbSqlException) cause;
+            }
+        }
+        return new FbSqlException(error.getCause()!=null ? error.getCause() : error);
+    }//toFbSqlException
+
+    protected static double getRate(long rows, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed<=0 ? 0 : rows * 1000000000.0 / elapsed;
+    }//getRate
+}//FbSqlParallelLoader
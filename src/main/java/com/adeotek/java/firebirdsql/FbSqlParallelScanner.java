@@ -0,0 +1,259 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Splits a SELECT into key ranges, each scanned on its own attachment in a read-only snapshot transaction
+public class FbSqlParallelScanner {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlParallelScanner.class);
+    protected static final List<JsonObject> END = Collections.emptyList();
+    protected static final long POLL_MILLIS = 100;
+
+    public interface RowHandler {
+        // Always called on the thread that called scan(), never concurrently
+        void onRow(JsonObject row) throws FbSqlException;
+    }//RowHandler
+
+    public static class Result {
+        protected final long _rows;
+        protected final long _durationNanos;
+        protected final int _partitions;
+
+        public long getRows() { return _rows; }
+        public long getDurationNanos() { return _durationNanos; }
+        public int getPartitions() { return _partitions; }
+        public double getRowsPerSecond() { return _durationNanos<=0 ? 0 : _rows * 1000000000.0 / _durationNanos; }
+
+        protected Result(long rows, long durationNanos, int partitions) {
+            _rows = rows;
+            _durationNanos = durationNanos;
+            _partitions = partitions;
+        }//Result
+    }//Result
+
+    // Every partition gets its own snapshot, so partitions are not consistent with each other under concurrent writes
+    protected final FbSqlConnection _source;
+    protected final int _workers;
+    protected int _fetchSize = 1000;
+    protected int _chunkSize = 256;
+    protected int _queueChunks = 16;
+
+    public void setFetchSize(int fetchSize) { _fetchSize = fetchSize; }
+    // Rows are handed over in chunks; at most queueChunks chunks are buffered per partition
+    public void setBuffering(int chunkSize, int queueChunks) {
+        _chunkSize = Math.max(1, chunkSize);
+        _queueChunks = Math.max(1, queueChunks);
+    }//setBuffering
+
+    public FbSqlParallelScanner(FbSqlConnection source, int workers) {
+        _source = source;
+        _workers = Math.max(1, workers);
+    }//FbSqlParallelScanner
+
+    // The key column must be a NOT NULL integer column of the query result (quoted if case sensitive)
+    public static String preparePartitionQuery(String query, String keyColumn, boolean lowerBound, boolean upperBound, boolean ordered) {
+        String key = "FBSQL_SCAN." + keyColumn;
+        StringBuilder result = new StringBuilder("SELECT * FROM (").append(query).append(") FBSQL_SCAN");
+        if (lowerBound) {
+            result.append(" WHERE ").append(key).append(" >= ?");
+        }
+        if (upperBound) {
+            result.append(lowerBound ? " AND " : " WHERE ").append(key).append(" < ?");
+        }
+        if (ordered) {
+            result.append(" ORDER BY ").append(key);
+        }
+        return result.toString();
+    }//preparePartitionQuery
+
+    public long[] getKeyRange(String query, LinkedHashMap<String, Object> parameters, String keyColumn) throws FbSqlException {
+        FbSqlConnection conn = new FbSqlConnection(_source);
+        String tran = "FbSqlParallelScanner-range";
+        try {
+            conn.beginTransaction(tran, true, null, FbSqlTransactionProfile.SNAPSHOT_READ_ONLY);
+            String key = "FBSQL_SCAN." + keyColumn;
+            JsonArray result = conn.executeSelectQuery("SELECT MIN(" + key + "), MAX(" + key + ") FROM (" + query + ") FBSQL_SCAN", parameters, tran);
+            conn.commitTransaction(tran);
+            if (result==null || result.size()==0) {
+                return null;
+            }
+            // Read by position, the driver reports aggregate column names inconsistently
+            ArrayList<JsonElement> values = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> entry : result.get(0).getAsJsonObject().entrySet()) {
+                values.add(entry.getValue());
+            }
+            if (values.size()<2 || values.get(0).isJsonNull() || values.get(1).isJsonNull()) {
+                return null;
+            }
+            return new long[] { values.get(0).getAsLong(), values.get(1).getAsLong() };
+        } finally {
+            conn.destroy();
+        }
+    }//getKeyRange
+
+    public Result scan(String query, LinkedHashMap<String, Object> parameters, String keyColumn, int partitions, boolean ordered, RowHandler handler) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query) || Helpers.isStringEmptyOrNull(keyColumn)) {
+            throw new FbSqlException("Invalid query");
+        }
+        long[] range = getKeyRange(query, parameters, keyColumn);
+        if (range==null) {
+            return new Result(0, 0, 0);
+        }
+        return scan(query, parameters, keyColumn, range[0], range[1], partitions, ordered, handler);
+    }//scan
+
+    public Result scan(String query, LinkedHashMap<String, Object> parameters, String keyColumn, long minKey, long maxKey,
+            int partitions, boolean ordered, RowHandler handler) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(query) || Helpers.isStringEmptyOrNull(keyColumn)) {
+            throw new FbSqlException("Invalid query");
+        }
+        if (handler==null || maxKey<minKey) {
+            throw new FbSqlException("Invalid query parameters");
+        }
+        long startTime = System.nanoTime();
+        long[] bounds = getBounds(minKey, maxKey, Math.max(1, partitions));
+        int count = bounds.length - 1;
+        List<BlockingQueue<List<JsonObject>>> queues = new ArrayList<>(count);
+        // Unordered scans share one queue, so the caller takes whichever chunk is ready first
+        BlockingQueue<List<JsonObject>> shared = ordered ? null : new ArrayBlockingQueue<>(_queueChunks * Math.min(count, _workers));
+        for (int p=0; p<count; p++) {
+            queues.add(ordered ? new ArrayBlockingQueue<>(_queueChunks) : shared);
+        }
+        AtomicReference<FbSqlException> failure = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(count, _workers));
+        long rows = 0;
+        try {
+            for (int p=0; p<count; p++) {
+                int partition = p;
+                executor.submit(() -> scanPartition(query, parameters, keyColumn, partition, bounds, ordered, queues.get(partition), failure, cancelled));
+            }
+            int finished = 0;
+            int current = 0;
+            while (finished<count) {
+                List<JsonObject> chunk = queues.get(ordered ? current : 0).poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (failure.get()!=null) {
+                    throw failure.get();
+                }
+                if (chunk==null) {
+                    continue;
+                }
+                if (chunk==END) {
+                    finished++;
+                    current++;
+                    continue;
+                }
+                for (JsonObject row : chunk) {
+                    handler.onRow(row);
+                }
+                rows += chunk.size();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new FbSqlException("Interrupted while waiting for scan workers", ie);
+        } finally {
+            cancelled.set(true);
+            // Queued partitions must not start, running ones are interrupted
+            executor.shutdownNow();
+        }
+        Result result = new Result(rows, System.nanoTime() - startTime, count);
+        appLogger.debug("FbSqlParallelScanner: " + rows + " rows, " + count + " partitions, " + result.getRowsPerSecond() + " rows/sec");
+        return result;
+    }//scan
+
+    // Collects all rows; ordered scans return them sorted by the key column
+    public JsonArray scanToArray(String query, LinkedHashMap<String, Object> parameters, String keyColumn, int partitions, boolean ordered) throws FbSqlException {
+        JsonArray result = new JsonArray();
+        scan(query, parameters, keyColumn, partitions, ordered, result::add);
+        return result;
+    }//scanToArray
+
+    protected static long[] getBounds(long minKey, long maxKey, int partitions) {
+        // Computed on doubles to avoid overflowing on very wide key ranges
+        double width = ((double) maxKey - (double) minKey + 1) / partitions;
+        TreeSet<Long> bounds = new TreeSet<>();
+        bounds.add(minKey);
+        for (int p=1; p<partitions; p++) {
+            long bound = (long) Math.floor(minKey + width * p);
+            if (bound>minKey && bound<=maxKey) {
+                bounds.add(bound);
+            }
+        }
+        long[] result = new long[bounds.size() + 1];
+        int i = 0;
+        for (long bound : bounds) {
+            result[i++] = bound;
+        }
+        // The last partition is open ended
+        result[i] = Long.MAX_VALUE;
+        return result;
+    }//getBounds
+
+    protected void scanPartition(String query, LinkedHashMap<String, Object> parameters, String keyColumn, int partition, long[] bounds,
+            boolean ordered, BlockingQueue<List<JsonObject>> queue, AtomicReference<FbSqlException> failure, AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            return;
+        }
+        FbSqlConnection conn = new FbSqlConnection(_source);
+        String tran = "FbSqlParallelScanner-" + partition;
+        boolean first = partition==0;
+        boolean last = partition==bounds.length-2;
+        LinkedHashMap<String, Object> partitionParameters = parameters==null ? new LinkedHashMap<>() : new LinkedHashMap<>(parameters);
+        if (!first) {
+            partitionParameters.put("fbsql_scan_from", bounds[partition]);
+        }
+        if (!last) {
+            partitionParameters.put("fbsql_scan_to", bounds[partition+1]);
+        }
+        try {
+            conn.beginTransaction(tran, true, null, FbSqlTransactionProfile.SNAPSHOT_READ_ONLY);
+            try (FbSqlCursor cursor = conn.openSelectCursor(preparePartitionQuery(query, keyColumn, !first, !last, ordered),
+                    partitionParameters, tran, _fetchSize)) {
+                ArrayList<JsonObject> chunk = new ArrayList<>(_chunkSize);
+                JsonObject row;
+                while ((row = cursor.fetch())!=null) {
+                    chunk.add(row);
+                    if (chunk.size()>=_chunkSize) {
+                        if (!offer(queue, chunk, cancelled)) {
+                            return;
+                        }
+                        chunk = new ArrayList<>(_chunkSize);
+                    }
+                }
+                if (chunk.size()>0 && !offer(queue, chunk, cancelled)) {
+                    return;
+                }
+            }
+            offer(queue, END, cancelled);
+        } catch (FbSqlException fe) {
+            failure.compareAndSet(null, fe);
+        } catch (InterruptedException ie) {
+            failure.compareAndSet(null, new FbSqlException("Interrupted while scanning partition " + partition, ie));
+        } catch (RuntimeException re) {
+            failure.compareAndSet(null, new FbSqlException(re));
+        } finally {
+            try {
+                conn.destroy();
+            } catch (FbSqlException fe) {
+                appLogger.warn("FbSqlParallelScanner: " + fe.getMessage());
+            }
+        }
+    }//scanPartition
+
+    protected static boolean offer(BlockingQueue<List<JsonObject>> queue, List<JsonObject> chunk, AtomicBoolean cancelled) throws InterruptedException {
+        while (!queue.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (cancelled.get()) {
+                return false;
+            }
+        }
+        return true;
+    }//offer
+}//FbSqlParallelScanner
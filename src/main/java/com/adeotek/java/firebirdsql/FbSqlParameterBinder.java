@@ -0,0 +1,127 @@
+package com.adeotek.java.firebirdsql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Parameter setters keyed on the value class; resolution is cached per class through ClassValue
+public final class FbSqlParameterBinder {
+    public interface Binder {
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException;
+    }//Binder
+
+    // Strings longer than this are sent as blobs
+    public static final int STRING_BLOB_THRESHOLD = 4000;
+
+    // Insertion order matters for assignable (non exact) matches: first match wins
+    protected static final LinkedHashMap<Class<?>, Binder> _binders = new LinkedHashMap<>();
+    protected static volatile ClassValue<Binder> _resolved = createResolver();
+
+    static {
+        _binders.put(Integer.class, (st, i, v) -> st.setInt(i, (Integer) v));
+        _binders.put(Long.class, (st, i, v) -> st.setLong(i, (Long) v));
+        _binders.put(Short.class, (st, i, v) -> st.setShort(i, (Short) v));
+        _binders.put(Byte.class, (st, i, v) -> st.setShort(i, (Byte) v));
+        _binders.put(Boolean.class, (st, i, v) -> st.setBoolean(i, (Boolean) v));
+        _binders.put(Double.class, (st, i, v) -> st.setDouble(i, (Double) v));
+        _binders.put(Float.class, (st, i, v) -> st.setFloat(i, (Float) v));
+        _binders.put(BigDecimal.class, (st, i, v) -> st.setBigDecimal(i, (BigDecimal) v));
+        _binders.put(String.class, (st, i, v) -> {
+            String val = (String) v;
+            if (val.length()>STRING_BLOB_THRESHOLD) {
+                // Streamed and encoded by the driver, no intermediate byte[] copy
+                st.setCharacterStream(i, new StringReader(val), val.length());
+            } else {
+                st.setString(i, val);
+            }
+        });
+        _binders.put(Character.class, (st, i, v) -> st.setString(i, v.toString()));
+        _binders.put(byte[].class, (st, i, v) -> st.setBytes(i, (byte[]) v));
+        // Registered ahead of java.util.Date, which they extend: keeps nanos and sends DATE/TIME values as such
+        _binders.put(Timestamp.class, (st, i, v) -> st.setTimestamp(i, (Timestamp) v));
+        _binders.put(Date.class, (st, i, v) -> st.setDate(i, (Date) v));
+        _binders.put(Time.class, (st, i, v) -> st.setTime(i, (Time) v));
+        _binders.put(java.util.Date.class, (st, i, v) -> st.setTimestamp(i, new Timestamp(((java.util.Date) v).getTime())));
+        _binders.put(java.time.LocalDateTime.class, (st, i, v) -> st.setTimestamp(i, Timestamp.valueOf((java.time.LocalDateTime) v)));
+        _binders.put(java.time.LocalDate.class, (st, i, v) -> st.setDate(i, Date.valueOf((java.time.LocalDate) v)));
+        _binders.put(java.time.LocalTime.class, (st, i, v) -> st.setTime(i, Time.valueOf((java.time.LocalTime) v)));
+        _binders.put(java.time.Instant.class, (st, i, v) -> st.setTimestamp(i, Timestamp.from((java.time.Instant) v)));
+        _binders.put(java.time.OffsetDateTime.class, (st, i, v) -> st.setTimestamp(i, Timestamp.from(((java.time.OffsetDateTime) v).toInstant())));
+        _binders.put(java.time.ZonedDateTime.class, (st, i, v) -> st.setTimestamp(i, Timestamp.from(((java.time.ZonedDateTime) v).toInstant())));
+        // Firebird stores UUIDs as CHAR(16) CHARACTER SET OCTETS
+        _binders.put(UUID.class, (st, i, v) -> {
+            UUID uuid = (UUID) v;
+            st.setBytes(i, ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array());
+        });
+        _binders.put(InputStream.class, (st, i, v) -> st.setBinaryStream(i, (InputStream) v));
+        _binders.put(Reader.class, (st, i, v) -> st.setCharacterStream(i, (Reader) v));
+        _binders.put(Blob.class, (st, i, v) -> st.setBlob(i, (Blob) v));
+        _binders.put(Clob.class, (st, i, v) -> st.setClob(i, (Clob) v));
+        _binders.put(FbSqlBlob.class, (st, i, v) -> st.setBlob(i, ((FbSqlBlob) v).getBlob()));
+        _binders.put(Path.class, (st, i, v) -> {
+            try {
+                st.setBinaryStream(i, FbSqlBlob.openFile((Path) v), Files.size((Path) v));
+            } catch (IOException ioe) {
+                throw new SQLException(ioe.getMessage(), ioe);
+            }
+        });
+    }
+
+    private FbSqlParameterBinder() {}
+
+    protected static ClassValue<Binder> createResolver() {
+        return new ClassValue<Binder>() {
+            @Override
+            protected Binder computeValue(Class<?> type) {
+                synchronized (_binders) {
+                    Binder binder = _binders.get(type);
+                    if (binder!=null) {
+                        return binder;
+                    }
+                    for (Map.Entry<Class<?>, Binder> kv : _binders.entrySet()) {
+                        if (kv.getKey().isAssignableFrom(type)) {
+                            return kv.getValue();
+                        }
+                    }
+                    return null;
+                }
+            }
+        };
+    }//createResolver
+
+    public static void register(Class<?> type, Binder binder) {
+        if (type==null || binder==null) {
+            throw new IllegalArgumentException("Invalid binder registration");
+        }
+        synchronized (_binders) {
+            _binders.put(type, binder);
+            // Drop every cached resolution, a new binder may shadow an assignable match
+            _resolved = createResolver();
+        }
+    }//register
+
+    public static Binder getBinder(Class<?> type) {
+        return _resolved.get(type);
+    }//getBinder
+
+    public static void bind(PreparedStatement statement, int index, String name, Object value) throws SQLException, FbSqlException {
+        if (value==null) {
+            statement.setNull(index, Types.NULL);
+            return;
+        }
+        Binder binder = _resolved.get(value.getClass());
+        if (binder==null) {
+            throw new FbSqlException("Invalid parameter type: [" + name + "] of type: " + value.getClass().getSimpleName());
+        }
+        binder.bind(statement, index, value);
+    }//bind
+}//FbSqlParameterBinder
@@ -0,0 +1,221 @@
+package com.adeotek.java.firebirdsql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stored procedure signatures read once per database from RDB$PROCEDURE_PARAMETERS
+public class FbSqlProcedureMetadata {
+    protected static final ConcurrentHashMap<String, FbSqlProcedureMetadata> _registry = new ConcurrentHashMap<>();
+    protected static final String SIGNATURE_QUERY = "SELECT P.RDB$PROCEDURE_TYPE, PP.RDB$PARAMETER_NAME, PP.RDB$PARAMETER_TYPE,"
+            + " F.RDB$FIELD_TYPE, F.RDB$FIELD_SUB_TYPE, F.RDB$FIELD_SCALE"
+            + " FROM RDB$PROCEDURES P"
+            + " LEFT JOIN RDB$PROCEDURE_PARAMETERS PP ON PP.RDB$PROCEDURE_NAME = P.RDB$PROCEDURE_NAME"
+            + " LEFT JOIN RDB$FIELDS F ON F.RDB$FIELD_NAME = PP.RDB$FIELD_SOURCE"
+            + " WHERE P.RDB$PROCEDURE_NAME = ?"
+            + " ORDER BY PP.RDB$PARAMETER_TYPE, PP.RDB$PARAMETER_NUMBER";
+    // Firebird 3+: packaged procedures share RDB$PROCEDURES/RDB$PROCEDURE_PARAMETERS and may reuse a standalone name
+    protected static final String SIGNATURE_QUERY_FB3 = "SELECT P.RDB$PROCEDURE_TYPE, PP.RDB$PARAMETER_NAME, PP.RDB$PARAMETER_TYPE,"
+            + " F.RDB$FIELD_TYPE, F.RDB$FIELD_SUB_TYPE, F.RDB$FIELD_SCALE"
+            + " FROM RDB$PROCEDURES P"
+            + " LEFT JOIN RDB$PROCEDURE_PARAMETERS PP ON PP.RDB$PROCEDURE_NAME = P.RDB$PROCEDURE_NAME AND PP.RDB$PACKAGE_NAME IS NULL"
+            + " LEFT JOIN RDB$FIELDS F ON F.RDB$FIELD_NAME = PP.RDB$FIELD_SOURCE"
+            + " WHERE P.RDB$PROCEDURE_NAME = ? AND P.RDB$PACKAGE_NAME IS NULL"
+            + " ORDER BY PP.RDB$PARAMETER_TYPE, PP.RDB$PARAMETER_NUMBER";
+    // load() result for procedures that are not found; not cached, as the procedure may be created later
+    protected static final Signature UNKNOWN = new Signature("", false, Collections.emptyList(), Collections.emptyList());
+
+    public static class Parameter {
+        protected final String _name;
+        protected final int _sqlType;
+
+        public String getName() { return _name; }
+        // java.sql.Types value
+        public int getSqlType() { return _sqlType; }
+
+        protected Parameter(String name, int sqlType) {
+            _name = name;
+            _sqlType = sqlType;
+        }//Parameter
+    }//Parameter
+
+    public static class Signature {
+        protected final String _procedure;
+        protected final boolean _selectable;
+        protected final List<Parameter> _inputs;
+        protected final List<Parameter> _outputs;
+        protected final HashMap<String, Integer> _inputPositions = new HashMap<>();
+
+        public String getProcedure() { return _procedure; }
+        public boolean isSelectable() { return _selectable; }
+        public List<Parameter> getInputs() { return _inputs; }
+        public List<Parameter> getOutputs() { return _outputs; }
+
+        protected Signature(String procedure, boolean selectable, List<Parameter> inputs, List<Parameter> outputs) {
+            _procedure = procedure;
+            _selectable = selectable;
+            _inputs = Collections.unmodifiableList(inputs);
+            _outputs = Collections.unmodifiableList(outputs);
+            for (int i=0; i<inputs.size(); i++) {
+                _inputPositions.put(inputs.get(i)._name, i);
+            }
+        }//Signature
+
+        // 0-based input position, -1 if there is no such input parameter
+        public int getInputPosition(String name) {
+            Integer result = name==null ? null : _inputPositions.get(normalizeName(name));
+            return result==null ? -1 : result;
+        }//getInputPosition
+
+        // Arguments keyed by parameter name are reordered to match the signature; missing ones in between are passed as null
+        // and missing trailing ones are left out (so their declared defaults apply). Unless all keys are names, binding stays positional.
+        public LinkedHashMap<String, Object> bindByName(LinkedHashMap<String, Object> parameters) {
+            if (parameters==null || parameters.isEmpty() || _inputs.isEmpty()) {
+                return parameters;
+            }
+            Object[] values = new Object[_inputs.size()];
+            boolean[] bound = new boolean[_inputs.size()];
+            int last = -1;
+            int named = 0;
+            for (Map.Entry<String, Object> kv : parameters.entrySet()) {
+                int position = getInputPosition(kv.getKey());
+                if (position<0) {
+                    continue;
+                }
+                values[position] = kv.getValue();
+                bound[position] = true;
+                last = Math.max(last, position);
+                named++;
+            }
+            if (named!=parameters.size()) {
+                // Positional keys that happen to match some names are not named binding
+                return parameters;
+            }
+            LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+            for (int i=0; i<=last; i++) {
+                result.put(_inputs.get(i)._name, bound[i] ? values[i] : null);
+            }
+            return result;
+        }//bindByName
+
+        // {call PROC(?,...)} with placeholders for inputsCount inputs followed by all outputs
+        public String getCallQuery(int inputsCount) {
+            return FbSqlProcedureMetadata.getCallQuery(_procedure, inputsCount + _outputs.size());
+        }//getCallQuery
+    }//Signature
+
+    protected final ConcurrentHashMap<String, Signature> _signatures = new ConcurrentHashMap<>();
+    // Server major version (ODS dependent columns), 0 until first read
+    protected volatile int _serverVersion = 0;
+
+    public int getSize() { return _signatures.size(); }
+
+    public static FbSqlProcedureMetadata getMetadata(String database) {
+        FbSqlProcedureMetadata result = _registry.get(database);
+        return result!=null ? result : _registry.computeIfAbsent(database, k -> new FbSqlProcedureMetadata());
+    }//getMetadata
+
+    protected static String normalizeName(String name) {
+        String result = name.trim();
+        if (result.length()>1 && result.startsWith("\"") && result.endsWith("\"")) {
+            return result.substring(1, result.length()-1).replace("\"\"", "\"");
+        }
+        return result.toUpperCase();
+    }//normalizeName
+
+    public static String getCallQuery(String procedure, int placeholders) {
+        StringBuilder result = new StringBuilder("{call ").append(procedure);
+        if (placeholders>0) {
+            result.append("(");
+            for (int i=0; i<placeholders; i++) {
+                result.append(i>0 ? ",?" : "?");
+            }
+            result.append(")");
+        }
+        return result.append("}").toString();
+    }//getCallQuery
+
+    // null when the procedure is not a plain (non-packaged) procedure of this database
+    public Signature getSignature(Connection connection, String procedure) throws SQLException {
+        if (procedure==null || procedure.contains(".")) {
+            return null;
+        }
+        Signature result = _signatures.get(procedure);
+        if (result==null) {
+            result = load(connection, procedure, getSignatureQuery(connection));
+            if (result==UNKNOWN) {
+                return null;
+            }
+            _signatures.put(procedure, result);
+        }
+        return result;
+    }//getSignature
+
+    // RDB$PACKAGE_NAME only exists from Firebird 3.0 on
+    protected String getSignatureQuery(Connection connection) throws SQLException {
+        if (_serverVersion==0) {
+            _serverVersion = connection.getMetaData().getDatabaseMajorVersion();
+        }
+        return _serverVersion>=3 ? SIGNATURE_QUERY_FB3 : SIGNATURE_QUERY;
+    }//getSignatureQuery
+
+    // Needed after ALTER PROCEDURE changes a signature
+    public void invalidate(String procedure) {
+        _signatures.remove(procedure);
+    }//invalidate
+
+    public void clear() {
+        _signatures.clear();
+    }//clear
+
+    protected static Signature load(Connection connection, String procedure, String query) throws SQLException {
+        ArrayList<Parameter> inputs = new ArrayList<>();
+        ArrayList<Parameter> outputs = new ArrayList<>();
+        boolean found = false;
+        boolean selectable = false;
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, normalizeName(procedure));
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    found = true;
+                    // RDB$PROCEDURE_TYPE: 1 selectable, 2 executable, null for procedures created before Firebird 2.1
+                    selectable = results.getInt(1)==1;
+                    String name = results.getString(2);
+                    if (name==null) {
+                        continue;
+                    }
+                    Parameter parameter = new Parameter(name.trim(), getSqlType(results.getInt(4), results.getInt(5), results.getInt(6)));
+                    if (results.getInt(3)==0) {
+                        inputs.add(parameter);
+                    } else {
+                        outputs.add(parameter);
+                    }
+                }
+            }
+        }
+        return found ? new Signature(procedure, selectable, inputs, outputs) : UNKNOWN;
+    }//load
+
+    // RDB$FIELDS.RDB$FIELD_TYPE codes
+    protected static int getSqlType(int fieldType, int subType, int scale) {
+        switch (fieldType) {
+            case 7: return scale<0 ? Types.NUMERIC : Types.SMALLINT;
+            case 8: return scale<0 ? Types.NUMERIC : Types.INTEGER;
+            case 16: return scale<0 ? Types.NUMERIC : Types.BIGINT;
+            case 10: return Types.FLOAT;
+            case 27: return scale<0 ? Types.NUMERIC : Types.DOUBLE;
+            case 12: return Types.DATE;
+            case 13: return Types.TIME;
+            case 35: return Types.TIMESTAMP;
+            case 14: return Types.CHAR;
+            case 37: return Types.VARCHAR;
+            case 23: return Types.BOOLEAN;
+            case 261: return subType==1 ? Types.LONGVARCHAR : Types.LONGVARBINARY;
+            default: return Types.OTHER;
+        }
+    }//getSqlType
+}//FbSqlProcedureMetadata
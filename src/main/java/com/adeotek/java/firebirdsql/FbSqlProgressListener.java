@@ -0,0 +1,5 @@
+package com.adeotek.java.firebirdsql;
+
+public interface FbSqlProgressListener {
+    void onProgress(long rows, long batches, double rowsPerSecond);
+}//FbSqlProgressListener
@@ -0,0 +1,201 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sends standalone reads to replicas and everything else (writes, named transactions) to the primary.
+// Replicas may lag behind the primary: reads that must see the caller's own writes belong in a primary transaction.
+public class FbSqlReplicaRouter {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlReplicaRouter.class);
+
+    public enum Strategy {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING
+    }//Strategy
+
+    public interface Read<T> {
+        T call(FbSqlConnection connection, String transaction) throws FbSqlException;
+    }//Read
+
+    public static class Replica {
+        protected final FbSqlConnection _connection;
+        protected final AtomicInteger _outstanding = new AtomicInteger(0);
+        protected final AtomicInteger _failures = new AtomicInteger(0);
+        protected volatile long _unhealthyUntil = 0;
+
+        public FbSqlConnection getConnection() { return _connection; }
+        public int getOutstanding() { return _outstanding.get(); }
+        public int getFailures() { return _failures.get(); }
+        public boolean isHealthy() { return _unhealthyUntil==0 || System.currentTimeMillis()>=_unhealthyUntil; }
+
+        protected Replica(FbSqlConnection connection) {
+            _connection = connection;
+        }//Replica
+    }//Replica
+
+    protected final FbSqlConnection _primary;
+    protected final List<Replica> _replicas;
+    protected final Strategy _strategy;
+    protected final AtomicInteger _next = new AtomicInteger(0);
+    protected FbSqlTransactionProfile _readProfile = FbSqlTransactionProfile.READ_ONLY;
+    protected int _failureThreshold = 1;
+    protected long _retryAfterMillis = 30000;
+    protected boolean _fallbackToPrimary = true;
+
+    public FbSqlConnection getPrimary() { return _primary; }
+    public List<Replica> getReplicas() { return Collections.unmodifiableList(_replicas); }
+    public void setReadProfile(FbSqlTransactionProfile profile) { _readProfile = profile; }
+    // A replica is skipped for retryAfterMillis once failureThreshold consecutive connect failures are reached
+    public void setHealthOptions(int failureThreshold, long retryAfterMillis) {
+        _failureThreshold = Math.max(1, failureThreshold);
+        _retryAfterMillis = retryAfterMillis;
+    }//setHealthOptions
+    public void setFallbackToPrimary(boolean fallback) { _fallbackToPrimary = fallback; }
+
+    // Every read opens its own short transaction, so replica connections should use the pool (setPoolOptions)
+    public FbSqlReplicaRouter(FbSqlConnection primary, List<FbSqlConnection> replicas, Strategy strategy) {
+        _primary = primary;
+        _strategy = strategy==null ? Strategy.ROUND_ROBIN : strategy;
+        _replicas = new ArrayList<>();
+        if (replicas!=null) {
+            for (FbSqlConnection replica : replicas) {
+                _replicas.add(new Replica(replica));
+            }
+        }
+    }//FbSqlReplicaRouter
+
+    public FbSqlReplicaRouter(FbSqlConnection primary, List<FbSqlConnection> replicas) {
+        this(primary, replicas, Strategy.ROUND_ROBIN);
+    }//FbSqlReplicaRouter
+
+    // Healthy replicas in the order they should be tried
+    protected List<Replica> getCandidates() {
+        ArrayList<Replica> healthy = new ArrayList<>(_replicas.size());
+        for (Replica replica : _replicas) {
+            if (replica.isHealthy()) {
+                healthy.add(replica);
+            }
+        }
+        ArrayList<Replica> result = new ArrayList<>(healthy.size());
+        if (healthy.isEmpty()) {
+            return result;
+        }
+        // Rotated over the healthy ones only, so an unhealthy replica's share is spread evenly
+        int start = Math.floorMod(_next.getAndIncrement(), healthy.size());
+        for (int i=0; i<healthy.size(); i++) {
+            result.add(healthy.get((start + i) % healthy.size()));
+        }
+        if (_strategy==Strategy.LEAST_OUTSTANDING) {
+            // Stable sort: ties keep the round-robin order
+            result.sort((a, b) -> Integer.compare(a.getOutstanding(), b.getOutstanding()));
+        }
+        return result;
+    }//getCandidates
+
+    protected void markFailure(Replica replica, FbSqlException e) {
+        if (replica._failures.incrementAndGet()>=_failureThreshold) {
+            replica._unhealthyUntil = System.currentTimeMillis() + _retryAfterMillis;
+            appLogger.warn("FbSqlReplicaRouter: replica " + replica._connection.prepareConnectionString()
+                    + " marked unhealthy for " + _retryAfterMillis + " ms: " + e.getMessage());
+        }
+    }//markFailure
+
+    protected void markSuccess(Replica replica) {
+        if (replica._failures.get()>0) {
+            replica._failures.set(0);
+            replica._unhealthyUntil = 0;
+        }
+    }//markSuccess
+
+    protected static boolean isConnectionError(FbSqlException e) {
+        // SQLState class 08: connection exception
+        return e.getSqlState()!=null && e.getSqlState().startsWith("08");
+    }//isConnectionError
+
+    protected String beginRead(FbSqlConnection conn) throws FbSqlException {
+        String tran = "FbSqlReplicaRouter-" + UUID.randomUUID();
+        conn.beginTransaction(tran, false, null, _readProfile);
+        return tran;
+    }//beginRead
+
+    protected <T> T completeRead(FbSqlConnection conn, String tran, Read<T> read) throws FbSqlException {
+        try {
+            T result = read.call(conn, tran);
+            conn.commitTransaction(tran);
+            return result;
+        } finally {
+            if (conn._transactions.containsKey(tran)) {
+                try {
+                    conn.rollbackTransaction(tran);
+                } catch (FbSqlException re) {
+                    appLogger.warn("FbSqlReplicaRouter rollback: " + re.getMessage());
+                }
+            }
+        }
+    }//completeRead
+
+    // Named transactions stay on the primary (they may have written); standalone reads go to a replica
+    public <T> T read(String transaction, Read<T> read) throws FbSqlException {
+        if (!Helpers.isStringEmptyOrNull(transaction)) {
+            return read.call(_primary, transaction);
+        }
+        FbSqlException last = null;
+        for (Replica replica : getCandidates()) {
+            replica._outstanding.incrementAndGet();
+            try {
+                String tran;
+                try {
+                    tran = beginRead(replica._connection);
+                } catch (FbSqlException e) {
+                    markFailure(replica, e);
+                    last = e;
+                    continue;
+                }
+                T result = completeRead(replica._connection, tran, read);
+                markSuccess(replica);
+                return result;
+            } catch (FbSqlException e) {
+                // Only connection problems move on to the next replica, a failing query fails everywhere
+                if (!isConnectionError(e)) {
+                    throw e;
+                }
+                markFailure(replica, e);
+                last = e;
+            } finally {
+                replica._outstanding.decrementAndGet();
+            }
+        }
+        if (!_fallbackToPrimary && _replicas.size()>0) {
+            throw last!=null ? last : new FbSqlException("No healthy replica available");
+        }
+        return completeRead(_primary, beginRead(_primary), read);
+    }//read
+
+    public JsonArray executeSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
+        return read(transaction, (conn, tran) -> conn.executeSelectQuery(query, parameters, tran));
+    }//executeSelectQuery
+
+    public JsonArray executeSelectQuery(String query) throws FbSqlException {
+        return executeSelectQuery(query, null, null);
+    }//executeSelectQuery
+
+    public <T> List<T> executeSelectQuery(String query, LinkedHashMap<String, Object> parameters, String transaction, Class<T> type) throws FbSqlException {
+        return read(transaction, (conn, tran) -> conn.executeSelectQuery(query, parameters, tran, type));
+    }//executeSelectQuery
+
+    public JsonArray executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters, String transaction) throws FbSqlException {
+        return read(transaction, (conn, tran) -> conn.executeSelectableProcedure(procedure, parameters, tran));
+    }//executeSelectableProcedure
+
+    public JsonArray executeSelectableProcedure(String procedure, LinkedHashMap<String, Object> parameters) throws FbSqlException {
+        return executeSelectableProcedure(procedure, parameters, null);
+    }//executeSelectableProcedure
+}//FbSqlReplicaRouter
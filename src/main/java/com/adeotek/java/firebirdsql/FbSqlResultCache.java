@@ -0,0 +1,401 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Opt-in select result cache: LRU by entries and estimated bytes, TTL bound, invalidated by table name
+public class FbSqlResultCache {
+    // Dependency on every table (e.g. procedure calls or unparsable statements)
+    public static final String ALL_TABLES = "*";
+
+    // Comments, string literals, quoted identifiers, words, parentheses and commas; anything else is a single token
+    protected static final Pattern TOKEN = Pattern.compile("--[^\\n]*|/\\*.*?\\*/|'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"|[A-Za-z][\\w$]*|[(),]|[^\\s(),'\"A-Za-z]+", Pattern.DOTALL);
+    protected static final Set<String> CLAUSE_END = new HashSet<>(Arrays.asList("WHERE", "GROUP", "HAVING", "ORDER", "UNION", "PLAN", "ROWS", "FETCH", "OFFSET", "FOR", "WINDOW"));
+    // System tables change without statements this cache can see (DDL, monitoring snapshots, users)
+    protected static final Pattern SYSTEM_RELATION = Pattern.compile("^(?:RDB|MON|SEC)\\$.*");
+    // Values that differ between executions of the same statement
+    protected static final Set<String> VOLATILE = new HashSet<>(Arrays.asList("GEN_ID", "GEN_UUID", "RAND", "LOCALTIME", "LOCALTIMESTAMP",
+            "'NOW'", "'TODAY'", "'TOMORROW'", "'YESTERDAY'"));
+    // Built-in functions, type names and keywords that may be followed by a parenthesis; any other name( is a PSQL or external function
+    protected static final Set<String> BUILTIN = new HashSet<>(Arrays.asList(
+            "ABS", "ACOS", "ACOSH", "ASCII_CHAR", "ASCII_VAL", "ASIN", "ASINH", "ATAN", "ATAN2", "ATANH", "AVG", "BIN_AND", "BIN_NOT",
+            "BIN_OR", "BIN_SHL", "BIN_SHR", "BIN_XOR", "BIT_LENGTH", "CAST", "CEIL", "CEILING", "CHAR_LENGTH", "CHARACTER_LENGTH",
+            "CHAR_TO_UUID", "COALESCE", "CORR", "COS", "COSH", "COT", "COUNT", "COVAR_POP", "COVAR_SAMP", "CUME_DIST", "DATEADD",
+            "DATEDIFF", "DECODE", "DENSE_RANK", "EXP", "EXTRACT", "FIRST_VALUE", "FLOOR", "HASH", "IIF", "LAG", "LAST_VALUE", "LEAD",
+            "LEFT", "LIST", "LN", "LOG", "LOG10", "LOWER", "LPAD", "MAX", "MAXVALUE", "MIN", "MINVALUE", "MOD", "NTH_VALUE", "NTILE",
+            "NULLIF", "OCTET_LENGTH", "OVERLAY", "PERCENT_RANK", "PI", "POSITION", "POWER", "RANK", "REPLACE", "REVERSE", "RIGHT",
+            "ROUND", "ROW_NUMBER", "RPAD", "SIGN", "SIN", "SINH", "SQRT", "STDDEV_POP", "STDDEV_SAMP", "SUBSTRING", "SUM", "TAN",
+            "TANH", "TRIM", "TRUNC", "UPPER", "UUID_TO_CHAR", "VAR_POP", "VAR_SAMP",
+            "BINARY", "CHAR", "CHARACTER", "DECFLOAT", "DECIMAL", "FLOAT", "NCHAR", "NUMERIC", "VARBINARY", "VARCHAR", "VARYING",
+            "ALL", "AND", "ANY", "AS", "BETWEEN", "DISTINCT", "ELSE", "EXISTS", "FROM", "IN", "IS", "JOIN", "LATERAL", "LIKE", "NOT",
+            "ON", "OR", "OVER", "SELECT", "SINGULAR", "SOME", "THEN", "USING", "VALUES", "WHEN", "WHERE", "WITH"));
+    protected static final String BASE_TABLE_QUERY = "SELECT 1 FROM RDB$RELATIONS WHERE RDB$RELATION_NAME = ? AND RDB$VIEW_BLR IS NULL";
+    protected static final Pattern WRITE_TABLE = Pattern.compile("^\\s*(?:INSERT\\s+INTO|UPDATE\\s+OR\\s+INSERT\\s+INTO|UPDATE|DELETE\\s+FROM|MERGE\\s+INTO)\\s+(\"[^\"]+\"|[A-Za-z_][\\w$]*)", Pattern.CASE_INSENSITIVE);
+
+    protected static class Entry {
+        protected final JsonArray value;
+        protected final long weight;
+        protected final long expiresAt;
+        protected final Set<String> tables;
+
+        protected Entry(JsonArray value, long weight, long expiresAt, Set<String> tables) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+            this.tables = tables;
+        }//Entry
+    }//Entry
+
+    protected final int _maxEntries;
+    protected final long _maxWeight;
+    protected final long _ttl;
+    protected final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected long _weight = 0;
+    protected long _hits = 0;
+    protected long _misses = 0;
+    protected long _evictions = 0;
+    protected long _invalidations = 0;
+    protected long _stalePuts = 0;
+    // Bumped by every invalidation; the version of a table's (or all tables') last invalidation
+    protected long _version = 0;
+    protected long _allVersion = 0;
+    protected final HashMap<String, Long> _tableVersions = new HashMap<>();
+    // Relation name -> true for tables, false for views and anything that is not a relation (e.g. CTE names)
+    protected final ConcurrentHashMap<String, Boolean> _baseTables = new ConcurrentHashMap<>();
+
+    public synchronized long getHits() { return _hits; }
+    public synchronized long getMisses() { return _misses; }
+    public synchronized long getEvictions() { return _evictions; }
+    public synchronized long getInvalidations() { return _invalidations; }
+    public synchronized long getStalePuts() { return _stalePuts; }
+    // Taken before a select runs and handed to put(), which drops results read before a later invalidation of their tables
+    public synchronized long getVersion() { return _version; }
+    public synchronized long getWeight() { return _weight; }
+    public synchronized int getSize() { return _entries.size(); }
+    public synchronized double getHitRatio() { return _hits+_misses==0 ? 0 : (double) _hits / (_hits + _misses); }
+
+    // Results are copied in and out, so callers may change what they get
+    public FbSqlResultCache(int maxEntries, long maxWeightBytes, long ttlMillis) {
+        _maxEntries = Math.max(1, maxEntries);
+        _maxWeight = maxWeightBytes;
+        _ttl = ttlMillis;
+    }//FbSqlResultCache
+
+    public static String prepareKey(String query, LinkedHashMap<String, Object> parameters, int isolation) {
+        return prepareKey(query, parameters, isolation, null);
+    }//prepareKey
+
+    // Results read under different transaction parameters (e.g. snapshot vs. read committed) never share an entry
+    public static String prepareKey(String query, LinkedHashMap<String, Object> parameters, int isolation, FbSqlTransactionProfile profile) {
+        StringBuilder key = new StringBuilder();
+        key.append(isolation).append("|").append(profile==null ? "" : profile.getParameters()).append("|").append(query);
+        if (parameters!=null) {
+            for (Map.Entry<String, Object> kv : parameters.entrySet()) {
+                Object value = kv.getValue();
+                key.append("|").append(kv.getKey()).append("=");
+                if (value!=null) {
+                    key.append(value.getClass().getSimpleName()).append(":").append(value);
+                }
+            }
+        }
+        return key.toString();
+    }//prepareKey
+
+    protected static String normalizeTable(String name) {
+        if (name.startsWith("\"") && name.endsWith("\"") && name.length()>1) {
+            return name.substring(1, name.length()-1).replace("\"\"", "\"");
+        }
+        // Firebird folds unquoted identifiers to upper case
+        return name.toUpperCase();
+    }//normalizeTable
+
+    protected static boolean isIdentifier(String token) {
+        return Character.isLetter(token.charAt(0)) || (token.charAt(0)=='"' && token.length()>1);
+    }//isIdentifier
+
+    // Relations named in the FROM clauses (comma lists and joins, at any nesting level) of a select;
+    // null when they cannot all be told from the text, e.g. selectable procedures or unbalanced parentheses
+    public static Set<String> extractReadTables(String query) {
+        if (query==null) {
+            return null;
+        }
+        ArrayList<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(query);
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (!token.startsWith("--") && !token.startsWith("/*")) {
+                tokens.add(token);
+            }
+        }
+        if (!isDeterministic(tokens)) {
+            return null;
+        }
+        HashSet<String> tables = new HashSet<>();
+        // Saved {isQuery, inFrom} of the enclosing parentheses; only parentheses opened by SELECT/WITH hold a query
+        ArrayDeque<boolean[]> levels = new ArrayDeque<>();
+        boolean isQuery = true;
+        boolean inFrom = false;
+        boolean expectTable = false;
+        for (int i=0; i<tokens.size(); i++) {
+            String token = tokens.get(i);
+            String next = i+1<tokens.size() ? tokens.get(i+1) : "";
+            if (token.equals("(")) {
+                levels.push(new boolean[]{isQuery, inFrom});
+                isQuery = next.equalsIgnoreCase("SELECT") || next.equalsIgnoreCase("WITH");
+                inFrom = false;
+                expectTable = false;
+                continue;
+            }
+            if (token.equals(")")) {
+                if (levels.isEmpty()) {
+                    return null;
+                }
+                boolean[] level = levels.pop();
+                isQuery = level[0];
+                inFrom = level[1];
+                // A derived table's alias is not a relation
+                expectTable = false;
+                continue;
+            }
+            if (!isQuery) {
+                continue;
+            }
+            String word = token.toUpperCase();
+            if (word.equals("FROM")) {
+                inFrom = true;
+                expectTable = true;
+            } else if (!inFrom) {
+                continue;
+            } else if (word.equals("JOIN") || token.equals(",")) {
+                expectTable = true;
+            } else if (CLAUSE_END.contains(word)) {
+                inFrom = false;
+                expectTable = false;
+            } else if (expectTable && !word.equals("LATERAL")) {
+                expectTable = false;
+                if (!isIdentifier(token) || next.equals("(")) {
+                    // PROC(...) is a selectable procedure, which may read any table
+                    return null;
+                }
+                String table = normalizeTable(token);
+                if (SYSTEM_RELATION.matcher(table).matches()) {
+                    return null;
+                }
+                tables.add(table);
+            }
+        }
+        return levels.isEmpty() && !tables.isEmpty() ? tables : null;
+    }//extractReadTables
+
+    // false for statements whose result may change without a write to the tables they read:
+    // sequences, context and time values, locking reads and calls to functions other than the built-in ones
+    protected static boolean isDeterministic(List<String> tokens) {
+        for (int i=0; i<tokens.size(); i++) {
+            String word = tokens.get(i).toUpperCase();
+            String next = i+1<tokens.size() ? tokens.get(i+1).toUpperCase() : "";
+            if (VOLATILE.contains(word) || word.startsWith("CURRENT_") || SYSTEM_RELATION.matcher(word).matches()) {
+                return false;
+            }
+            if ((word.equals("NEXT") && next.equals("VALUE")) || (word.equals("WITH") && next.equals("LOCK"))
+                    || (word.equals("FOR") && next.equals("UPDATE"))) {
+                return false;
+            }
+            if (next.equals("(") && Character.isLetter(word.charAt(0)) && !BUILTIN.contains(word) && !isColumnList(tokens, i)) {
+                return false;
+            }
+        }
+        return true;
+    }//isDeterministic
+
+    // NAME ( ... ) names a column list, not a call, after a derived table (") AS D (A, B)") or before a CTE body ("C (A, B) AS (")
+    protected static boolean isColumnList(List<String> tokens, int name) {
+        String previous = name>0 ? tokens.get(name-1).toUpperCase() : "";
+        if (previous.equals(")") || previous.equals("AS")) {
+            return true;
+        }
+        int depth = 0;
+        for (int i=name+1; i<tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("(")) {
+                depth++;
+            } else if (token.equals(")") && --depth==0) {
+                return i+1<tokens.size() && tokens.get(i+1).equalsIgnoreCase("AS");
+            }
+        }
+        return false;
+    }//isColumnList
+
+    protected static boolean isBaseTable(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(BASE_TABLE_QUERY)) {
+            statement.setString(1, table);
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next();
+            }
+        }
+    }//isBaseTable
+
+    // Tables read by query, or null when its result must not be cached: views and selectable procedures
+    // read tables that do not appear in the statement, so writes to those could not invalidate it
+    public Set<String> getReadTables(Connection connection, String query) throws SQLException {
+        Set<String> tables = extractReadTables(query);
+        if (tables==null) {
+            return null;
+        }
+        for (String table : tables) {
+            Boolean base = _baseTables.get(table);
+            if (base==null) {
+                base = isBaseTable(connection, table);
+                _baseTables.put(table, base);
+            }
+            if (!base) {
+                return null;
+            }
+        }
+        return tables;
+    }//getReadTables
+
+    public static String extractWriteTable(String query) {
+        Matcher matcher = WRITE_TABLE.matcher(query);
+        return matcher.find() ? normalizeTable(matcher.group(1)) : ALL_TABLES;
+    }//extractWriteTable
+
+    protected static long estimateWeight(JsonArray value) {
+        long weight = 64;
+        for (JsonElement row : value) {
+            weight += 48;
+            if (!row.isJsonObject()) {
+                continue;
+            }
+            for (Map.Entry<String, JsonElement> kv : ((JsonObject) row).entrySet()) {
+                // Entry + primitive wrapper overhead, names are usually interned by the reader plan
+                weight += 48;
+                JsonElement cell = kv.getValue();
+                if (cell.isJsonPrimitive() && cell.getAsJsonPrimitive().isString()) {
+                    weight += 40 + 2L * cell.getAsString().length();
+                } else {
+                    weight += 16;
+                }
+            }
+        }
+        return weight;
+    }//estimateWeight
+
+    // JsonElement.deepCopy() is not public in Gson 2.8.1; primitives cannot be changed from outside the package
+    protected static JsonElement copy(JsonElement element) {
+        if (element.isJsonArray()) {
+            JsonArray result = new JsonArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                result.add(copy(item));
+            }
+            return result;
+        }
+        if (element.isJsonObject()) {
+            JsonObject result = new JsonObject();
+            for (Map.Entry<String, JsonElement> kv : element.getAsJsonObject().entrySet()) {
+                result.add(kv.getKey(), copy(kv.getValue()));
+            }
+            return result;
+        }
+        return element;
+    }//copy
+
+    public synchronized JsonArray get(String key) {
+        Entry entry = _entries.get(key);
+        if (entry==null) {
+            _misses++;
+            return null;
+        }
+        if (_ttl>0 && System.currentTimeMillis()>entry.expiresAt) {
+            remove(key);
+            _evictions++;
+            _misses++;
+            return null;
+        }
+        _hits++;
+        return (JsonArray) copy(entry.value);
+    }//get
+
+    public synchronized void put(String key, JsonArray value, Set<String> tables) {
+        put(key, value, tables, _version);
+    }//put
+
+    public synchronized void put(String key, JsonArray value, Set<String> tables, long version) {
+        if (key==null || value==null || tables==null) {
+            return;
+        }
+        if (isStale(tables, version)) {
+            _stalePuts++;
+            return;
+        }
+        long weight = estimateWeight(value);
+        if (_maxWeight>0 && weight>_maxWeight) {
+            return;
+        }
+        remove(key);
+        _entries.put(key, new Entry((JsonArray) copy(value), weight, System.currentTimeMillis() + _ttl, tables));
+        _weight += weight;
+        Iterator<Map.Entry<String, Entry>> it = _entries.entrySet().iterator();
+        while (it.hasNext() && (_entries.size()>_maxEntries || (_maxWeight>0 && _weight>_maxWeight))) {
+            _weight -= it.next().getValue().weight;
+            it.remove();
+            _evictions++;
+        }
+    }//put
+
+    protected boolean isStale(Set<String> tables, long version) {
+        if (_allVersion>version || (tables.contains(ALL_TABLES) && _version>version)) {
+            return true;
+        }
+        for (String table : tables) {
+            Long invalidated = _tableVersions.get(table);
+            if (invalidated!=null && invalidated>version) {
+                return true;
+            }
+        }
+        return false;
+    }//isStale
+
+    protected void remove(String key) {
+        Entry entry = _entries.remove(key);
+        if (entry!=null) {
+            _weight -= entry.weight;
+        }
+    }//remove
+
+    public synchronized void invalidateTable(String table) {
+        if (table==null || table.equals(ALL_TABLES)) {
+            invalidateAll();
+            return;
+        }
+        _tableVersions.put(table, ++_version);
+        Iterator<Map.Entry<String, Entry>> it = _entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.tables.contains(table) || entry.tables.contains(ALL_TABLES)) {
+                _weight -= entry.weight;
+                it.remove();
+                _invalidations++;
+            }
+        }
+    }//invalidateTable
+
+    public synchronized void invalidateAll() {
+        // Unparsable writes may be DDL, e.g. a table replaced by a view
+        _baseTables.clear();
+        _allVersion = ++_version;
+        _tableVersions.clear();
+        _invalidations += _entries.size();
+        _entries.clear();
+        _weight = 0;
+    }//invalidateAll
+}//FbSqlResultCache
@@ -0,0 +1,209 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.sql.*;
+
+// Column reader plan, built once per result shape from the result set metadata
+public class FbSqlResultReader {
+    public interface ColumnReader {
+        void read(ResultSet results, int index, String name, JsonObject row) throws SQLException;
+    }//ColumnReader
+
+    public interface ColumnWriter {
+        void write(ResultSet results, int index, JsonWriter writer) throws SQLException, IOException;
+    }//ColumnWriter
+
+    protected static final ColumnReader INT_READER = (rs, i, name, row) -> row.addProperty(name, rs.getInt(i));
+    protected static final ColumnReader LONG_READER = (rs, i, name, row) -> row.addProperty(name, rs.getLong(i));
+    protected static final ColumnReader DOUBLE_READER = (rs, i, name, row) -> row.addProperty(name, rs.getDouble(i));
+    protected static final ColumnReader STRING_READER = (rs, i, name, row) -> row.addProperty(name, rs.getString(i));
+    protected static final ColumnReader TEXT_BLOB_READER = (rs, i, name, row) -> row.addProperty(name, readTextBlob(rs, i));
+    protected static final ColumnReader BINARY_BLOB_READER = (rs, i, name, row) -> row.addProperty(name, readBinaryBlob(rs, i));
+    protected static final ColumnReader TIMESTAMP_READER = (rs, i, name, row) -> row.addProperty(name, readTimestamp(rs, i));
+    protected static final ColumnReader DATE_READER = (rs, i, name, row) -> row.addProperty(name, readDate(rs, i));
+    protected static final ColumnReader TIME_READER = (rs, i, name, row) -> row.addProperty(name, readTime(rs, i));
+
+    protected static final ColumnWriter INT_WRITER = (rs, i, w) -> w.value(rs.getInt(i));
+    protected static final ColumnWriter LONG_WRITER = (rs, i, w) -> w.value(rs.getLong(i));
+    protected static final ColumnWriter DOUBLE_WRITER = (rs, i, w) -> w.value(rs.getDouble(i));
+    protected static final ColumnWriter STRING_WRITER = (rs, i, w) -> w.value(rs.getString(i));
+    protected static final ColumnWriter TEXT_BLOB_WRITER = (rs, i, w) -> w.value(readTextBlob(rs, i));
+    protected static final ColumnWriter BINARY_BLOB_WRITER = (rs, i, w) -> w.value(readBinaryBlob(rs, i));
+    protected static final ColumnWriter TIMESTAMP_WRITER = (rs, i, w) -> w.value(readTimestamp(rs, i));
+    protected static final ColumnWriter DATE_WRITER = (rs, i, w) -> w.value(readDate(rs, i));
+    protected static final ColumnWriter TIME_WRITER = (rs, i, w) -> w.value(readTime(rs, i));
+
+    protected static String readTimestamp(ResultSet results, int index) throws SQLException {
+        Timestamp value = results.getTimestamp(index);
+        return value==null ? null : value.toString();
+    }//readTimestamp
+
+    protected static String readDate(ResultSet results, int index) throws SQLException {
+        Date value = results.getDate(index);
+        return value==null ? null : value.toString();
+    }//readDate
+
+    protected static String readTime(ResultSet results, int index) throws SQLException {
+        Time value = results.getTime(index);
+        return value==null ? null : value.toString();
+    }//readTime
+
+    protected static String readTextBlob(ResultSet results, int index) throws SQLException {
+        Blob blob = results.getBlob(index);
+        if (blob==null) {
+            return null;
+        }
+        try {
+            return FbSqlBlob.readString(blob);
+        } catch (IOException ioe) {
+            throw new SQLException(ioe.getMessage(), ioe);
+        } finally {
+            blob.free();
+        }
+    }//readTextBlob
+
+    // Binary blobs are exposed as Base64 in JSON results; use FbSqlBlob (mapped results) to stream them
+    protected static String readBinaryBlob(ResultSet results, int index) throws SQLException {
+        Blob blob = results.getBlob(index);
+        if (blob==null) {
+            return null;
+        }
+        try {
+            return FbSqlBlob.readBase64(blob);
+        } catch (IOException ioe) {
+            throw new SQLException(ioe.getMessage(), ioe);
+        } finally {
+            blob.free();
+        }
+    }//readBinaryBlob
+
+    protected final String[] _names;
+    protected final String[] _labels;
+    protected final String[] _typeNames;
+    protected final int[] _types;
+    protected final ColumnReader[] _readers;
+    protected final ColumnWriter[] _writers;
+
+    public int getColumnCount() { return _names.length; }
+    public String getColumnName(int index) { return _names[index-1]; }
+    public String getColumnTypeName(int index) { return _typeNames[index-1]; }
+    public int getColumnType(int index) { return _types[index-1]; }
+
+    public FbSqlResultReader(ResultSetMetaData metaData) throws SQLException {
+        int count = metaData.getColumnCount();
+        _names = new String[count];
+        _labels = new String[count];
+        _typeNames = new String[count];
+        _types = new int[count];
+        _readers = new ColumnReader[count];
+        _writers = new ColumnWriter[count];
+        for (int i=0; i<count; i++) {
+            _names[i] = metaData.getColumnName(i+1).toLowerCase();
+            _labels[i] = metaData.getColumnLabel(i+1);
+            _typeNames[i] = metaData.getColumnTypeName(i+1).toUpperCase();
+            _types[i] = metaData.getColumnType(i+1);
+            _readers[i] = getColumnReader(_typeNames[i]);
+            _writers[i] = getColumnWriter(_typeNames[i]);
+        }
+    }//FbSqlResultReader
+
+    protected static ColumnReader getColumnReader(String typeName) {
+        switch (typeName) {
+            case "INTEGER":
+            case "SMALLINT":
+                return INT_READER;
+            case "BIGINT":
+                return LONG_READER;
+            case "DECIMAL":
+                return DOUBLE_READER;
+            case "BLOB SUB_TYPE 1":
+                return TEXT_BLOB_READER;
+            case "BLOB SUB_TYPE 0":
+                return BINARY_BLOB_READER;
+            case "TIMESTAMP":
+                return TIMESTAMP_READER;
+            case "DATE":
+                return DATE_READER;
+            case "TIME":
+                return TIME_READER;
+            default:
+                return STRING_READER;
+        }
+    }//getColumnReader
+
+    protected static ColumnWriter getColumnWriter(String typeName) {
+        switch (typeName) {
+            case "INTEGER":
+            case "SMALLINT":
+                return INT_WRITER;
+            case "BIGINT":
+                return LONG_WRITER;
+            case "DECIMAL":
+                return DOUBLE_WRITER;
+            case "BLOB SUB_TYPE 1":
+                return TEXT_BLOB_WRITER;
+            case "BLOB SUB_TYPE 0":
+                return BINARY_BLOB_WRITER;
+            case "TIMESTAMP":
+                return TIMESTAMP_WRITER;
+            case "DATE":
+                return DATE_WRITER;
+            case "TIME":
+                return TIME_WRITER;
+            default:
+                return STRING_WRITER;
+        }
+    }//getColumnWriter
+
+    // A non-numeric column as readRow() renders it (Base64 for binary blobs, the JDBC temporal formats)
+    public String readString(ResultSet results, int index) throws SQLException {
+        switch (_typeNames[index-1]) {
+            case "BLOB SUB_TYPE 1":
+                return readTextBlob(results, index);
+            case "BLOB SUB_TYPE 0":
+                return readBinaryBlob(results, index);
+            case "TIMESTAMP":
+                return readTimestamp(results, index);
+            case "DATE":
+                return readDate(results, index);
+            case "TIME":
+                return readTime(results, index);
+            default:
+                return results.getString(index);
+        }
+    }//readString
+
+    public boolean matches(ResultSetMetaData metaData) throws SQLException {
+        if (metaData.getColumnCount()!=_names.length) {
+            return false;
+        }
+        // Equal types alone would hand a plan over to columns renamed since (DDL, another alias), keeping stale property names
+        for (int i=0; i<_types.length; i++) {
+            if (metaData.getColumnType(i+1)!=_types[i] || !_labels[i].equals(metaData.getColumnLabel(i+1))
+                    || !_names[i].equalsIgnoreCase(metaData.getColumnName(i+1))) {
+                return false;
+            }
+        }
+        return true;
+    }//matches
+
+    public JsonObject readRow(ResultSet results) throws SQLException {
+        JsonObject row = new JsonObject();
+        for (int i=0; i<_readers.length; i++) {
+            _readers[i].read(results, i+1, _names[i], row);
+        }
+        return row;
+    }//readRow
+
+    public void writeRow(ResultSet results, JsonWriter writer) throws SQLException, IOException {
+        writer.beginObject();
+        for (int i=0; i<_writers.length; i++) {
+            writer.name(_names[i]);
+            _writers[i].write(results, i+1, writer);
+        }
+        writer.endObject();
+    }//writeRow
+}//FbSqlResultReader
@@ -0,0 +1,102 @@
+package com.adeotek.java.firebirdsql;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Retries a whole unit of work on transient conflicts, with jittered exponential backoff between attempts
+public class FbSqlRetryPolicy {
+    public static final int ISC_DEADLOCK = 335544336;
+    public static final int ISC_LOCK_CONFLICT = 335544345;
+    public static final int ISC_UPDATE_CONFLICT = 335544451;
+    public static final int ISC_LOCK_TIMEOUT = 335544510;
+    public static final int ISC_CONCURRENT_TRANSACTION = 335544878;
+    // Serialization failure; Jaybird reports deadlocks and update conflicts with it
+    public static final String SQL_STATE_SERIALIZATION_FAILURE = "40001";
+
+    protected final int _maxAttempts;
+    protected final long _initialDelayMillis;
+    protected final long _maxDelayMillis;
+    protected double _multiplier = 2.0;
+    protected final Set<Integer> _errorCodes = ConcurrentHashMap.newKeySet();
+    protected final Set<String> _sqlStates = ConcurrentHashMap.newKeySet();
+
+    public int getMaxAttempts() { return _maxAttempts; }
+    public long getInitialDelayMillis() { return _initialDelayMillis; }
+    public long getMaxDelayMillis() { return _maxDelayMillis; }
+    public void setMultiplier(double multiplier) { _multiplier = Math.max(1.0, multiplier); }
+
+    // maxAttempts counts the first execution too
+    public FbSqlRetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        _maxAttempts = Math.max(1, maxAttempts);
+        _initialDelayMillis = Math.max(0, initialDelayMillis);
+        _maxDelayMillis = Math.max(_initialDelayMillis, maxDelayMillis);
+        addRetryableErrorCodes(ISC_DEADLOCK, ISC_LOCK_CONFLICT, ISC_UPDATE_CONFLICT, ISC_LOCK_TIMEOUT, ISC_CONCURRENT_TRANSACTION);
+        addRetryableSqlStates(SQL_STATE_SERIALIZATION_FAILURE);
+    }//FbSqlRetryPolicy
+
+    public FbSqlRetryPolicy() {
+        this(5, 20, 2000);
+    }//FbSqlRetryPolicy
+
+    public void addRetryableErrorCodes(int... codes) {
+        for (int code : codes) {
+            _errorCodes.add(code);
+        }
+    }//addRetryableErrorCodes
+
+    public void addRetryableSqlStates(String... sqlStates) {
+        for (String sqlState : sqlStates) {
+            _sqlStates.add(sqlState);
+        }
+    }//addRetryableSqlStates
+
+    // Lock conflict errors carry the actual reason (deadlock, update conflict...) further down the chain
+    public boolean isRetryable(FbSqlException error) {
+        if (error==null) {
+            return false;
+        }
+        if (_errorCodes.contains(error.getErrorCode()) || (error.getSqlState()!=null && _sqlStates.contains(error.getSqlState()))) {
+            return true;
+        }
+        Throwable cause = error.getCause();
+        while (cause!=null) {
+            if (cause instanceof SQLException) {
+                SQLException se = (SQLException) cause;
+                while (se!=null) {
+                    if (_errorCodes.contains(se.getErrorCode()) || (se.getSQLState()!=null && _sqlStates.contains(se.getSQLState()))) {
+                        return true;
+                    }
+                    se = se.getNextException();
+                }
+            }
+            cause = cause.getCause()==cause ? null : cause.getCause();
+        }
+        return false;
+    }//isRetryable
+
+    // Equal jitter: half of the exponential delay is fixed, the other half random, so colliding writers spread out
+    public long getDelayMillis(int attempt) {
+        double delay = _initialDelayMillis * Math.pow(_multiplier, Math.max(0, attempt - 1));
+        long capped = (long) Math.min(delay, _maxDelayMillis);
+        if (capped<=1) {
+            return capped;
+        }
+        long half = capped / 2;
+        return half + ThreadLocalRandom.current().nextLong(capped - half + 1);
+    }//getDelayMillis
+
+    public void backoff(int attempt) throws FbSqlException {
+        long delay = getDelayMillis(attempt);
+        if (delay<=0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new FbSqlException("Interrupted while waiting to retry", ie);
+        }
+    }//backoff
+}//FbSqlRetryPolicy
@@ -0,0 +1,318 @@
+package com.adeotek.java.firebirdsql;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Binds result columns to a target class once per (class, column layout); rows are then mapped without reflection
+public class FbSqlRowMapper<T> {
+    protected interface ValueReader {
+        Object read(ResultSet results, int index) throws SQLException;
+    }//ValueReader
+
+    protected static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    protected static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    // Mappers by column layout, per target class; held by the class itself, so they do not pin its class loader
+    protected static final ClassValue<ConcurrentHashMap<String, FbSqlRowMapper<?>>> _mappers = new ClassValue<ConcurrentHashMap<String, FbSqlRowMapper<?>>>() {
+        @Override
+        protected ConcurrentHashMap<String, FbSqlRowMapper<?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    protected final Class<T> _type;
+    protected final MethodHandle _constructor;
+    // Either one setter per column (no-arg constructor) or one constructor argument per column
+    protected final MethodHandle[] _setters;
+    protected final ValueReader[] _readers;
+    protected final boolean _byConstructor;
+    // Constructor argument index of each column
+    protected final int[] _arguments;
+
+    // Picks the constructor used for binding when a class has several with the same number of parameters
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.CONSTRUCTOR)
+    public @interface MappingConstructor {
+    }//MappingConstructor
+
+    @SuppressWarnings("unchecked")
+    public static <T> FbSqlRowMapper<T> getMapper(Class<T> type, FbSqlResultReader reader) throws FbSqlException {
+        StringBuilder key = new StringBuilder();
+        for (int i=1; i<=reader.getColumnCount(); i++) {
+            key.append(reader.getColumnName(i)).append(":").append(reader.getColumnType(i)).append(";");
+        }
+        ConcurrentHashMap<String, FbSqlRowMapper<?>> byLayout = _mappers.get(type);
+        FbSqlRowMapper<?> mapper = byLayout.get(key.toString());
+        if (mapper==null) {
+            mapper = new FbSqlRowMapper<>(type, reader);
+            byLayout.putIfAbsent(key.toString(), mapper);
+        }
+        return (FbSqlRowMapper<T>) mapper;
+    }//getMapper
+
+    protected FbSqlRowMapper(Class<T> type, FbSqlResultReader reader) throws FbSqlException {
+        _type = type;
+        int count = reader.getColumnCount();
+        _setters = new MethodHandle[count];
+        _readers = new ValueReader[count];
+        try {
+            Constructor<T> noArgs = null;
+            try {
+                noArgs = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException nsme) {
+                noArgs = null;
+            }
+            if (noArgs!=null && (noArgs.isAnnotationPresent(MappingConstructor.class) || !hasMappingConstructor(type))) {
+                noArgs.setAccessible(true);
+                _byConstructor = false;
+                _arguments = null;
+                _constructor = LOOKUP.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+                HashMap<String, MethodHandle> targets = collectTargets(type);
+                for (int i=0; i<count; i++) {
+                    String name = normalizeName(reader.getColumnName(i+1));
+                    MethodHandle setter = targets.get(name);
+                    if (setter==null) {
+                        continue;
+                    }
+                    _readers[i] = getValueReader(setter.type().parameterType(1));
+                    _setters[i] = setter.asType(SETTER_TYPE);
+                }
+            } else {
+                // Constructor binding (e.g. records/immutable classes): one constructor argument per column
+                Constructor<?> match = selectConstructor(type, reader);
+                match.setAccessible(true);
+                _byConstructor = true;
+                MethodHandle ctor = LOOKUP.unreflectConstructor(match);
+                Class<?>[] params = match.getParameterTypes();
+                _arguments = getArgumentPositions(match, reader);
+                for (int i=0; i<count; i++) {
+                    _readers[i] = getValueReader(params[_arguments[i]]);
+                }
+                _constructor = ctor.asSpreader(Object[].class, count).asType(MethodType.methodType(Object.class, Object[].class));
+            }
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new FbSqlException("Unable to bind class: " + type.getName(), e);
+        }
+    }//FbSqlRowMapper
+
+    protected static boolean hasMappingConstructor(Class<?> type) {
+        for (Constructor<?> ctor : type.getDeclaredConstructors()) {
+            if (ctor.isAnnotationPresent(MappingConstructor.class)) {
+                return true;
+            }
+        }
+        return false;
+    }//hasMappingConstructor
+
+    // Annotated constructor first, then the one whose parameter names (javac -parameters) match the columns,
+    // then the only one with as many parameters as there are columns
+    protected static Constructor<?> selectConstructor(Class<?> type, FbSqlResultReader reader) throws FbSqlException {
+        int count = reader.getColumnCount();
+        ArrayList<Constructor<?>> annotated = new ArrayList<>();
+        ArrayList<Constructor<?>> candidates = new ArrayList<>();
+        ArrayList<Constructor<?>> named = new ArrayList<>();
+        for (Constructor<?> ctor : type.getDeclaredConstructors()) {
+            if (ctor.isAnnotationPresent(MappingConstructor.class)) {
+                annotated.add(ctor);
+            }
+            if (ctor.getParameterCount()!=count) {
+                continue;
+            }
+            candidates.add(ctor);
+            if (matchParameterNames(ctor, reader)!=null) {
+                named.add(ctor);
+            }
+        }
+        if (annotated.size()>1) {
+            throw new FbSqlException("More than one @MappingConstructor in class: " + type.getName());
+        }
+        if (annotated.size()==1) {
+            if (annotated.get(0).getParameterCount()!=count) {
+                throw new FbSqlException("@MappingConstructor of class " + type.getName() + " takes "
+                        + annotated.get(0).getParameterCount() + " arguments, the result has " + count + " columns");
+            }
+            return annotated.get(0);
+        }
+        if (named.size()==1) {
+            return named.get(0);
+        }
+        if (candidates.size()==1) {
+            return candidates.get(0);
+        }
+        if (candidates.isEmpty()) {
+            throw new FbSqlException("No usable constructor for class: " + type.getName());
+        }
+        throw new FbSqlException("Ambiguous constructors for class " + type.getName() + ": " + candidates.size()
+                + " constructors take " + count + " arguments (use @FbSqlRowMapper.MappingConstructor)");
+    }//selectConstructor
+
+    // Argument index per column when the parameter names are available and match the columns, null otherwise
+    protected static int[] matchParameterNames(Constructor<?> ctor, FbSqlResultReader reader) {
+        Parameter[] params = ctor.getParameters();
+        if (params.length!=reader.getColumnCount()) {
+            return null;
+        }
+        HashMap<String, Integer> positions = new HashMap<>();
+        for (int p=0; p<params.length; p++) {
+            if (!params[p].isNamePresent()) {
+                return null;
+            }
+            positions.put(normalizeName(params[p].getName()), p);
+        }
+        int[] result = new int[params.length];
+        boolean[] used = new boolean[params.length];
+        for (int i=0; i<result.length; i++) {
+            Integer position = positions.get(normalizeName(reader.getColumnName(i+1)));
+            if (position==null || used[position]) {
+                return null;
+            }
+            used[position] = true;
+            result[i] = position;
+        }
+        return result;
+    }//matchParameterNames
+
+    protected static int[] getArgumentPositions(Constructor<?> ctor, FbSqlResultReader reader) {
+        int[] result = matchParameterNames(ctor, reader);
+        if (result!=null) {
+            return result;
+        }
+        result = new int[reader.getColumnCount()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = i;
+        }
+        return result;
+    }//getArgumentPositions
+
+    protected static String normalizeName(String name) {
+        return name.replace("_", "").toLowerCase();
+    }//normalizeName
+
+    protected static HashMap<String, MethodHandle> collectTargets(Class<?> type) throws IllegalAccessException {
+        HashMap<String, MethodHandle> targets = new HashMap<>();
+        for (Class<?> c = type; c!=null && c!=Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    continue;
+                }
+                String name = normalizeName(field.getName());
+                if (!targets.containsKey(name)) {
+                    field.setAccessible(true);
+                    targets.put(name, LOOKUP.unreflectSetter(field));
+                }
+            }
+        }
+        // Setters take precedence over direct field access
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount()!=1
+                    || !method.getName().startsWith("set") || method.getName().length()<4) {
+                continue;
+            }
+            method.setAccessible(true);
+            targets.put(normalizeName(method.getName().substring(3)), LOOKUP.unreflect(method));
+        }
+        return targets;
+    }//collectTargets
+
+    protected static ValueReader getValueReader(Class<?> target) {
+        if (target==int.class) {
+            return ResultSet::getInt;
+        } else if (target==long.class) {
+            return ResultSet::getLong;
+        } else if (target==double.class) {
+            return ResultSet::getDouble;
+        } else if (target==float.class) {
+            return ResultSet::getFloat;
+        } else if (target==short.class) {
+            return ResultSet::getShort;
+        } else if (target==boolean.class) {
+            return ResultSet::getBoolean;
+        } else if (target==byte.class) {
+            return ResultSet::getByte;
+        } else if (target==char.class) {
+            // NULL and empty strings read as '\0', like NULL numbers read as 0
+            return (rs, i) -> { String v = rs.getString(i); return v==null || v.isEmpty() ? '\0' : v.charAt(0); };
+        } else if (target==Integer.class) {
+            return (rs, i) -> { int v = rs.getInt(i); return rs.wasNull() ? null : v; };
+        } else if (target==Long.class) {
+            return (rs, i) -> { long v = rs.getLong(i); return rs.wasNull() ? null : v; };
+        } else if (target==Double.class) {
+            return (rs, i) -> { double v = rs.getDouble(i); return rs.wasNull() ? null : v; };
+        } else if (target==Float.class) {
+            return (rs, i) -> { float v = rs.getFloat(i); return rs.wasNull() ? null : v; };
+        } else if (target==Short.class) {
+            return (rs, i) -> { short v = rs.getShort(i); return rs.wasNull() ? null : v; };
+        } else if (target==Boolean.class) {
+            return (rs, i) -> { boolean v = rs.getBoolean(i); return rs.wasNull() ? null : v; };
+        } else if (target==Byte.class) {
+            return (rs, i) -> { byte v = rs.getByte(i); return rs.wasNull() ? null : v; };
+        } else if (target==Character.class) {
+            return (rs, i) -> { String v = rs.getString(i); return v==null || v.isEmpty() ? null : v.charAt(0); };
+        } else if (target==String.class) {
+            return ResultSet::getString;
+        } else if (target==BigDecimal.class) {
+            return ResultSet::getBigDecimal;
+        } else if (target==byte[].class) {
+            return ResultSet::getBytes;
+        } else if (target==FbSqlBlob.class) {
+            // Lazy handle, readable until the transaction ends
+            return (rs, i) -> FbSqlBlob.wrap(rs.getBlob(i));
+        } else if (target==java.sql.Blob.class) {
+            return ResultSet::getBlob;
+        } else if (target==Timestamp.class || target==java.util.Date.class) {
+            return ResultSet::getTimestamp;
+        } else if (target==java.sql.Date.class) {
+            return ResultSet::getDate;
+        } else if (target==java.sql.Time.class) {
+            return ResultSet::getTime;
+        } else if (target==java.time.LocalDateTime.class) {
+            return (rs, i) -> { Timestamp v = rs.getTimestamp(i); return v==null ? null : v.toLocalDateTime(); };
+        } else if (target==java.time.LocalDate.class) {
+            return (rs, i) -> { java.sql.Date v = rs.getDate(i); return v==null ? null : v.toLocalDate(); };
+        } else if (target==java.time.LocalTime.class) {
+            return (rs, i) -> { java.sql.Time v = rs.getTime(i); return v==null ? null : v.toLocalTime(); };
+        }
+        // Every primitive type has its own reader above; getObject() would fail on unboxing into one
+        return ResultSet::getObject;
+    }//getValueReader
+
+    @SuppressWarnings("unchecked")
+    public T mapRow(ResultSet results) throws SQLException, FbSqlException {
+        try {
+            if (_byConstructor) {
+                Object[] args = new Object[_readers.length];
+                for (int i=0; i<_readers.length; i++) {
+                    args[_arguments[i]] = _readers[i].read(results, i+1);
+                }
+                return (T) _constructor.invokeExact(args);
+            }
+            Object row = (Object) _constructor.invokeExact();
+            for (int i=0; i<_setters.length; i++) {
+                if (_setters[i]!=null) {
+                    _setters[i].invokeExact(row, _readers[i].read(results, i+1));
+                }
+            }
+            return (T) row;
+        } catch (SQLException | FbSqlException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new FbSqlException("Unable to map row to class: " + _type.getName(), t);
+        }
+    }//mapRow
+}//FbSqlRowMapper
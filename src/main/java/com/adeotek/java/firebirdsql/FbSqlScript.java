@@ -0,0 +1,136 @@
+package com.adeotek.java.firebirdsql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Splits isql style scripts into statements, honoring SET TERM, comments, string literals and quoted identifiers
+public final class FbSqlScript {
+    public static final String DEFAULT_TERMINATOR = ";";
+
+    protected static final Pattern SET_TERM = Pattern.compile("^SET\\s+TERM\\s+(\\S+)$", Pattern.CASE_INSENSITIVE);
+    // isql client commands, not understood by the server
+    protected static final Pattern CLIENT_COMMAND = Pattern.compile(
+            "^SET\\s+(?:SQL\\s+DIALECT|NAMES|ECHO|BAIL|STATS|PLAN|PLANONLY|WARNINGS|LIST|HEADING|COUNT|TIME|BLOBDISPLAY|WIDTH)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    // Ends the current unit of work of the script's transaction (ROLLBACK TO SAVEPOINT is a plain statement)
+    protected static final Pattern TRANSACTION_END = Pattern.compile("^(COMMIT|ROLLBACK)(?:\\s+WORK)?(?:\\s+RETAIN(?:\\s+SNAPSHOT)?)?$",
+            Pattern.CASE_INSENSITIVE);
+    // isql commands that would start another transaction or attachment than the one the script runs in
+    protected static final Pattern TRANSACTION_COMMAND = Pattern.compile("^SET\\s+TRANSACTION\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    // SET AUTODDL [ON | OFF] (SET AUTO for short); without an argument isql toggles it, and it starts ON
+    protected static final Pattern AUTODDL_COMMAND = Pattern.compile("^SET\\s+AUTO(?:DDL)?(?:\\s+(ON|OFF))?$", Pattern.CASE_INSENSITIVE);
+    protected static final Pattern DATABASE_COMMAND = Pattern.compile("^(CONNECT|CREATE\\s+(?:DATABASE|SCHEMA)|DROP\\s+DATABASE)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private FbSqlScript() {}
+
+    public static List<String> split(String script) throws FbSqlException {
+        ArrayList<String> result = new ArrayList<>();
+        if (script==null) {
+            return result;
+        }
+        String terminator = DEFAULT_TERMINATOR;
+        StringBuilder current = new StringBuilder();
+        boolean content = false;
+        int length = script.length();
+        int i = 0;
+        while (i<length) {
+            char c = script.charAt(i);
+            if (c=='-' && i+1<length && script.charAt(i+1)=='-') {
+                int end = script.indexOf('\n', i);
+                end = end<0 ? length : end;
+                current.append(script, i, end);
+                i = end;
+                continue;
+            }
+            if (c=='/' && i+1<length && script.charAt(i+1)=='*') {
+                int end = script.indexOf("*/", i+2);
+                end = end<0 ? length : end+2;
+                current.append(script, i, end);
+                i = end;
+                continue;
+            }
+            if (c=='\'' || c=='"') {
+                // '' and "" are escaped quotes, so scanning to the next quote is enough
+                int end = script.indexOf(c, i+1);
+                end = end<0 ? length : end+1;
+                current.append(script, i, end);
+                i = end;
+                content = true;
+                continue;
+            }
+            if (script.startsWith(terminator, i)) {
+                i += terminator.length();
+                terminator = complete(current, content, terminator, result);
+                current.setLength(0);
+                content = false;
+                continue;
+            }
+            if (!Character.isWhitespace(c)) {
+                content = true;
+            }
+            current.append(c);
+            i++;
+        }
+        complete(current, content, terminator, result);
+        return result;
+    }//split
+
+    // Adds the statement (if any) and returns the terminator in effect for the rest of the script
+    protected static String complete(StringBuilder current, boolean content, String terminator, List<String> result) throws FbSqlException {
+        if (!content) {
+            return terminator;
+        }
+        String statement = current.toString().trim();
+        String command = stripLeadingComments(statement);
+        Matcher setTerm = SET_TERM.matcher(command);
+        if (setTerm.matches()) {
+            return setTerm.group(1);
+        }
+        if (TRANSACTION_COMMAND.matcher(command).matches()) {
+            throw new FbSqlException("Statement " + (result.size()+1) + ": SET TRANSACTION is not supported in scripts,"
+                    + " they run in the caller's transaction (use a FbSqlTransactionProfile when it begins)");
+        }
+        // DDL is committed with the rest of the script's unit of work, which is what AUTODDL OFF asks for
+        Matcher autoDdl = AUTODDL_COMMAND.matcher(command);
+        if (autoDdl.matches()) {
+            if ("OFF".equalsIgnoreCase(autoDdl.group(1))) {
+                return terminator;
+            }
+            throw new FbSqlException("Statement " + (result.size()+1) + ": SET AUTODDL ON is not supported in scripts,"
+                    + " DDL is not committed on its own (add a COMMIT after the DDL statements)");
+        }
+        Matcher database = DATABASE_COMMAND.matcher(command);
+        if (database.matches()) {
+            throw new FbSqlException("Statement " + (result.size()+1) + ": " + database.group(1).toUpperCase().replaceAll("\\s+", " ")
+                    + " is not supported in scripts, they run on the database of the connection");
+        }
+        if (!CLIENT_COMMAND.matcher(command).matches()) {
+            result.add(statement);
+        }
+        return terminator;
+    }//complete
+
+    // "COMMIT" or "ROLLBACK" when statement ends the current unit of work, null for any other statement
+    public static String getTransactionEnd(String statement) {
+        Matcher matcher = TRANSACTION_END.matcher(stripLeadingComments(statement.trim()));
+        return matcher.matches() ? matcher.group(1).toUpperCase() : null;
+    }//getTransactionEnd
+
+    protected static String stripLeadingComments(String statement) {
+        String result = statement;
+        while (true) {
+            if (result.startsWith("--")) {
+                int end = result.indexOf('\n');
+                result = end<0 ? "" : result.substring(end+1).trim();
+            } else if (result.startsWith("/*")) {
+                int end = result.indexOf("*/");
+                result = end<0 ? "" : result.substring(end+2).trim();
+            } else {
+                return result;
+            }
+        }
+    }//stripLeadingComments
+}//FbSqlScript
@@ -0,0 +1,225 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// Aggregates executed statements by SQL fingerprint (literals stripped) and logs the ones above a threshold
+public class FbSqlSlowQueryLog {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlSlowQueryLog.class);
+    protected static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    protected static final int FINGERPRINT_CACHE_SIZE = 1024;
+
+    public static class Entry {
+        protected final String _fingerprint;
+        protected final String _operation;
+        protected final LongAdder _count = new LongAdder();
+        protected final LongAdder _totalNanos = new LongAdder();
+        protected final LongAccumulator _maxNanos = new LongAccumulator(Math::max, 0);
+        protected final LongAdder _rows = new LongAdder();
+
+        public String getFingerprint() { return _fingerprint; }
+        public String getOperation() { return _operation; }
+        public long getCount() { return _count.sum(); }
+        public long getTotalNanos() { return _totalNanos.sum(); }
+        public long getMaxNanos() { return _maxNanos.get(); }
+        public long getRows() { return _rows.sum(); }
+
+        protected Entry(String fingerprint, String operation) {
+            _fingerprint = fingerprint;
+            _operation = operation;
+        }//Entry
+
+        protected void add(long nanos, long rows) {
+            _count.increment();
+            _totalNanos.add(nanos);
+            _maxNanos.accumulate(nanos);
+            if (rows>0) {
+                _rows.add(rows);
+            }
+        }//add
+
+        public JsonObject toJson() {
+            long count = getCount();
+            JsonObject result = new JsonObject();
+            result.addProperty("fingerprint", _fingerprint);
+            result.addProperty("operation", _operation);
+            result.addProperty("count", count);
+            result.addProperty("totalMillis", getTotalNanos() / 1000000.0);
+            result.addProperty("meanMillis", count==0 ? 0 : getTotalNanos() / 1000000.0 / count);
+            result.addProperty("maxMillis", getMaxNanos() / 1000000.0);
+            result.addProperty("rows", getRows());
+            return result;
+        }//toJson
+    }//Entry
+
+    protected final long _thresholdNanos;
+    protected final int _maxFingerprints;
+    protected final ConcurrentHashMap<String, Entry> _entries = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, String> _fingerprints = new ConcurrentHashMap<>();
+    protected final LongAdder _slowCount = new LongAdder();
+    protected final LongAdder _evictions = new LongAdder();
+
+    public long getThresholdMillis() { return _thresholdNanos / 1000000; }
+    public long getSlowCount() { return _slowCount.sum(); }
+    public long getEvictions() { return _evictions.sum(); }
+    public int getSize() { return _entries.size(); }
+
+    // thresholdMillis<0 disables statement logging (aggregation only)
+    public FbSqlSlowQueryLog(long thresholdMillis, int maxFingerprints) {
+        _thresholdNanos = thresholdMillis<0 ? Long.MAX_VALUE : thresholdMillis * 1000000;
+        _maxFingerprints = Math.max(1, maxFingerprints);
+    }//FbSqlSlowQueryLog
+
+    // Strips comments and literals, collapses whitespace and parameter lists, upper-cases unquoted text
+    public static String fingerprint(String sql) {
+        if (sql==null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        boolean space = false;
+        while (i<length) {
+            char c = sql.charAt(i);
+            if (c=='-' && i+1<length && sql.charAt(i+1)=='-') {
+                while (i<length && sql.charAt(i)!='\n') {
+                    i++;
+                }
+                space = true;
+                continue;
+            }
+            if (c=='/' && i+1<length && sql.charAt(i+1)=='*') {
+                int end = sql.indexOf("*/", i+2);
+                i = end<0 ? length : end+2;
+                space = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (space && result.length()>0) {
+                result.append(' ');
+            }
+            space = false;
+            if (c=='\'') {
+                // String literal, '' is an escaped quote
+                i++;
+                while (i<length) {
+                    if (sql.charAt(i)=='\'') {
+                        if (i+1<length && sql.charAt(i+1)=='\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                result.append('?');
+                continue;
+            }
+            if (c=='"') {
+                int end = sql.indexOf('"', i+1);
+                end = end<0 ? length : end+1;
+                result.append(sql, i, end);
+                i = end;
+                continue;
+            }
+            char previous = result.length()==0 ? ' ' : result.charAt(result.length()-1);
+            boolean identifier = Character.isLetterOrDigit(previous) || previous=='_' || previous=='$';
+            if (!identifier && (Character.isDigit(c) || (c=='.' && i+1<length && Character.isDigit(sql.charAt(i+1))))) {
+                while (i<length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i)=='.')) {
+                    i++;
+                }
+                result.append('?');
+                continue;
+            }
+            result.append(Character.toUpperCase(c));
+            i++;
+        }
+        return PARAMETER_LIST.matcher(result).replaceAll("?+");
+    }//fingerprint
+
+    protected String getFingerprint(String statement) {
+        String result = _fingerprints.get(statement);
+        if (result==null) {
+            result = fingerprint(statement);
+            if (_fingerprints.size()>=FINGERPRINT_CACHE_SIZE) {
+                _fingerprints.clear();
+            }
+            _fingerprints.put(statement, result);
+        }
+        return result;
+    }//getFingerprint
+
+    // statement is the SQL text, or the procedure/table name (statement count for batches) for the other calls
+    public void record(FbSqlMetrics.Operation operation, String statement, long nanos, long rows) {
+        boolean named = operation==FbSqlMetrics.Operation.EXECUTE_PROCEDURE
+                || operation==FbSqlMetrics.Operation.EXECUTE_SELECTABLE_PROCEDURE
+                || operation==FbSqlMetrics.Operation.EXECUTE_BULK_INSERT
+                || operation==FbSqlMetrics.Operation.EXECUTE_BATCH;
+        String fingerprint = named ? operation.getName() + " [" + statement + "]" : getFingerprint(statement);
+        Entry entry = _entries.get(fingerprint);
+        if (entry==null) {
+            if (_entries.size()>=_maxFingerprints) {
+                evict();
+            }
+            entry = _entries.computeIfAbsent(fingerprint, k -> new Entry(k, operation.getName()));
+        }
+        entry.add(nanos, rows);
+        if (nanos>=_thresholdNanos) {
+            _slowCount.increment();
+            appLogger.warn("Slow query (" + (nanos / 1000000) + " ms, " + rows + " rows) "
+                    + (named ? fingerprint : operation.getName() + ": " + statement));
+        }
+    }//record
+
+    // Drops the fingerprint with the lowest total time to make room for a new one
+    protected synchronized void evict() {
+        if (_entries.size()<_maxFingerprints) {
+            return;
+        }
+        Entry lowest = null;
+        for (Entry entry : _entries.values()) {
+            if (lowest==null || entry.getTotalNanos()<lowest.getTotalNanos()) {
+                lowest = entry;
+            }
+        }
+        if (lowest!=null && _entries.remove(lowest._fingerprint, lowest)) {
+            _evictions.increment();
+        }
+    }//evict
+
+    // Ordered by total time, descending
+    public List<Entry> getTop(int count) {
+        List<Entry> result = new ArrayList<>(_entries.values());
+        result.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+        return result.size()>count ? new ArrayList<>(result.subList(0, Math.max(0, count))) : result;
+    }//getTop
+
+    public JsonArray getTopJson(int count) {
+        JsonArray result = new JsonArray();
+        for (Entry entry : getTop(count)) {
+            result.add(entry.toJson());
+        }
+        return result;
+    }//getTopJson
+
+    public void reset() {
+        _entries.clear();
+        _slowCount.reset();
+        _evictions.reset();
+    }//reset
+}//FbSqlSlowQueryLog
@@ -0,0 +1,93 @@
+package com.adeotek.java.firebirdsql;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FbSqlStatementCache {
+    protected static final Logger appLogger = LogManager.getLogger(FbSqlStatementCache.class);
+
+    protected final Connection _connection;
+    protected final int _maxSize;
+    protected final LinkedHashMap<String, PreparedStatement> _statements;
+    protected long _hits = 0;
+    protected long _misses = 0;
+
+    public long getHits() { return _hits; }
+    public long getMisses() { return _misses; }
+    public int getSize() { return _statements.size(); }
+    public int getMaxSize() { return _maxSize; }
+
+    public FbSqlStatementCache(Connection connection, int maxSize) {
+        _connection = connection;
+        _maxSize = Math.max(1, maxSize);
+        // Access-ordered, so the eldest entry is always the least recently used one
+        _statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size()<=_maxSize) {
+                    return false;
+                }
+                closeStatement(eldest.getValue());
+                return true;
+            }
+        };
+    }//FbSqlStatementCache
+
+    public Connection getConnection() { return _connection; }
+
+    public PreparedStatement prepare(String query) throws SQLException {
+        PreparedStatement statement = _statements.get(query);
+        if (statement!=null && !statement.isClosed()) {
+            _hits++;
+            statement.clearParameters();
+            return statement;
+        }
+        _misses++;
+        statement = _connection.prepareStatement(query);
+        _statements.put(query, statement);
+        return statement;
+    }//prepare
+
+    // Call escapes ({call ...}) never collide with plain statement text, so both share the same LRU
+    public CallableStatement prepareCall(String call) throws SQLException {
+        PreparedStatement statement = _statements.get(call);
+        if (statement instanceof CallableStatement && !statement.isClosed()) {
+            _hits++;
+            statement.clearParameters();
+            return (CallableStatement) statement;
+        }
+        _misses++;
+        CallableStatement result = _connection.prepareCall(call);
+        _statements.put(call, result);
+        return result;
+    }//prepareCall
+
+    public void evict(String query) {
+        closeStatement(_statements.remove(query));
+    }//evict
+
+    public void clear() {
+        for (PreparedStatement statement : _statements.values()) {
+            closeStatement(statement);
+        }
+        _statements.clear();
+    }//clear
+
+    protected void closeStatement(PreparedStatement statement) {
+        if (statement==null) {
+            return;
+        }
+        try {
+            statement.close();
+        } catch (SQLException se) {
+            appLogger.warn(se.getClass().getSimpleName() + ": " + se.getMessage());
+        }
+    }//closeStatement
+}//FbSqlStatementCache
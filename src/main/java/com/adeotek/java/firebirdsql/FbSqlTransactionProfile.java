@@ -0,0 +1,81 @@
+package com.adeotek.java.firebirdsql;
+
+import org.firebirdsql.gds.TransactionParameterBuffer;
+import org.firebirdsql.jca.FBResourceException;
+import org.firebirdsql.jdbc.FBTpbMapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Named transaction parameter buffer (TPB), applied to a single physical connection instead of the shared defaults
+public final class FbSqlTransactionProfile {
+    public static final int DEFAULT_LOCK_TIMEOUT = 10;
+
+    // Same parameters as the connection defaults (FB_TRAN_DEFAULT_PROPERTIES)
+    public static final FbSqlTransactionProfile READ_WRITE = new FbSqlTransactionProfile("READ_WRITE",
+            "isc_tpb_read_committed,isc_tpb_rec_version,isc_tpb_write,isc_tpb_wait");
+    // Read-only read committed transactions are pre-committed by the server: they do not hold back the oldest active
+    public static final FbSqlTransactionProfile READ_ONLY = new FbSqlTransactionProfile("READ_ONLY",
+            "isc_tpb_read_committed,isc_tpb_rec_version,isc_tpb_read");
+    public static final FbSqlTransactionProfile SNAPSHOT = new FbSqlTransactionProfile("SNAPSHOT",
+            "isc_tpb_concurrency,isc_tpb_write,isc_tpb_wait");
+    // Consistent reports; keep these short, a long snapshot stops garbage collection
+    public static final FbSqlTransactionProfile SNAPSHOT_READ_ONLY = new FbSqlTransactionProfile("SNAPSHOT_READ_ONLY",
+            "isc_tpb_concurrency,isc_tpb_read,isc_tpb_nowait");
+    // Fails immediately on update conflicts instead of waiting for the lock
+    public static final FbSqlTransactionProfile NOWAIT = new FbSqlTransactionProfile("NOWAIT",
+            "isc_tpb_read_committed,isc_tpb_rec_version,isc_tpb_write,isc_tpb_nowait");
+
+    public interface Work<T> {
+        T call(String transaction) throws FbSqlException;
+    }//Work
+
+    protected final String _name;
+    protected final String _parameters;
+    protected final boolean _wait;
+    // Parsed buffers per effective lock timeout; callers always get a copy
+    protected final ConcurrentHashMap<Integer, TransactionParameterBuffer> _buffers = new ConcurrentHashMap<>();
+
+    public String getName() { return _name; }
+    public String getParameters() { return _parameters; }
+
+    protected FbSqlTransactionProfile(String name, String parameters) {
+        _name = name;
+        _parameters = parameters;
+        _wait = !parameters.contains("isc_tpb_nowait") && !parameters.contains("isc_tpb_lock_timeout");
+    }//FbSqlTransactionProfile
+
+    // parameters: comma separated isc_tpb_* names, same syntax as the Jaybird TRANSACTION_* mapping properties
+    public static FbSqlTransactionProfile custom(String name, String parameters) throws FbSqlException {
+        if (Helpers.isStringEmptyOrNull(name) || Helpers.isStringEmptyOrNull(parameters)) {
+            throw new FbSqlException("Invalid transaction profile");
+        }
+        FbSqlTransactionProfile result = new FbSqlTransactionProfile(name, parameters.replaceAll("\\s", ""));
+        result.getTransactionParameters(-1);
+        return result;
+    }//custom
+
+    public FbSqlTransactionProfile withLockTimeout(int seconds) throws FbSqlException {
+        String parameters = _parameters.replaceAll(",?isc_tpb_(?:no)?wait|,?isc_tpb_lock_timeout=\\d+", "");
+        return custom(_name, parameters + ",isc_tpb_wait,isc_tpb_lock_timeout=" + seconds);
+    }//withLockTimeout
+
+    // Waiting profiles without an explicit timeout get the connection lock timeout (lockTimeout<0: the default one)
+    public TransactionParameterBuffer getTransactionParameters(int lockTimeout) throws FbSqlException {
+        int timeout = !_wait ? -1 : (lockTimeout<0 ? DEFAULT_LOCK_TIMEOUT : lockTimeout);
+        TransactionParameterBuffer result = _buffers.get(timeout);
+        if (result==null) {
+            try {
+                result = FBTpbMapper.processMapping(timeout<0 ? _parameters : _parameters + ",isc_tpb_lock_timeout=" + timeout);
+            } catch (FBResourceException re) {
+                throw new FbSqlException("Invalid transaction profile " + _name + ": " + re.getMessage(), re);
+            }
+            _buffers.put(timeout, result);
+        }
+        return result.deepCopy();
+    }//getTransactionParameters
+
+    @Override
+    public String toString() {
+        return _name + " [" + _parameters + "]";
+    }//toString
+}//FbSqlTransactionProfile
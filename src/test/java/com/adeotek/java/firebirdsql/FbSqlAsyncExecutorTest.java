@@ -0,0 +1,155 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FbSqlAsyncExecutorTest {
+    @Test
+    public void limitIsSharedPerDatabase() throws Throwable {
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        FbSqlAsyncExecutor first = new FbSqlAsyncExecutor(threads, "localhost:3050/shared.fdb", 2);
+        FbSqlAsyncExecutor second = new FbSqlAsyncExecutor(threads, "localhost:3050/shared.fdb", 5);
+        try {
+            // The first executor's limit stays in force
+            assertEquals(2, second.getMaxConcurrency());
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            List<CompletableFuture<Integer>> results = new ArrayList<>();
+            for (int i=0; i<12; i++) {
+                FbSqlAsyncExecutor executor = i%2==0 ? first : second;
+                results.add(executor.submit("T" + i, () -> {
+                    peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    active.decrementAndGet();
+                    return 1;
+                }));
+            }
+            for (CompletableFuture<Integer> result : results) {
+                assertEquals(Integer.valueOf(1), result.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue("peak " + peak.get(), peak.get()<=2);
+        } finally {
+            first.close();
+            second.close();
+            threads.shutdownNow();
+        }
+    }//limitIsSharedPerDatabase
+
+    @Test
+    public void unusedLimitsAreRemoved() throws Throwable {
+        FbSqlAsyncExecutor executor = new FbSqlAsyncExecutor(Runnable::run, "localhost:3050/removed.fdb", 3);
+        assertEquals(Integer.valueOf(7), executor.submit("T", () -> 7).get());
+        assertTrue(FbSqlAsyncExecutor._databaseLimits.containsKey("localhost:3050/removed.fdb"));
+        executor.close();
+        assertFalse(FbSqlAsyncExecutor._databaseLimits.containsKey("localhost:3050/removed.fdb"));
+        try {
+            executor.submit("T", () -> 7).get();
+            fail("Closed executor accepted a call");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof FbSqlException);
+        }
+        // A new executor starts from its own limit
+        FbSqlAsyncExecutor next = new FbSqlAsyncExecutor(Runnable::run, "localhost:3050/removed.fdb", 5);
+        assertEquals(5, next.getMaxConcurrency());
+        next.close();
+    }//unusedLimitsAreRemoved
+
+    @Test
+    public void limitOutlivesClosedExecutorUntilPermitsReturn() throws Throwable {
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        FbSqlAsyncExecutor executor = new FbSqlAsyncExecutor(threads, "localhost:3050/draining.fdb", 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Integer> result = executor.submit("T", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            });
+            executor.close();
+            // Still holding its permit, so a new executor must not get a fresh limit
+            assertTrue(FbSqlAsyncExecutor._databaseLimits.containsKey("localhost:3050/draining.fdb"));
+            release.countDown();
+            assertEquals(Integer.valueOf(1), result.get(10, TimeUnit.SECONDS));
+            assertFalse(FbSqlAsyncExecutor._databaseLimits.containsKey("localhost:3050/draining.fdb"));
+        } finally {
+            threads.shutdownNow();
+        }
+    }//limitOutlivesClosedExecutorUntilPermitsReturn
+
+    @Test
+    public void rejectedWaitersAreDrainedWithoutRecursion() throws Throwable {
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        FbSqlAsyncExecutor executor = new FbSqlAsyncExecutor(threads, "localhost:3050/rejecting.fdb", 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Integer> running = executor.submit("T", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            });
+            // All of these wait for the single permit, then get rejected one after another
+            List<CompletableFuture<Integer>> waiting = new ArrayList<>();
+            for (int i=0; i<20000; i++) {
+                waiting.add(executor.submit("W" + i, () -> 1));
+            }
+            assertEquals(20000, executor._limit.getWaiting());
+            threads.shutdown();
+            release.countDown();
+            assertEquals(Integer.valueOf(1), running.get(10, TimeUnit.SECONDS));
+            for (CompletableFuture<Integer> result : waiting) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    fail("Call ran on a shut down executor");
+                } catch (ExecutionException ee) {
+                    assertTrue(ee.getCause() instanceof FbSqlException);
+                }
+            }
+            assertEquals(1, executor._limit.getAvailable());
+            assertEquals(0, executor._limit.getWaiting());
+        } finally {
+            executor.close();
+            threads.shutdownNow();
+        }
+    }//rejectedWaitersAreDrainedWithoutRecursion
+
+    @Test
+    public void executorIsNotReplacedWhileCallsArePending() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection conn = driver.attach(new FbSqlConnection("/data/swap.fdb", "localhost", "SYSDBA", "masterkey"));
+        // Holds submitted calls until they are run by hand
+        List<Runnable> queued = new CopyOnWriteArrayList<>();
+        conn.setAsyncExecutor(queued::add, 2);
+        conn.beginTransaction("T", false);
+        CompletableFuture<Integer> pending = conn.executeQueryAsync("UPDATE A SET B = 1", "T");
+        FbSqlAsyncExecutor first = conn._asyncExecutor;
+        try {
+            conn.setAsyncExecutor(null, 4);
+            fail("Executor replaced while a call was pending");
+        } catch (FbSqlException fe) {
+            assertSame(first, conn._asyncExecutor);
+        }
+        queued.remove(0).run();
+        assertEquals(Integer.valueOf(1), pending.get(10, TimeUnit.SECONDS));
+        conn.setAsyncExecutor(Runnable::run, 4);
+        assertNull(conn._asyncExecutor);
+        assertEquals(Integer.valueOf(1), conn.executeQueryAsync("UPDATE A SET B = 2", "T").get(10, TimeUnit.SECONDS));
+        assertNotSame(first, conn._asyncExecutor);
+        conn.destroy();
+    }//executorIsNotReplacedWhileCallsArePending
+}//FbSqlAsyncExecutorTest
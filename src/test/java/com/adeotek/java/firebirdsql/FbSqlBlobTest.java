@@ -0,0 +1,70 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class FbSqlBlobTest {
+    protected static byte[] content(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }//content
+
+    @Test
+    public void transfersSmallAndLargeValues() throws Throwable {
+        for (int length : new int[]{0, 1, 100, FbSqlBlob.DEFAULT_BUFFER_SIZE - 1, FbSqlBlob.DEFAULT_BUFFER_SIZE, 300000}) {
+            byte[] expected = content(length);
+            FbSqlBlob blob = new FbSqlBlob(new SerialBlob(expected));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertEquals(length, blob.transferTo(output));
+            assertArrayEquals(expected, output.toByteArray());
+            output.reset();
+            assertEquals(length, blob.transferTo(Channels.newChannel(output)));
+            assertArrayEquals(expected, output.toByteArray());
+            assertArrayEquals(expected, blob.readBytes());
+        }
+    }//transfersSmallAndLargeValues
+
+    @Test
+    public void readsMultiByteStrings() throws Throwable {
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'ă');
+        for (String expected : new String[]{"", "abc", "țără", new String(chars)}) {
+            assertEquals(expected, FbSqlBlob.readString(new SerialBlob(expected.getBytes(StandardCharsets.UTF_8))));
+        }
+    }//readsMultiByteStrings
+
+    @Test
+    public void keepsABoundedNumberOfBuffers() throws Throwable {
+        byte[] expected = content(200000);
+        ExecutorService executor = Executors.newFixedThreadPool(FbSqlBlob.POOL_SIZE * 4);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i=0; i<FbSqlBlob.POOL_SIZE * 16; i++) {
+                futures.add(executor.submit(() -> {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    FbSqlBlob.copy(new SerialBlob(expected).getBinaryStream(), output);
+                    return output.toByteArray();
+                }));
+            }
+            for (Future<byte[]> future : futures) {
+                assertArrayEquals(expected, future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(FbSqlBlob.BUFFERS.size()>0);
+        assertTrue(FbSqlBlob.BUFFERS.size()<=FbSqlBlob.POOL_SIZE);
+    }//keepsABoundedNumberOfBuffers
+}//FbSqlBlobTest
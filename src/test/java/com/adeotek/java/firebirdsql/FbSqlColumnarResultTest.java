@@ -0,0 +1,80 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+import java.sql.*;
+
+import static org.junit.Assert.*;
+
+public class FbSqlColumnarResultTest {
+    protected static final String[] NAMES = {"ID", "AMOUNT", "NAME", "DATA", "CREATED", "DAY", "AT"};
+    protected static final String[] TYPES = {"INTEGER", "DECIMAL", "VARCHAR", "BLOB SUB_TYPE 0", "TIMESTAMP", "DATE", "TIME"};
+
+    // Forward-only result set over rows; getString() formats temporal values the way the driver does, not like toString()
+    protected static ResultSet results(Object[][] rows) {
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        ResultSetMetaData metaData = (ResultSetMetaData) FbSqlTestDriver.proxy(ResultSetMetaData.class, (o, m, args) -> {
+            switch (m.getName()) {
+                case "getColumnCount": return NAMES.length;
+                case "getColumnName":
+                case "getColumnLabel": return NAMES[(Integer) args[0] - 1];
+                case "getColumnTypeName": return TYPES[(Integer) args[0] - 1];
+                case "getColumnType": return Types.OTHER;
+                default: return null;
+            }
+        });
+        return (ResultSet) FbSqlTestDriver.proxy(ResultSet.class, (o, m, args) -> {
+            if (m.getName().equals("next")) {
+                return ++row[0]<rows.length;
+            }
+            if (m.getName().equals("getMetaData")) {
+                return metaData;
+            }
+            if (m.getName().equals("wasNull")) {
+                return wasNull[0];
+            }
+            if (args==null || args.length!=1 || !(args[0] instanceof Integer)) {
+                return null;
+            }
+            Object value = rows[row[0]][(Integer) args[0] - 1];
+            wasNull[0] = value==null;
+            switch (m.getName()) {
+                case "getInt": return value==null ? 0 : ((Number) value).intValue();
+                case "getLong": return value==null ? 0L : ((Number) value).longValue();
+                case "getDouble": return value==null ? 0.0 : ((Number) value).doubleValue();
+                case "getBlob": return value==null ? null : new SerialBlob((byte[]) value);
+                case "getString":
+                    if (value instanceof byte[]) {
+                        return new String((byte[]) value);
+                    }
+                    return value instanceof java.util.Date ? "driver:" + value : (value==null ? null : value.toString());
+                default: return value;
+            }
+        });
+    }//results
+
+    @Test
+    public void jsonMatchesTheRowReader() throws Throwable {
+        Object[][] rows = {
+                {1, 2.5, "a", new byte[]{1, 2, 3}, Timestamp.valueOf("2020-01-02 03:04:05.6"), Date.valueOf("2020-01-02"), Time.valueOf("03:04:05")},
+                {null, null, null, null, null, null, null},
+                {3, 4.0, "a", new byte[]{(byte) 0xff}, Timestamp.valueOf("2021-12-31 23:59:59"), Date.valueOf("2021-12-31"), Time.valueOf("23:59:59")}
+        };
+        FbSqlResultReader reader = new FbSqlResultReader(results(rows).getMetaData());
+        JsonArray expected = new JsonArray();
+        ResultSet source = results(rows);
+        while (source.next()) {
+            expected.add(reader.readRow(source));
+        }
+        FbSqlColumnarResult columnar = FbSqlColumnarResult.fromResultSet(results(rows), reader);
+        assertEquals(expected, columnar.toJsonArray());
+        // Null flags are still kept for the columnar accessors
+        assertTrue(columnar.isNull(0, 1));
+        assertEquals(0, columnar.getIntColumn(0)[1]);
+        assertEquals("AQID", columnar.getString(3, 0));
+        assertEquals("2020-01-02 03:04:05.6", columnar.getString(4, 0));
+    }//jsonMatchesTheRowReader
+}//FbSqlColumnarResultTest
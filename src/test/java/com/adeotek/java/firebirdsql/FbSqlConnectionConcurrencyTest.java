@@ -0,0 +1,152 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class FbSqlConnectionConcurrencyTest {
+    protected static final long LATENCY = 5;
+    protected static final int STATEMENTS = 40;
+
+    // FbSqlException is not an Exception, so it cannot leave a Callable directly
+    protected interface Work {
+        void run() throws Throwable;
+    }//Work
+
+    protected static Callable<Void> task(Work work) {
+        return () -> {
+            try {
+                work.run();
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new ExecutionException(t);
+            }
+            return null;
+        };
+    }//task
+
+    protected static FbSqlConnection newConnection(FbSqlTestDriver driver) {
+        return driver.attach(new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey"));
+    }//newConnection
+
+    // Runs STATEMENTS statements on each transaction, one thread per transaction, and returns the elapsed millis
+    protected static long run(FbSqlConnection conn, List<String> transactions, int threads) throws Throwable {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (String tran : transactions) {
+                futures.add(executor.submit(task(() -> {
+                    start.await();
+                    for (int i=0; i<STATEMENTS; i++) {
+                        conn.executeQuery("UPDATE T SET A = A + 1", tran);
+                    }
+                })));
+            }
+            long ts = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ts);
+        } finally {
+            executor.shutdownNow();
+        }
+    }//run
+
+    protected static List<String> begin(FbSqlConnection conn, String prefix, int count) throws FbSqlException {
+        List<String> result = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            conn.beginTransaction(prefix + i, false);
+            result.add(prefix + i);
+        }
+        return result;
+    }//begin
+
+    @Test
+    public void separateTransactionsRunInParallel() throws Throwable {
+        int threads = 8;
+        FbSqlTestDriver driver = new FbSqlTestDriver(LATENCY);
+        FbSqlConnection conn = newConnection(driver);
+        List<String> transactions = begin(conn, "T", threads);
+        // Same total work: one thread walking through all transactions vs. one thread per transaction
+        long serial = 0;
+        for (String tran : transactions) {
+            serial += run(conn, Collections.singletonList(tran), 1);
+        }
+        long parallel = run(conn, transactions, threads);
+        for (String tran : transactions) {
+            conn.commitTransaction(tran);
+        }
+        assertEquals(0, driver.getOverlaps());
+        assertTrue("serial " + serial + " ms, parallel " + parallel + " ms", serial>3*parallel);
+    }//separateTransactionsRunInParallel
+
+    @Test
+    public void sameTransactionIsNeverUsedConcurrently() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(1);
+        FbSqlConnection conn = newConnection(driver);
+        conn.beginTransaction("SHARED", false);
+        List<String> transactions = new ArrayList<>();
+        for (int i=0; i<8; i++) {
+            transactions.add("SHARED");
+        }
+        run(conn, transactions, transactions.size());
+        conn.commitTransaction("SHARED");
+        assertEquals(0, driver.getOverlaps());
+        assertEquals(driver.getOpened(), driver.getClosed());
+    }//sameTransactionIsNeverUsedConcurrently
+
+    @Test
+    public void endedTransactionsReleaseTheirLocks() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection conn = newConnection(driver);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t=0; t<8; t++) {
+                int thread = t;
+                futures.add(executor.submit(task(() -> {
+                    for (int i=0; i<250; i++) {
+                        String tran = "ADHOC-" + thread + "-" + i;
+                        conn.beginTransaction(tran, false);
+                        conn.executeQuery("UPDATE T SET A = 1", tran);
+                        switch (i % 3) {
+                            case 0: conn.commitTransaction(tran); break;
+                            case 1: conn.rollbackTransaction(tran); break;
+                            default: conn.closeTransaction(tran); break;
+                        }
+                    }
+                })));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(conn._transactions.isEmpty());
+        assertTrue("leaked locks: " + conn._transactionLocks.keySet(), conn._transactionLocks.isEmpty());
+        assertEquals(2000, driver.getOpened());
+        assertEquals(2000, driver.getClosed());
+    }//endedTransactionsReleaseTheirLocks
+
+    @Test
+    public void statementsOnAnEndedTransactionFail() throws Throwable {
+        FbSqlConnection conn = newConnection(new FbSqlTestDriver(0));
+        conn.beginTransaction("ONCE", false);
+        conn.commitTransaction("ONCE");
+        try {
+            conn.executeQuery("UPDATE T SET A = 1", "ONCE");
+            fail("Statement ran on a committed transaction");
+        } catch (FbSqlException e) {
+            assertTrue(conn._transactionLocks.isEmpty());
+        }
+    }//statementsOnAnEndedTransactionFail
+}//FbSqlConnectionConcurrencyTest
@@ -0,0 +1,53 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class FbSqlMetricsTest {
+    protected static boolean isRegistered(String database) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.isRegistered(new ObjectName(FbSqlMetrics.JMX_DOMAIN + ":type=FbSqlMetrics,name=" + ObjectName.quote(database)));
+    }//isRegistered
+
+    @Test
+    public void namesLeaveOutTypeAndParameters() {
+        assertEquals("dbhost:3050//data/app.fdb", FbSqlMetrics.getName("jdbc:firebirdsql://dbhost:3050//data/app.fdb?user=SYSDBA&password=secret"));
+        assertEquals("dbhost/3051:/data/app.fdb", FbSqlMetrics.getName("jdbc:firebirdsql:native:dbhost/3051:/data/app.fdb?password=secret&encoding=UTF8"));
+        assertEquals("localhost:3050//data/app.fdb", FbSqlMetrics.getName("jdbc:firebirdsql:local://localhost:3050//data/app.fdb"));
+    }//namesLeaveOutTypeAndParameters
+
+    @Test
+    public void mbeanLivesWhileConnectionsUseIt() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection first = driver.attach(new FbSqlConnection("jdbc:firebirdsql://dbhost:3050//data/metrics.fdb?password=secret", "SYSDBA", "secret"));
+        FbSqlConnection second = driver.attach(new FbSqlConnection(first));
+        String name = "dbhost:3050//data/metrics.fdb";
+        assertEquals(name, first.getMetrics().getDatabase());
+        assertSame(first.getMetrics(), second.getMetrics());
+        assertTrue(isRegistered(name));
+        assertFalse(first.getMetrics().getSnapshotJson().contains("secret"));
+        first.destroy();
+        assertTrue(isRegistered(name));
+        second.destroy();
+        assertFalse(isRegistered(name));
+        assertNull(FbSqlMetrics.getMetrics(name));
+    }//mbeanLivesWhileConnectionsUseIt
+
+    @Test
+    public void closingTheLastPoolUnregisters() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection conn = driver.attach(new FbSqlConnection("/data/pooled.fdb", "dbhost", "SYSDBA", "secret"));
+        conn.setPoolOptions(0, 2, 60000, 60000);
+        conn.beginTransaction("T", false);
+        conn.commitTransaction("T");
+        String name = FbSqlMetrics.getName(conn.prepareConnectionString());
+        assertTrue(isRegistered(name));
+        FbSqlConnectionPool.closeAll();
+        assertFalse(isRegistered(name));
+    }//closingTheLastPoolUnregisters
+}//FbSqlMetricsTest
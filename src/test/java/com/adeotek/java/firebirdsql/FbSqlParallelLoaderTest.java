@@ -0,0 +1,157 @@
+package com.adeotek.java.firebirdsql;
+
+import org.firebirdsql.ds.FBXADataSource;
+import org.junit.Test;
+
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAResource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class FbSqlParallelLoaderTest {
+    // {rows, workers}: slice sizes that do not divide evenly, more workers than rows, single row
+    protected static final int[][] SPLITS = {{5, 4}, {7, 6}, {10, 3}, {9, 4}, {3, 8}, {1, 1}, {8, 8}};
+    protected static final String[] FIELDS = {"ID", "NAME"};
+
+    // XA branches backed by test driver connections; every XA call is logged as "<call> <branch>"
+    protected static class TestLoader extends FbSqlParallelLoader {
+        protected final FbSqlTestDriver _driver;
+        protected final List<String> _xaLog = new CopyOnWriteArrayList<>();
+
+        protected TestLoader(FbSqlTestDriver driver, FbSqlConnection source, int workers, Mode mode) {
+            super(source, workers, mode);
+            _driver = driver;
+        }//TestLoader
+
+        protected int count(String call) {
+            int result = 0;
+            for (String entry : _xaLog) {
+                if (entry.startsWith(call + " ")) {
+                    result++;
+                }
+            }
+            return result;
+        }//count
+
+        @Override
+        protected XAConnection openXAConnection() throws FbSqlException {
+            Connection connection;
+            try {
+                connection = _driver.connect("jdbc:firebirdsql://localhost:3050//data/test.fdb", new Properties());
+            } catch (SQLException se) {
+                throw new FbSqlException(se);
+            }
+            XAResource resource = (XAResource) FbSqlTestDriver.proxy(XAResource.class, (o, m, args) -> {
+                if (args!=null && args.length>0 && args[0] instanceof LoaderXid) {
+                    _xaLog.add(m.getName() + " " + ((LoaderXid) args[0]).getBranchQualifier()[3]);
+                }
+                switch (m.getName()) {
+                    case "prepare": return XAResource.XA_OK;
+                    case "hashCode": return System.identityHashCode(o);
+                    case "equals": return o==args[0];
+                    default: return null;
+                }
+            });
+            return (XAConnection) FbSqlTestDriver.proxy(XAConnection.class, (o, m, args) -> {
+                switch (m.getName()) {
+                    case "getConnection": return connection;
+                    case "getXAResource": return resource;
+                    case "close": connection.close(); return null;
+                    case "hashCode": return System.identityHashCode(o);
+                    case "equals": return o==args[0];
+                    default: return null;
+                }
+            });
+        }//openXAConnection
+    }//TestLoader
+
+    protected static List<Object[]> rows(int count, int failAt) {
+        List<Object[]> result = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            result.add(new Object[]{i, i==failAt ? "FAIL" : "Row " + i});
+        }
+        return result;
+    }//rows
+
+    protected static FbSqlConnection newConnection(FbSqlTestDriver driver) {
+        return driver.attach(new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey"));
+    }//newConnection
+
+    // Workers that actually get rows: slices of ceil(rows/workers)
+    protected static int expectedWorkers(int rows, int workers) {
+        int sliceSize = (rows + Math.min(rows, workers) - 1) / Math.min(rows, workers);
+        return (rows + sliceSize - 1) / sliceSize;
+    }//expectedWorkers
+
+    @Test
+    public void bestEffortLoadsUnevenSlices() throws Throwable {
+        for (int[] split : SPLITS) {
+            FbSqlTestDriver driver = new FbSqlTestDriver(0);
+            TestLoader loader = new TestLoader(driver, newConnection(driver), split[1], FbSqlParallelLoader.Mode.BEST_EFFORT);
+            loader.setBatchSize(2);
+            FbSqlParallelLoader.Result result = loader.load("T", FIELDS, rows(split[0], -1));
+            String message = split[0] + " rows / " + split[1] + " workers";
+            assertTrue(message, result.isSuccessful());
+            assertEquals(message, split[0], result.getRows());
+            assertEquals(message, split[0], driver.getBatchedRows());
+            assertEquals(message, expectedWorkers(split[0], split[1]), result.getWorkers());
+            assertEquals(message, driver.getOpened(), driver.getClosed());
+        }
+    }//bestEffortLoadsUnevenSlices
+
+    @Test
+    public void allOrNothingLoadsUnevenSlices() throws Throwable {
+        for (int[] split : SPLITS) {
+            FbSqlTestDriver driver = new FbSqlTestDriver(0);
+            TestLoader loader = new TestLoader(driver, newConnection(driver), split[1], FbSqlParallelLoader.Mode.ALL_OR_NOTHING);
+            FbSqlParallelLoader.Result result = loader.load("T", FIELDS, rows(split[0], -1));
+            String message = split[0] + " rows / " + split[1] + " workers";
+            int workers = expectedWorkers(split[0], split[1]);
+            assertTrue(message, result.isSuccessful());
+            assertEquals(message, split[0], result.getRows());
+            assertEquals(message, workers, result.getWorkers());
+            assertEquals(message, workers, loader.count("start"));
+            assertEquals(message, workers, loader.count("commit"));
+            assertEquals(message, 0, loader.count("rollback"));
+            assertEquals(message, driver.getOpened(), driver.getClosed());
+        }
+    }//allOrNothingLoadsUnevenSlices
+
+    @Test
+    public void failingSliceRollsBackEveryBranch() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        TestLoader loader = new TestLoader(driver, newConnection(driver), 6, FbSqlParallelLoader.Mode.ALL_OR_NOTHING);
+        FbSqlParallelLoader.Result result = loader.load("T", FIELDS, rows(7, 6));
+        assertFalse(result.isSuccessful());
+        assertEquals(0, result.getRows());
+        assertEquals(4, result.getWorkers());
+        assertEquals(4, loader.count("start"));
+        assertEquals(4, loader.count("rollback"));
+        assertEquals(0, loader.count("commit"));
+        assertEquals(driver.getOpened(), driver.getClosed());
+    }//failingSliceRollsBackEveryBranch
+
+    @Test
+    public void xaDataSourceSplitsConnectionString() throws Throwable {
+        FbSqlConnection conn = new FbSqlConnection("/data/test.fdb", "db.example.com", 3051, "SYSDBA", "masterkey", null);
+        FBXADataSource dataSource = conn.getXADataSource();
+        assertEquals("db.example.com", dataSource.getServerName());
+        assertEquals(3051, dataSource.getPortNumber());
+        assertEquals("/data/test.fdb", dataSource.getDatabaseName());
+        FBXADataSource legacy = new FBXADataSource();
+        FbSqlConnection.setXADatabase(legacy, "db.example.com/3052:C:/data/test.fdb");
+        assertEquals("db.example.com", legacy.getServerName());
+        assertEquals(3052, legacy.getPortNumber());
+        assertEquals("C:/data/test.fdb", legacy.getDatabaseName());
+        FBXADataSource embedded = new FBXADataSource();
+        FbSqlConnection.setXADatabase(embedded, "C:/data/test.fdb");
+        assertNull(embedded.getServerName());
+        assertEquals("C:/data/test.fdb", embedded.getDatabaseName());
+    }//xaDataSourceSplitsConnectionString
+}//FbSqlParallelLoaderTest
@@ -0,0 +1,93 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FbSqlProcedureMetadataTest {
+    // Catalog of a database with a major version; rows are {type, name, parameter type, field type, sub type, scale}
+    protected static class Catalog {
+        protected final int _version;
+        protected final List<String> _queries = new ArrayList<>();
+        protected Object[][] _rows = new Object[0][];
+
+        protected Catalog(int version) {
+            _version = version;
+        }//Catalog
+
+        protected ResultSet rows() {
+            int[] position = {-1};
+            return (ResultSet) FbSqlTestDriver.proxy(ResultSet.class, (o, m, args) -> {
+                switch (m.getName()) {
+                    case "next": return ++position[0]<_rows.length;
+                    case "getInt": {
+                        Object value = _rows[position[0]][(Integer) args[0] - 1];
+                        return value==null ? 0 : value;
+                    }
+                    case "getString": return _rows[position[0]][(Integer) args[0] - 1];
+                    default: return null;
+                }
+            });
+        }//rows
+
+        protected Connection connection() {
+            return (Connection) FbSqlTestDriver.proxy(Connection.class, (o, m, args) -> {
+                switch (m.getName()) {
+                    case "getMetaData":
+                        return FbSqlTestDriver.proxy(DatabaseMetaData.class, (mo, mm, margs) ->
+                                mm.getName().equals("getDatabaseMajorVersion") ? (Object) _version : null);
+                    case "prepareStatement":
+                        _queries.add((String) args[0]);
+                        return FbSqlTestDriver.proxy(PreparedStatement.class, (so, sm, sargs) ->
+                                sm.getName().equals("executeQuery") ? rows() : null);
+                    default: return null;
+                }
+            });
+        }//connection
+    }//Catalog
+
+    @Test
+    public void packagedProceduresAreExcludedOnFirebird3() throws Throwable {
+        Catalog catalog = new Catalog(3);
+        catalog._rows = new Object[][]{{2, "ID      ", 0, 8, 0, 0}, {2, "TOTAL", 1, 16, 0, -2}};
+        FbSqlProcedureMetadata.Signature signature = new FbSqlProcedureMetadata().getSignature(catalog.connection(), "ADD_ITEM");
+        assertEquals("ID", signature.getInputs().get(0).getName());
+        assertEquals(Types.NUMERIC, signature.getOutputs().get(0).getSqlType());
+        String query = catalog._queries.get(0);
+        assertTrue(query, query.contains("PP.RDB$PACKAGE_NAME IS NULL"));
+        assertTrue(query, query.contains("AND P.RDB$PACKAGE_NAME IS NULL"));
+    }//packagedProceduresAreExcludedOnFirebird3
+
+    @Test
+    public void olderServersDoNotUsePackageColumns() throws Throwable {
+        Catalog catalog = new Catalog(2);
+        catalog._rows = new Object[][]{{1, null, 0, 0, 0, 0}};
+        FbSqlProcedureMetadata.Signature signature = new FbSqlProcedureMetadata().getSignature(catalog.connection(), "LIST_ITEMS");
+        assertTrue(signature.isSelectable());
+        assertFalse(catalog._queries.get(0).contains("RDB$PACKAGE_NAME"));
+    }//olderServersDoNotUsePackageColumns
+
+    @Test
+    public void missingProceduresAreNotCached() throws Throwable {
+        Catalog catalog = new Catalog(3);
+        FbSqlProcedureMetadata metadata = new FbSqlProcedureMetadata();
+        Connection connection = catalog.connection();
+        assertNull(metadata.getSignature(connection, "LATER"));
+        assertNull(metadata.getSignature(connection, "LATER"));
+        assertEquals(0, metadata.getSize());
+        // Created meanwhile: found and cached from now on
+        catalog._rows = new Object[][]{{2, null, 0, 0, 0, 0}};
+        assertNotNull(metadata.getSignature(connection, "LATER"));
+        assertNotNull(metadata.getSignature(connection, "LATER"));
+        assertEquals(3, catalog._queries.size());
+        assertEquals(1, metadata.getSize());
+    }//missingProceduresAreNotCached
+}//FbSqlProcedureMetadataTest
@@ -0,0 +1,210 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class FbSqlReplicaRouterTest {
+    protected final FbSqlTestDriver _primaryDriver = new FbSqlTestDriver(0);
+    protected final List<FbSqlTestDriver> _replicaDrivers = new ArrayList<>();
+
+    protected static FbSqlConnection newConnection(FbSqlTestDriver driver, String database) {
+        return driver.attach(new FbSqlConnection(database, "localhost", "SYSDBA", "masterkey"));
+    }//newConnection
+
+    // Primary on /data/primary.fdb, replica i on /data/replica<i>.fdb, each with its own driver
+    protected FbSqlReplicaRouter newRouter(int replicas, FbSqlReplicaRouter.Strategy strategy) {
+        List<FbSqlConnection> connections = new ArrayList<>();
+        for (int i=0; i<replicas; i++) {
+            FbSqlTestDriver driver = new FbSqlTestDriver(0);
+            _replicaDrivers.add(driver);
+            connections.add(newConnection(driver, "/data/replica" + i + ".fdb"));
+        }
+        return new FbSqlReplicaRouter(newConnection(_primaryDriver, "/data/primary.fdb"), connections, strategy);
+    }//newRouter
+
+    protected static String read(FbSqlReplicaRouter router, String transaction) throws FbSqlException {
+        return router.read(transaction, (conn, tran) -> {
+            assertNotNull(conn._transactions.get(tran));
+            return conn._database;
+        });
+    }//read
+
+    protected static Map<String, Integer> count(List<String> databases) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (String database : databases) {
+            result.merge(database, 1, Integer::sum);
+        }
+        return result;
+    }//count
+
+    protected void assertNoLeftovers(FbSqlReplicaRouter router) {
+        List<FbSqlConnection> connections = new ArrayList<>();
+        connections.add(router.getPrimary());
+        for (FbSqlReplicaRouter.Replica replica : router.getReplicas()) {
+            connections.add(replica.getConnection());
+            assertEquals(0, replica.getOutstanding());
+        }
+        for (FbSqlConnection conn : connections) {
+            assertTrue(conn._database + " transactions", conn._transactions.isEmpty());
+            assertTrue(conn._database + " locks", conn._transactionLocks.isEmpty());
+        }
+    }//assertNoLeftovers
+
+    @Test
+    public void roundRobinSpreadsReadsEvenly() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(3, FbSqlReplicaRouter.Strategy.ROUND_ROBIN);
+        List<String> databases = new ArrayList<>();
+        for (int i=0; i<9; i++) {
+            databases.add(read(router, null));
+        }
+        Map<String, Integer> expected = new TreeMap<>();
+        expected.put("/data/replica0.fdb", 3);
+        expected.put("/data/replica1.fdb", 3);
+        expected.put("/data/replica2.fdb", 3);
+        assertEquals(expected, count(databases));
+        // Consecutive reads never hit the same replica
+        for (int i=1; i<databases.size(); i++) {
+            assertNotEquals(databases.get(i-1), databases.get(i));
+        }
+        assertEquals(0, _primaryDriver.getOpened());
+        for (int i=0; i<_replicaDrivers.size(); i++) {
+            FbSqlTestDriver driver = _replicaDrivers.get(i);
+            assertTrue(driver.getUrls().get(0).contains("/data/replica" + i + ".fdb"));
+            assertEquals(driver.getOpened(), driver.getClosed());
+        }
+        assertNoLeftovers(router);
+    }//roundRobinSpreadsReadsEvenly
+
+    @Test
+    public void leastOutstandingAvoidsBusyReplicas() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(3, FbSqlReplicaRouter.Strategy.LEAST_OUTSTANDING);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> busy = executor.submit(() -> {
+                try {
+                    return router.read(null, (conn, tran) -> {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return conn._database;
+                    });
+                } catch (FbSqlException e) {
+                    throw new ExecutionException(e);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            List<String> databases = new ArrayList<>();
+            for (int i=0; i<6; i++) {
+                databases.add(read(router, null));
+            }
+            release.countDown();
+            String busyDatabase = busy.get(10, TimeUnit.SECONDS);
+            assertFalse(databases.contains(busyDatabase));
+            // Both idle replicas share the load
+            assertEquals(2, count(databases).size());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        assertNoLeftovers(router);
+    }//leastOutstandingAvoidsBusyReplicas
+
+    @Test
+    public void connectFailuresMarkReplicasUnhealthy() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(2, FbSqlReplicaRouter.Strategy.ROUND_ROBIN);
+        router.setHealthOptions(2, 60000);
+        _replicaDrivers.get(1).setConnectError(new SQLException("Unable to complete network request", "08006", 335544721));
+        for (int i=0; i<8; i++) {
+            assertEquals("/data/replica0.fdb", read(router, null));
+        }
+        FbSqlReplicaRouter.Replica down = router.getReplicas().get(1);
+        assertFalse(down.isHealthy());
+        assertEquals(2, down.getFailures());
+        // Skipped while unhealthy: no connect attempts after the threshold was reached
+        assertEquals(0, _replicaDrivers.get(1).getOpened());
+        assertTrue(router.getReplicas().get(0).isHealthy());
+        assertEquals(8, _replicaDrivers.get(0).getOpened());
+        assertNoLeftovers(router);
+    }//connectFailuresMarkReplicasUnhealthy
+
+    @Test
+    public void unhealthyReplicaComesBackAfterTheRetryDelay() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(1, FbSqlReplicaRouter.Strategy.ROUND_ROBIN);
+        router.setHealthOptions(1, 50);
+        _replicaDrivers.get(0).setConnectError(new SQLException("Connection refused", "08001", 335544721));
+        assertEquals("/data/primary.fdb", read(router, null));
+        assertFalse(router.getReplicas().get(0).isHealthy());
+        _replicaDrivers.get(0).setConnectError(null);
+        Thread.sleep(100);
+        assertEquals("/data/replica0.fdb", read(router, null));
+        assertEquals(0, router.getReplicas().get(0).getFailures());
+        assertNoLeftovers(router);
+    }//unhealthyReplicaComesBackAfterTheRetryDelay
+
+    @Test
+    public void fallsBackToThePrimaryWhenNoReplicaIsHealthy() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(2, FbSqlReplicaRouter.Strategy.ROUND_ROBIN);
+        for (FbSqlTestDriver driver : _replicaDrivers) {
+            driver.setConnectError(new SQLException("Connection refused", "08001", 335544721));
+        }
+        assertEquals("/data/primary.fdb", read(router, null));
+        assertEquals(1, _primaryDriver.getOpened());
+        router.setFallbackToPrimary(false);
+        try {
+            read(router, null);
+            fail("Read without a healthy replica");
+        } catch (FbSqlException e) {
+            // Both replicas were marked unhealthy by the first read, so none was even tried
+            assertEquals("No healthy replica available", e.getMessage());
+        }
+        assertEquals(1, _primaryDriver.getOpened());
+        assertNoLeftovers(router);
+    }//fallsBackToThePrimaryWhenNoReplicaIsHealthy
+
+    @Test
+    public void namedTransactionsStayOnThePrimary() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(2, FbSqlReplicaRouter.Strategy.ROUND_ROBIN);
+        router.getPrimary().beginTransaction("WRITER", false);
+        router.getPrimary().executeQuery("UPDATE T SET A = 1", "WRITER");
+        for (int i=0; i<4; i++) {
+            assertEquals("/data/primary.fdb", router.read("WRITER", (conn, tran) -> {
+                assertEquals("WRITER", tran);
+                return conn._database;
+            }));
+        }
+        for (FbSqlTestDriver driver : _replicaDrivers) {
+            assertEquals(0, driver.getOpened());
+        }
+        // Still open: the router does not end the caller's transaction
+        assertNotNull(router.getPrimary()._transactions.get("WRITER"));
+        router.getPrimary().commitTransaction("WRITER");
+        assertEquals(Arrays.asList("UPDATE T SET A = 1", "<commit>"), _primaryDriver.getLog());
+        assertNoLeftovers(router);
+    }//namedTransactionsStayOnThePrimary
+
+    @Test
+    public void failingQueriesAreNotRetriedOnOtherReplicas() throws Throwable {
+        FbSqlReplicaRouter router = newRouter(2, FbSqlReplicaRouter.Strategy.ROUND_ROBIN);
+        try {
+            router.read(null, (conn, tran) -> {
+                throw new FbSqlException(new SQLException("Column unknown", "42S22", 335544578));
+            });
+            fail("Query error was swallowed");
+        } catch (FbSqlException e) {
+            assertEquals("42S22", e.getSqlState());
+        }
+        assertEquals(1, _replicaDrivers.get(0).getOpened() + _replicaDrivers.get(1).getOpened());
+        assertTrue(router.getReplicas().get(0).isHealthy() && router.getReplicas().get(1).isHealthy());
+        assertNoLeftovers(router);
+    }//failingQueriesAreNotRetriedOnOtherReplicas
+}//FbSqlReplicaRouterTest
@@ -0,0 +1,166 @@
+package com.adeotek.java.firebirdsql;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FbSqlResultCacheTest {
+    protected static Set<String> tables(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }//tables
+
+    // Answers BASE_TABLE_QUERY from a fixed list of base tables and counts the lookups
+    protected static Connection metadata(Set<String> baseTables, int[] lookups) {
+        return (Connection) FbSqlTestDriver.proxy(Connection.class, (o, m, args) -> {
+            if (!m.getName().equals("prepareStatement")) {
+                return null;
+            }
+            String[] table = {null};
+            return FbSqlTestDriver.proxy(PreparedStatement.class, (so, sm, sargs) -> {
+                switch (sm.getName()) {
+                    case "setString": table[0] = (String) sargs[1]; return null;
+                    case "executeQuery":
+                        lookups[0]++;
+                        boolean[] found = {baseTables.contains(table[0])};
+                        return Proxy.newProxyInstance(FbSqlResultCacheTest.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (ro, rm, rargs) -> {
+                            if (rm.getName().equals("next")) {
+                                boolean result = found[0];
+                                found[0] = false;
+                                return result;
+                            }
+                            return null;
+                        });
+                    default: return null;
+                }
+            });
+        });
+    }//metadata
+
+    @Test
+    public void extractsCommaSeparatedAndJoinedTables() {
+        assertEquals(tables("A", "B"), FbSqlResultCache.extractReadTables("SELECT * FROM A, B"));
+        assertEquals(tables("A", "B"), FbSqlResultCache.extractReadTables("select a1.x, b1.y from A a1, B b1 where a1.id = b1.id"));
+        assertEquals(tables("A", "B", "C"), FbSqlResultCache.extractReadTables("SELECT * FROM A AS X, B Y JOIN C ON C.ID = Y.ID ORDER BY 1"));
+        assertEquals(tables("A", "B", "C"), FbSqlResultCache.extractReadTables("SELECT * FROM A LEFT JOIN B ON B.ID = A.ID, C"));
+        assertEquals(tables("Mixed Case", "T"), FbSqlResultCache.extractReadTables("SELECT * FROM \"Mixed Case\" m, t"));
+        assertEquals(tables("A", "B"), FbSqlResultCache.extractReadTables("SELECT * FROM (SELECT ID FROM A) D, B WHERE B.ID IN (SELECT ID FROM A)"));
+        assertEquals(tables("A"), FbSqlResultCache.extractReadTables("SELECT EXTRACT(YEAR FROM D), 'FROM X, Y' FROM A -- FROM Z"));
+    }//extractsCommaSeparatedAndJoinedTables
+
+    @Test
+    public void uncertainTablesAreNotExtracted() {
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM GET_ITEMS(1)"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A, GET_ITEMS(A.ID) P"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT CURRENT_TIMESTAMP"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM (SELECT ID FROM A"));
+    }//uncertainTablesAreNotExtracted
+
+    @Test
+    public void volatileSelectsAreNotExtracted() {
+        assertNull(FbSqlResultCache.extractReadTables("SELECT RDB$RELATION_NAME FROM RDB$RELATIONS"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM MON$ATTACHMENTS"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A JOIN SEC$USERS U ON U.SEC$USER_NAME = A.NAME"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT GEN_ID(G_A, 0) FROM A"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT NEXT VALUE FOR G_A, ID FROM A"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE CREATED > CURRENT_DATE - 1"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE OWNER = CURRENT_USER"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT LOCALTIMESTAMP, ID FROM A"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE CREATED < CAST('now' AS TIMESTAMP)"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE ID = 1 WITH LOCK"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE ID = 1 FOR UPDATE OF NAME"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT F_PRICE(ID) FROM A"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE ID = PKG_ITEMS.NEXT_ID(1)"));
+        assertNull(FbSqlResultCache.extractReadTables("SELECT RDB$GET_CONTEXT('USER_SESSION', 'X') FROM A"));
+    }//volatileSelectsAreNotExtracted
+
+    @Test
+    public void builtinFunctionsAndColumnListsAreExtracted() {
+        assertEquals(tables("A"), FbSqlResultCache.extractReadTables("SELECT COUNT(*), MAX(ID), CAST(NAME AS VARCHAR(10)) FROM A"));
+        assertEquals(tables("A"), FbSqlResultCache.extractReadTables("SELECT COALESCE(UPPER(NAME), 'X'), ROW_NUMBER() OVER (ORDER BY ID) FROM A"));
+        assertEquals(tables("A"), FbSqlResultCache.extractReadTables("SELECT * FROM (SELECT ID FROM A) AS D (X) WHERE X IN (1, 2)"));
+        assertEquals(tables("A", "C"), FbSqlResultCache.extractReadTables("WITH C (X) AS (SELECT ID FROM A) SELECT * FROM C"));
+        assertEquals(tables("A"), FbSqlResultCache.extractReadTables("SELECT * FROM A WHERE NAME = 'CURRENT_DATE'"));
+    }//builtinFunctionsAndColumnListsAreExtracted
+
+    @Test
+    public void viewsAndDerivedNamesAreNotCached() throws Throwable {
+        FbSqlResultCache cache = new FbSqlResultCache(10, 0, 60000);
+        int[] lookups = {0};
+        Connection connection = metadata(tables("A", "B"), lookups);
+        assertEquals(tables("A", "B"), cache.getReadTables(connection, "SELECT * FROM A, B"));
+        assertNull(cache.getReadTables(connection, "SELECT * FROM A, V_ITEMS"));
+        assertNull(cache.getReadTables(connection, "WITH C AS (SELECT * FROM A) SELECT * FROM C"));
+        // Relation kinds are looked up once
+        assertEquals(tables("A", "B"), cache.getReadTables(connection, "SELECT * FROM B JOIN A ON A.ID = B.ID"));
+        assertEquals(4, lookups[0]);
+    }//viewsAndDerivedNamesAreNotCached
+
+    @Test
+    public void resultsReadBeforeAnInvalidationAreDropped() {
+        FbSqlResultCache cache = new FbSqlResultCache(10, 0, 60000);
+        JsonArray rows = new JsonArray();
+        rows.add(new JsonObject());
+        long version = cache.getVersion();
+        // A writer invalidates A while the reader's select is still running
+        cache.invalidateTable("A");
+        cache.put("q1", rows, tables("A", "B"), version);
+        assertNull(cache.get("q1"));
+        cache.put("q2", rows, tables("B"), version);
+        assertNotNull(cache.get("q2"));
+        version = cache.getVersion();
+        cache.invalidateAll();
+        cache.put("q3", rows, tables("C"), version);
+        assertNull(cache.get("q3"));
+        cache.put("q3", rows, tables("C"), cache.getVersion());
+        assertNotNull(cache.get("q3"));
+        assertEquals(2, cache.getStalePuts());
+    }//resultsReadBeforeAnInvalidationAreDropped
+
+    @Test
+    public void keysFollowTheTransactionProfile() throws Throwable {
+        FbSqlConnection conn = new FbSqlTestDriver(0).attach(new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey"));
+        FbSqlResultCache cache = new FbSqlResultCache(10, 0, 60000);
+        cache._baseTables.put("T", true);
+        conn.setResultCache(cache);
+        conn.beginTransaction("DEFAULT", false);
+        conn.beginTransaction("READ_ONLY", FbSqlTransactionProfile.READ_ONLY);
+        conn.beginTransaction("SNAPSHOT", FbSqlTransactionProfile.SNAPSHOT_READ_ONLY);
+        conn.beginTransaction("SNAPSHOT_2", FbSqlTransactionProfile.SNAPSHOT_READ_ONLY);
+        String query = "SELECT * FROM T";
+        // The fake driver reports READ COMMITTED for all of them, like Jaybird does for a custom TPB
+        Set<String> keys = tables(conn.prepareResultCacheKey("DEFAULT", query, null), conn.prepareResultCacheKey("READ_ONLY", query, null),
+                conn.prepareResultCacheKey("SNAPSHOT", query, null));
+        assertEquals(3, keys.size());
+        assertEquals(conn.prepareResultCacheKey("SNAPSHOT", query, null), conn.prepareResultCacheKey("SNAPSHOT_2", query, null));
+        conn.commitTransaction("DEFAULT");
+        conn.commitTransaction("READ_ONLY");
+        conn.rollbackTransaction("SNAPSHOT");
+        conn.closeTransaction("SNAPSHOT_2");
+        assertTrue(conn._transactionProfiles.isEmpty());
+    }//keysFollowTheTransactionProfile
+
+    @Test
+    public void callersGetTheirOwnCopy() {
+        FbSqlResultCache cache = new FbSqlResultCache(10, 0, 60000);
+        JsonArray value = new JsonArray();
+        JsonObject row = new JsonObject();
+        row.addProperty("ID", 1);
+        value.add(row);
+        cache.put("K", value, tables("A"));
+        row.addProperty("ID", 2);
+        JsonArray first = cache.get("K");
+        first.get(0).getAsJsonObject().addProperty("ID", 3);
+        first.add(new JsonObject());
+        JsonArray second = cache.get("K");
+        assertEquals(1, second.size());
+        assertEquals(1, second.get(0).getAsJsonObject().get("ID").getAsInt());
+    }//callersGetTheirOwnCopy
+}//FbSqlResultCacheTest
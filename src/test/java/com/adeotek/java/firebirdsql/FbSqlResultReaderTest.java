@@ -0,0 +1,54 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+
+public class FbSqlResultReaderTest {
+    // INTEGER columns with the given labels; names are the labels in upper case
+    protected static ResultSetMetaData metaData(String... labels) {
+        return (ResultSetMetaData) FbSqlTestDriver.proxy(ResultSetMetaData.class, (o, m, args) -> {
+            switch (m.getName()) {
+                case "getColumnCount": return labels.length;
+                case "getColumnName": return labels[(Integer) args[0] - 1].toUpperCase();
+                case "getColumnLabel": return labels[(Integer) args[0] - 1];
+                case "getColumnTypeName": return "INTEGER";
+                case "getColumnType": return Types.INTEGER;
+                default: return null;
+            }
+        });
+    }//metaData
+
+    protected static ResultSet results(ResultSetMetaData metaData) {
+        return (ResultSet) FbSqlTestDriver.proxy(ResultSet.class, (o, m, args) -> m.getName().equals("getMetaData") ? metaData : null);
+    }//results
+
+    @Test
+    public void plansMatchOnlyTheSameColumns() throws Throwable {
+        FbSqlResultReader reader = new FbSqlResultReader(metaData("ID", "TOTAL"));
+        assertTrue(reader.matches(metaData("ID", "TOTAL")));
+        assertFalse(reader.matches(metaData("ID", "AMOUNT")));
+        assertFalse(reader.matches(metaData("ID", "Total")));
+        assertFalse(reader.matches(metaData("ID")));
+    }//plansMatchOnlyTheSameColumns
+
+    @Test
+    public void plansAreEvictedLeastRecentlyUsedFirst() throws Throwable {
+        FbSqlConnection conn = new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey");
+        conn.setReaderPlansCacheSize(2);
+        FbSqlResultReader a = conn.getResultReader(results(metaData("A")), "A");
+        FbSqlResultReader b = conn.getResultReader(results(metaData("B")), "B");
+        assertSame(a, conn.getResultReader(results(metaData("A")), "A"));
+        conn.getResultReader(results(metaData("C")), "C");
+        // B was the least recently used plan; A survives instead of the whole map being dropped
+        assertEquals(2, conn._readerPlans.size());
+        assertSame(a, conn.getResultReader(results(metaData("A")), "A"));
+        assertNotSame(b, conn.getResultReader(results(metaData("B")), "B"));
+        // A renamed column replaces the plan under the same key
+        assertNotSame(a, conn.getResultReader(results(metaData("A2")), "A"));
+    }//plansAreEvictedLeastRecentlyUsedFirst
+}//FbSqlResultReaderTest
@@ -0,0 +1,82 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+
+public class FbSqlRowMapperTest {
+    public static class Flags {
+        protected char code;
+        protected byte level;
+        protected Character grade;
+        protected Byte rank;
+
+        public char getCode() { return code; }
+        public byte getLevel() { return level; }
+        public Character getGrade() { return grade; }
+        public Byte getRank() { return rank; }
+    }//Flags
+
+    protected static final String[] NAMES = {"CODE", "LEVEL", "GRADE", "RANK"};
+    protected static final String[] TYPES = {"CHAR", "SMALLINT", "CHAR", "SMALLINT"};
+
+    // One row of values; numbers read as 0 when NULL, like the driver does
+    protected static ResultSet results(Object... values) {
+        boolean[] wasNull = {false};
+        ResultSetMetaData metaData = (ResultSetMetaData) FbSqlTestDriver.proxy(ResultSetMetaData.class, (o, m, args) -> {
+            switch (m.getName()) {
+                case "getColumnCount": return NAMES.length;
+                case "getColumnName":
+                case "getColumnLabel": return NAMES[(Integer) args[0] - 1];
+                case "getColumnTypeName": return TYPES[(Integer) args[0] - 1];
+                case "getColumnType": return TYPES[(Integer) args[0] - 1].equals("CHAR") ? Types.CHAR : Types.SMALLINT;
+                default: return null;
+            }
+        });
+        return (ResultSet) FbSqlTestDriver.proxy(ResultSet.class, (o, m, args) -> {
+            switch (m.getName()) {
+                case "getMetaData": return metaData;
+                case "wasNull": return wasNull[0];
+                case "getString": {
+                    Object value = values[(Integer) args[0] - 1];
+                    wasNull[0] = value==null;
+                    return value==null ? null : value.toString();
+                }
+                case "getByte": {
+                    Object value = values[(Integer) args[0] - 1];
+                    wasNull[0] = value==null;
+                    return value==null ? (byte) 0 : ((Number) value).byteValue();
+                }
+                default: throw new UnsupportedOperationException(m.getName());
+            }
+        });
+    }//results
+
+    @Test
+    public void mapsCharAndByteTargets() throws Throwable {
+        ResultSet results = results("A", 7, "B", 3);
+        FbSqlRowMapper<Flags> mapper = FbSqlRowMapper.getMapper(Flags.class, new FbSqlResultReader(results.getMetaData()));
+        Flags row = mapper.mapRow(results);
+        assertEquals('A', row.getCode());
+        assertEquals(7, row.getLevel());
+        assertEquals(Character.valueOf('B'), row.getGrade());
+        assertEquals(Byte.valueOf((byte) 3), row.getRank());
+        row = mapper.mapRow(results(null, null, null, null));
+        assertEquals('\0', row.getCode());
+        assertEquals(0, row.getLevel());
+        assertNull(row.getGrade());
+        assertNull(row.getRank());
+    }//mapsCharAndByteTargets
+
+    @Test
+    public void mappersAreReusedPerClassAndLayout() throws Throwable {
+        ResultSet results = results("A", 1, "B", 2);
+        FbSqlRowMapper<Flags> mapper = FbSqlRowMapper.getMapper(Flags.class, new FbSqlResultReader(results.getMetaData()));
+        assertSame(mapper, FbSqlRowMapper.getMapper(Flags.class, new FbSqlResultReader(results.getMetaData())));
+        assertEquals(1, FbSqlRowMapper._mappers.get(Flags.class).size());
+    }//mappersAreReusedPerClassAndLayout
+}//FbSqlRowMapperTest
@@ -0,0 +1,96 @@
+package com.adeotek.java.firebirdsql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FbSqlScriptTest {
+    protected static void assertRejected(String script, String message) {
+        try {
+            FbSqlScript.split(script);
+            fail("Accepted: " + script);
+        } catch (FbSqlException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }//assertRejected
+
+    @Test
+    public void splitsAndDropsClientCommands() throws Throwable {
+        assertEquals(Arrays.asList("INSERT INTO T VALUES (';')", "COMMIT", "EXECUTE BLOCK AS BEGIN END"),
+                FbSqlScript.split("SET NAMES UTF8;\nINSERT INTO T VALUES (';');\nCOMMIT;\nSET TERM ^ ;\nEXECUTE BLOCK AS BEGIN END^\nSET TERM ; ^"));
+    }//splitsAndDropsClientCommands
+
+    @Test
+    public void recognizesTransactionEnds() {
+        assertEquals("COMMIT", FbSqlScript.getTransactionEnd("commit"));
+        assertEquals("COMMIT", FbSqlScript.getTransactionEnd("-- done\nCOMMIT WORK RETAIN"));
+        assertEquals("ROLLBACK", FbSqlScript.getTransactionEnd("Rollback Work"));
+        assertNull(FbSqlScript.getTransactionEnd("ROLLBACK TO SAVEPOINT S1"));
+        assertNull(FbSqlScript.getTransactionEnd("UPDATE T SET COMMIT = 1"));
+    }//recognizesTransactionEnds
+
+    @Test
+    public void rejectsTransactionAndDatabaseCommands() {
+        assertRejected("INSERT INTO T VALUES (1);\nSET TRANSACTION SNAPSHOT;", "Statement 2: SET TRANSACTION is not supported");
+        assertRejected("CONNECT 'localhost:/data/other.fdb' USER 'SYSDBA' PASSWORD 'x';", "Statement 1: CONNECT is not supported");
+        assertRejected("create  database '/data/new.fdb';", "Statement 1: CREATE DATABASE is not supported");
+        assertRejected("/* cleanup */ DROP DATABASE;", "Statement 1: DROP DATABASE is not supported");
+    }//rejectsTransactionAndDatabaseCommands
+
+    @Test
+    public void autoDdlOffIsAcceptedAndOnIsRejected() throws Throwable {
+        assertEquals(Arrays.asList("CREATE TABLE T (ID INTEGER)", "COMMIT"),
+                FbSqlScript.split("SET AUTODDL OFF;\nCREATE TABLE T (ID INTEGER);\nCOMMIT;"));
+        assertEquals(Arrays.asList("CREATE TABLE T (ID INTEGER)"), FbSqlScript.split("set auto off;\nCREATE TABLE T (ID INTEGER);"));
+        assertRejected("CREATE TABLE T (ID INTEGER);\nSET AUTODDL ON;", "Statement 2: SET AUTODDL ON is not supported");
+        // Without an argument isql toggles AUTODDL, which starts ON
+        assertRejected("SET AUTODDL;", "Statement 1: SET AUTODDL ON is not supported");
+    }//autoDdlOffIsAcceptedAndOnIsRejected
+
+    @Test
+    public void commitAndRollbackEndUnitsOfTheScriptTransaction() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection conn = driver.attach(new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey"));
+        conn.beginTransaction("SCRIPT", false);
+        FbSqlBatchResult result = conn.executeScript("UPDATE A SET X = 1;\nCOMMIT;\nUPDATE B SET X = 2;\nROLLBACK WORK;\n"
+                + "UPDATE C SET X = 3;", "SCRIPT");
+        assertEquals(5, result.getStatementCount());
+        assertTrue(result.isSuccessful());
+        assertEquals(Arrays.asList("UPDATE A SET X = 1", "<commit>", "UPDATE B SET X = 2", "<rollback>", "UPDATE C SET X = 3"), driver.getLog());
+        // The transaction is still open for the statements after the last boundary
+        conn.commitTransaction("SCRIPT");
+        assertEquals("<commit>", driver.getLog().get(5));
+        assertEquals(1, driver.getOpened());
+    }//commitAndRollbackEndUnitsOfTheScriptTransaction
+
+    @Test
+    public void failureRollsBackTheCurrentUnitOnly() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection conn = driver.attach(new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey"));
+        conn.beginTransaction("SCRIPT", false);
+        try {
+            conn.executeScript("UPDATE A SET X = 1;\nCOMMIT;\nUPDATE B SET X = 2;\nUPDATE FAIL SET X = 3;\nCOMMIT;", "SCRIPT");
+            fail("The failing statement was not reported");
+        } catch (FbSqlException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Statement 4 failed"));
+        }
+        assertEquals(Arrays.asList("UPDATE A SET X = 1", "<commit>", "UPDATE B SET X = 2", "<rollback>"), driver.getLog());
+        assertFalse(conn._transactions.containsKey("SCRIPT"));
+    }//failureRollsBackTheCurrentUnitOnly
+
+    @Test
+    public void rejectedScriptsRunNothing() throws Throwable {
+        FbSqlTestDriver driver = new FbSqlTestDriver(0);
+        FbSqlConnection conn = driver.attach(new FbSqlConnection("/data/test.fdb", "localhost", "SYSDBA", "masterkey"));
+        conn.beginTransaction("SCRIPT", false);
+        try {
+            conn.executeScript("UPDATE A SET X = 1;\nSET TRANSACTION READ COMMITTED;\nUPDATE B SET X = 2;", "SCRIPT");
+            fail("SET TRANSACTION was accepted");
+        } catch (FbSqlException e) {
+            assertTrue(driver.getLog().isEmpty());
+        }
+        conn.rollbackTransaction("SCRIPT");
+    }//rejectedScriptsRunNothing
+}//FbSqlScriptTest
@@ -0,0 +1,200 @@
+package com.adeotek.java.firebirdsql;
+
+import org.firebirdsql.jdbc.FirebirdConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// In-memory stand-in for the Jaybird driver: every statement sleeps for a fixed latency
+// and the driver records whether two statements ever ran on the same connection at once.
+// Executed SQL, commits and rollbacks are logged in order; SQL containing FAIL raises an error.
+public class FbSqlTestDriver implements Driver {
+    protected final long _latencyMillis;
+    protected final AtomicInteger _opened = new AtomicInteger(0);
+    protected final AtomicInteger _closed = new AtomicInteger(0);
+    protected final AtomicInteger _overlaps = new AtomicInteger(0);
+    protected final AtomicInteger _batchedRows = new AtomicInteger(0);
+    protected final List<String> _urls = new CopyOnWriteArrayList<>();
+    protected final List<String> _log = new CopyOnWriteArrayList<>();
+    protected volatile SQLException _connectError = null;
+
+    public int getOpened() { return _opened.get(); }
+    public int getClosed() { return _closed.get(); }
+    public int getOverlaps() { return _overlaps.get(); }
+    // Rows executed through prepared statement batches
+    public int getBatchedRows() { return _batchedRows.get(); }
+    public List<String> getUrls() { return Collections.unmodifiableList(_urls); }
+    public List<String> getLog() { return Collections.unmodifiableList(_log); }
+    // Every following connect() fails with this error, null to accept connections again
+    public void setConnectError(SQLException error) { _connectError = error; }
+
+    public FbSqlTestDriver(long latencyMillis) {
+        _latencyMillis = latencyMillis;
+    }//FbSqlTestDriver
+
+    // The connection uses this driver instead of loading Jaybird
+    public FbSqlConnection attach(FbSqlConnection connection) {
+        connection._driver = this;
+        return connection;
+    }//attach
+
+    protected static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(FbSqlTestDriver.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }//proxy
+
+    protected Object execute(AtomicInteger active, Object result) throws SQLException {
+        if (active.incrementAndGet()>1) {
+            _overlaps.incrementAndGet();
+        }
+        try {
+            if (_latencyMillis>0) {
+                Thread.sleep(_latencyMillis);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ie);
+        } finally {
+            active.decrementAndGet();
+        }
+        return result;
+    }//execute
+
+    protected Object execute(AtomicInteger active, String sql, Object result) throws SQLException {
+        if (sql.contains("FAIL")) {
+            throw new SQLException("Failing statement: " + sql, "42000", 335544569);
+        }
+        _log.add(sql);
+        return execute(active, result);
+    }//execute
+
+    protected Statement createStatement(AtomicInteger active) {
+        List<String> batch = new java.util.ArrayList<>();
+        return (Statement) proxy(Statement.class, (o, m, args) -> {
+            switch (m.getName()) {
+                case "executeUpdate": return execute(active, (String) args[0], 1);
+                case "execute": return execute(active, (String) args[0], false);
+                case "executeQuery": throw new SQLFeatureNotSupportedException("Result sets are not supported");
+                case "addBatch": batch.add((String) args[0]); return null;
+                case "clearBatch": batch.clear(); return null;
+                case "executeBatch": {
+                    int[] counts = new int[batch.size()];
+                    for (int i=0; i<batch.size(); i++) {
+                        try {
+                            execute(active, batch.get(i), 1);
+                        } catch (SQLException se) {
+                            throw new BatchUpdateException(se.getMessage(), se.getSQLState(), se.getErrorCode(), java.util.Arrays.copyOf(counts, i), se);
+                        }
+                        counts[i] = 1;
+                    }
+                    return counts;
+                }
+                case "isClosed": return false;
+                case "hashCode": return System.identityHashCode(o);
+                case "equals": return o==args[0];
+                default: return null;
+            }
+        });
+    }//createStatement
+
+    // Batches of parameter rows; a row with a string parameter containing FAIL fails the batch
+    protected PreparedStatement prepareStatement(AtomicInteger active, String sql) {
+        List<Object> row = new java.util.ArrayList<>();
+        List<List<Object>> batch = new java.util.ArrayList<>();
+        return (PreparedStatement) proxy(PreparedStatement.class, (o, m, args) -> {
+            if (m.getName().startsWith("set") && args!=null && args.length>=2 && args[0] instanceof Integer) {
+                int index = (Integer) args[0];
+                while (row.size()<index) {
+                    row.add(null);
+                }
+                row.set(index - 1, args[1]);
+                return null;
+            }
+            switch (m.getName()) {
+                case "addBatch": batch.add(new java.util.ArrayList<>(row)); row.clear(); return null;
+                case "clearBatch": batch.clear(); return null;
+                case "executeBatch": {
+                    int[] counts = new int[batch.size()];
+                    for (int i=0; i<batch.size(); i++) {
+                        try {
+                            execute(active, batch.get(i).toString().contains("FAIL") ? sql + " FAIL" : sql, 1);
+                        } catch (SQLException se) {
+                            batch.clear();
+                            throw new BatchUpdateException(se.getMessage(), se.getSQLState(), se.getErrorCode(), java.util.Arrays.copyOf(counts, i), se);
+                        }
+                        counts[i] = 1;
+                        _batchedRows.incrementAndGet();
+                    }
+                    batch.clear();
+                    return counts;
+                }
+                case "isClosed": return false;
+                case "hashCode": return System.identityHashCode(o);
+                case "equals": return o==args[0];
+                default: return null;
+            }
+        });
+    }//prepareStatement
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (_connectError!=null) {
+            throw _connectError;
+        }
+        _opened.incrementAndGet();
+        _urls.add(url);
+        AtomicInteger active = new AtomicInteger(0);
+        boolean[] closed = {false};
+        boolean[] autoCommit = {true};
+        // Also a FirebirdConnection, so transaction profiles can be applied
+        return (Connection) proxy(FirebirdConnection.class, (o, m, args) -> {
+            switch (m.getName()) {
+                case "createStatement": return createStatement(active);
+                case "prepareStatement": return prepareStatement(active, (String) args[0]);
+                case "unwrap": return o;
+                case "isWrapperFor": return ((Class<?>) args[0]).isInstance(o);
+                case "getAutoCommit": return autoCommit[0];
+                case "commit": _log.add("<commit>"); return null;
+                case "rollback": _log.add("<rollback>"); return null;
+                case "setAutoCommit": autoCommit[0] = (Boolean) args[0]; return null;
+                case "isClosed": return closed[0];
+                case "isValid": return !closed[0];
+                case "close":
+                    if (!closed[0]) {
+                        closed[0] = true;
+                        _closed.incrementAndGet();
+                    }
+                    return null;
+                case "getTransactionIsolation": return Connection.TRANSACTION_READ_COMMITTED;
+                case "hashCode": return System.identityHashCode(o);
+                case "equals": return o==args[0];
+                case "toString": return "FbSqlTestDriver connection " + url;
+                default: return null;
+            }
+        });
+    }//connect
+
+    @Override
+    public boolean acceptsURL(String url) { return url!=null && url.startsWith("jdbc:firebirdsql:"); }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+
+    @Override
+    public int getMajorVersion() { return 3; }
+
+    @Override
+    public int getMinorVersion() { return 0; }
+
+    @Override
+    public boolean jdbcCompliant() { return false; }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException { throw new SQLFeatureNotSupportedException(); }
+}//FbSqlTestDriver